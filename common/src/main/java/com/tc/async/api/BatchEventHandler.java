@@ -0,0 +1,32 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.api;
+
+import java.util.Collection;
+
+/**
+ * An {@link EventHandler} that would rather see everything that has queued up than one event at a time. The stage
+ * drains up to {@code seda.<stage name>.maxBatchSize} (64 by default) waiting contexts and passes them, in queue order,
+ * to a single {@link #handleEvents(Collection)} call, so costs like a persistence commit can be paid once per batch
+ * instead of once per event.
+ * <p>
+ * A batch is never empty. {@link SpecializedEventContext}s are never part of one, they end the batch before them and
+ * are executed on their own. The collection is reused by the stage and must not be kept past the call.
+ */
+public interface BatchEventHandler extends EventHandler {
+  //
+}
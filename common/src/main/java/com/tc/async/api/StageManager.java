@@ -23,6 +23,7 @@ import com.tc.text.PrettyPrintable;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /*
  * All content copyright (c) 2003-2008 Terracotta, Inc., except as may otherwise be noted in a separate copyright
@@ -48,4 +49,11 @@ public interface StageManager extends PrettyPrintable, ClearableCallback {
   public Stats[] getStats();
 
   public Collection<Stage> getStages();
+
+  /**
+   * @return the queue wait and service time percentiles of each stage and, for stages with several workers, of each
+   *         worker, keyed by stage name or by stage name and worker index. Empty unless
+   *         {@link com.tc.properties.TCPropertiesConsts#TC_STAGE_MONITOR_LATENCY_ENABLED} is set
+   */
+  public Map<String, Map<String, Long>> getLatencyStats();
 }
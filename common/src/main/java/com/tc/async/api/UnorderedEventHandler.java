@@ -0,0 +1,27 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.api;
+
+/**
+ * An {@link EventHandler} that does not care in which order, or on which of the stage's threads, its contexts are
+ * handled. The stage gives every worker its own queue, spreads added contexts over them without looking at
+ * {@link MultiThreadedEventContext#getKey()}, and lets a worker that runs out of work take contexts queued for the
+ * others, so one slow context does not hold up everything queued behind it.
+ */
+public interface UnorderedEventHandler extends EventHandler {
+  //
+}
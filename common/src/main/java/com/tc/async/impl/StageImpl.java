@@ -16,6 +16,7 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.EventHandler;
@@ -24,15 +25,22 @@ import com.tc.async.api.Sink;
 import com.tc.async.api.Source;
 import com.tc.async.api.SpecializedEventContext;
 import com.tc.async.api.Stage;
+import com.tc.async.api.UnorderedEventHandler;
 import com.tc.exception.PlatformRejoinException;
 import com.tc.exception.TCNotRunningException;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.concurrent.QueueFactory;
 import com.tc.util.concurrent.ThreadUtil;
+import com.tc.util.concurrent.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The SEDA Stage
@@ -40,14 +48,17 @@ import com.tc.util.concurrent.ThreadUtil;
 public class StageImpl implements Stage {
   private static final long    pollTime = 3000; // This is the poor man's solution for
                                                 // stage
+  private static final int     DEFAULT_MAX_BATCH_SIZE = 64;
   private final String         name;
   private final EventHandler   handler;
   private final StageQueueImpl stageQueue;
-  private final WorkerThread[] threads;
+  private final Worker[]       workers;
   private final ThreadGroup    group;
   private final TCLogger       logger;
   private final int            sleepMs;
   private final boolean        pausable;
+  private final int            maxBatchSize;
+  private final boolean        virtual;
 
   /**
    * The Constructor.
@@ -70,12 +81,14 @@ public class StageImpl implements Stage {
     this.logger = loggerProvider.getLogger(Stage.class.getName() + ": " + name);
     this.name = name;
     this.handler = handler;
-    this.threads = new WorkerThread[threadCount];
+    this.workers = new Worker[threadCount];
     if (threadsToQueueRatio > threadCount) {
       logger.warn("Thread to Queue Ratio " + threadsToQueueRatio + " > Worker Threads " + threadCount);
     }
     this.stageQueue = new StageQueueImpl(threadCount, threadsToQueueRatio, queueFactory, loggerProvider, name,
-                                         queueSize);
+                                         queueSize, TCPropertiesImpl.getProperties()
+                                             .getBoolean(TCPropertiesConsts.TC_STAGE_MONITOR_LATENCY_ENABLED, false),
+                                         handler instanceof UnorderedEventHandler);
     this.group = group;
     this.sleepMs = TCPropertiesImpl.getProperties().getInt("seda." + name + ".sleepMs", 0);
     if (this.sleepMs > 0) {
@@ -85,6 +98,13 @@ public class StageImpl implements Stage {
     if (this.pausable) {
       logger.warn("Stage pausing is enabled for stage " + name);
     }
+    this.maxBatchSize = handler instanceof BatchEventHandler ? Math.max(1, TCPropertiesImpl.getProperties()
+        .getInt("seda." + name + ".maxBatchSize", DEFAULT_MAX_BATCH_SIZE)) : 1;
+    this.virtual = VirtualThreads.isEnabled()
+                   && TCPropertiesImpl.getProperties().getBoolean("seda." + name + ".virtualThreads", true);
+    if (this.virtual) {
+      logger.info("Running stage " + name + " on virtual threads");
+    }
   }
 
   @Override
@@ -104,23 +124,23 @@ public class StageImpl implements Stage {
   }
 
   private synchronized void startThreads() {
-    for (int i = 0; i < threads.length; i++) {
+    for (int i = 0; i < workers.length; i++) {
       String threadName = "WorkerThread(" + name + ", " + i;
-      if (threads.length > 1) {
+      if (workers.length > 1) {
         threadName = threadName + ", " + this.stageQueue.getSource(i).getSourceName() + ")";
       } else {
         threadName = threadName + ")";
       }
-      threads[i] = new WorkerThread(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs,
-                                    pausable, name);
-      threads[i].start();
+      workers[i] = new Worker(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable,
+                              name, maxBatchSize, this.stageQueue.getLatency(i), virtual);
+      workers[i].start();
     }
   }
 
   private void stopThreads() {
-    for (WorkerThread thread : threads) {
-      thread.shutdown();
-      thread.interrupt();
+    for (Worker worker : workers) {
+      worker.shutdown();
+      worker.interrupt();
     }
     handler.destroy();
   }
@@ -130,12 +150,21 @@ public class StageImpl implements Stage {
     return name;
   }
 
+  void addLatencyStatsTo(Map<String, Map<String, Long>> stats) {
+    stageQueue.addLatencyStatsTo(stats);
+  }
+
   @Override
   public String toString() {
     return "StageImpl(" + name + ")";
   }
 
-  private static class WorkerThread extends Thread {
+  /**
+   * Polls one source of the stage queue on its own thread, a virtual one if the stage runs on virtual threads. Which
+   * kind of thread it is makes no difference to how contexts are queued or in what order they are handled.
+   */
+  private static class Worker implements Runnable {
+    private final Thread       thread;
     private final Source       source;
     private final EventHandler handler;
     private volatile boolean   shutdownRequested = false;
@@ -143,17 +172,36 @@ public class StageImpl implements Stage {
     private final int          sleepMs;
     private final boolean      pausable;
     private final String       stageName;
+    private final int          maxBatchSize;
+    private final List<EventContext> batch;
+    private final StageLatency latency;
 
-    public WorkerThread(String name, Source source, EventHandler handler, ThreadGroup group, TCLogger logger,
-                        int sleepMs, boolean pausable, String stageName) {
-      super(group, name);
+    public Worker(String name, Source source, EventHandler handler, ThreadGroup group, TCLogger logger, int sleepMs,
+                  boolean pausable, String stageName, int maxBatchSize, StageLatency latency, boolean virtual) {
+      if (virtual) {
+        // virtual threads have no thread group of their own, the group still gets whatever they do not catch
+        this.thread = VirtualThreads.newThread(name, this, group);
+      } else {
+        this.thread = new Thread(group, this, name);
+        this.thread.setDaemon(true);
+      }
       tcLogger = logger;
-      setDaemon(true);
       this.source = source;
       this.handler = handler;
       this.sleepMs = sleepMs;
       this.pausable = pausable;
       this.stageName = stageName;
+      this.maxBatchSize = maxBatchSize;
+      this.batch = maxBatchSize > 1 ? new ArrayList<EventContext>(maxBatchSize) : null;
+      this.latency = latency;
+    }
+
+    public void start() {
+      this.thread.start();
+    }
+
+    public void interrupt() {
+      this.thread.interrupt();
     }
 
     public void shutdown() {
@@ -182,11 +230,17 @@ public class StageImpl implements Stage {
           ctxt = source.poll(pollTime);
           if (ctxt != null) {
             handleStageDebugPauses();
+            final long start = latency != null ? System.nanoTime() : 0;
             if (ctxt instanceof SpecializedEventContext) {
               ((SpecializedEventContext) ctxt).execute();
+            } else if (batch != null) {
+              handleBatch(ctxt);
             } else {
               handler.handleEvent(ctxt);
             }
+            if (latency != null) {
+              latency.handled(System.nanoTime() - start);
+            }
           }
         } catch (InterruptedException ie) {
           if (shutdownRequested()) { return; }
@@ -215,9 +269,34 @@ public class StageImpl implements Stage {
           // to the context will exist until another context comes in. This can potentially keep many objects in memory
           // longer than necessary
           ctxt = null;
+          if (batch != null) {
+            batch.clear();
+          }
         }
       }
     }
+
+    /**
+     * Hands the given context and whatever is already queued behind it, up to the batch size, to the handler in one
+     * call. A specialized context ends the batch and is executed after it.
+     */
+    private void handleBatch(EventContext first) throws InterruptedException, EventHandlerException {
+      batch.add(first);
+      EventContext next = null;
+      while (batch.size() < maxBatchSize) {
+        next = source.poll(0);
+        if (next == null || next instanceof SpecializedEventContext) {
+          break;
+        }
+        batch.add(next);
+        next = null;
+      }
+      handler.handleEvents(batch);
+      batch.clear();
+      if (next != null) {
+        ((SpecializedEventContext) next).execute();
+      }
+    }
   }
 
   private static boolean isTCNotRunningException(Throwable e) {
@@ -0,0 +1,73 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import com.tc.stats.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the events of one stage worker sat in its queue and how long its handler took, in nanoseconds. A batch
+ * handed to the handler in one call counts once towards the service time.
+ */
+final class StageLatency {
+  private final Histogram queueWait = new Histogram();
+  private final Histogram service   = new Histogram();
+
+  void queued(long enqueuedAt, long dequeuedAt) {
+    queueWait.record(dequeuedAt - enqueuedAt);
+  }
+
+  void handled(long nanos) {
+    service.record(nanos);
+  }
+
+  void addTo(StageLatency total) {
+    total.queueWait.merge(queueWait);
+    total.service.merge(service);
+  }
+
+  /**
+   * @return the event count and the queue wait and service time percentiles in microseconds
+   */
+  Map<String, Long> summarize() {
+    final Map<String, Long> summary = new LinkedHashMap<String, Long>();
+    summary.put("events", queueWait.getCount());
+    summary.put("handlerCalls", service.getCount());
+    summarize("queueWait", queueWait, summary);
+    summarize("service", service, summary);
+    return summary;
+  }
+
+  private static void summarize(String prefix, Histogram histogram, Map<String, Long> summary) {
+    summary.put(prefix + "P50Micros", micros(histogram.getPercentile(50)));
+    summary.put(prefix + "P99Micros", micros(histogram.getPercentile(99)));
+    summary.put(prefix + "P999Micros", micros(histogram.getPercentile(99.9)));
+    summary.put(prefix + "MaxMicros", micros(histogram.getMax()));
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  @Override
+  public String toString() {
+    return "queueWait(ns): " + queueWait + ", service(ns): " + service;
+  }
+}
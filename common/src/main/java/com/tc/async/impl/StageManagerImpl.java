@@ -42,6 +42,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -90,6 +91,9 @@ public class StageManagerImpl implements StageManager {
           for (Stats stat : stats) {
             stat.logDetails(logger);
           }
+          for (Map.Entry<String, Map<String, Long>> e : getLatencyStats().entrySet()) {
+            logger.info(e.getKey() + " : " + e.getValue());
+          }
         } catch (Throwable th) {
           logger.error(th);
         }
@@ -199,6 +203,17 @@ public class StageManagerImpl implements StageManager {
     return stages.values();
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getLatencyStats() {
+    final Map<String, Map<String, Long>> stats = new TreeMap<String, Map<String, Long>>();
+    for (Stage stage : stages.values()) {
+      if (stage instanceof StageImpl) {
+        ((StageImpl) stage).addLatencyStatsTo(stats);
+      }
+    }
+    return stats;
+  }
+
   static class StageMonitors {
 
     private final List            monitors  = Collections.synchronizedList(new LinkedList());
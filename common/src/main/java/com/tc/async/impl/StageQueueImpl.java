@@ -32,7 +32,11 @@ import com.tc.util.concurrent.TCQueue;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This StageQueueImpl represents the sink and gives a handle to the source. We are internally justun using a queue
@@ -45,6 +49,8 @@ public class StageQueueImpl implements Sink {
   private final TCLogger          logger;
   private volatile AddPredicate   predicate = DefaultAddPredicate.getInstance();
   private final SourceQueueImpl[] sourceQueues;
+  private final IdleWorkers       idleWorkers;
+  private final AtomicInteger     nextQueue = new AtomicInteger();
 
   /**
    * The Constructor.
@@ -59,18 +65,25 @@ public class StageQueueImpl implements Sink {
    * @param loggerProvider : logger
    * @param stageName : The stage name
    * @param queueSize : Max queue Size allowed
+   * @param timed : Whether to time how long events wait in the queues, see {@link #getLatency(int)}
+   * @param unordered : Whether events may be handled in any order. If so each thread gets its own queue regardless of
+   *        threadsToQueueRatio, events are added to the queues in turn and a thread with an empty queue takes events
+   *        from the others
    */
   public StageQueueImpl(int threadCount, int threadsToQueueRatio, QueueFactory queueFactory,
-                        TCLoggerProvider loggerProvider, String stageName, int queueSize) {
+                        TCLoggerProvider loggerProvider, String stageName, int queueSize, boolean timed,
+                        boolean unordered) {
     Assert.eval(threadCount > 0);
     this.logger = loggerProvider.getLogger(Sink.class.getName() + ": " + stageName);
     this.stageName = stageName;
     this.sourceQueues = new SourceQueueImpl[threadCount];
-    createWorkerQueues(threadCount, threadsToQueueRatio, queueFactory, queueSize, loggerProvider, stageName);
+    this.idleWorkers = unordered && threadCount > 1 ? new IdleWorkers(this.sourceQueues) : null;
+    createWorkerQueues(threadCount, this.idleWorkers != null ? 1 : threadsToQueueRatio, queueFactory, queueSize,
+                       loggerProvider, stageName, timed);
   }
 
   private void createWorkerQueues(int threads, int threadsToQueueRatio, QueueFactory queueFactory, int queueSize,
-                                  TCLoggerProvider loggerProvider, String stage) {
+                                  TCLoggerProvider loggerProvider, String stage, boolean timed) {
     StageQueueStatsCollector statsCollector = new NullStageQueueStatsCollector(stage);
     TCQueue q = null;
     int queueCount = -1;
@@ -85,17 +98,19 @@ public class StageQueueImpl implements Sink {
       if (threadsToQueueRatio > 0) {
         if (i % threadsToQueueRatio == 0) {
           // creating new worker queue
-          q = queueFactory.createInstance(queueSize);
+          q = queueFactory.createInstance(stage, queueSize);
           queueCount++;
         } else {
           // use same queue for this worker too
         }
       } else if (q == null) {
         // all workers share the same queue, create queue only once
-        q = queueFactory.createInstance(queueSize);
+        q = queueFactory.createInstance(stage, queueSize);
         queueCount++;
       }
-      this.sourceQueues[i] = new SourceQueueImpl(q, String.valueOf(queueCount), statsCollector);
+      this.sourceQueues[i] = new SourceQueueImpl(q, String.valueOf(queueCount), statsCollector,
+                                                 timed ? new StageLatency() : null,
+                                                 this.idleWorkers, i);
     }
   }
 
@@ -103,6 +118,29 @@ public class StageQueueImpl implements Sink {
     return this.sourceQueues[index];
   }
 
+  /**
+   * @return the latencies of the worker polling the given source, or null if the queues are not timed
+   */
+  StageLatency getLatency(int index) {
+    return this.sourceQueues[index].latency;
+  }
+
+  /**
+   * Adds the latencies of the whole stage and, if there is more than one worker, of each worker to the given map.
+   */
+  void addLatencyStatsTo(Map<String, Map<String, Long>> stats) {
+    if (this.sourceQueues[0].latency == null) { return; }
+    final StageLatency total = new StageLatency();
+    for (int i = 0; i < this.sourceQueues.length; i++) {
+      final StageLatency latency = this.sourceQueues[i].latency;
+      latency.addTo(total);
+      if (this.sourceQueues.length > 1) {
+        stats.put(this.stageName + "[" + i + "]", latency.summarize());
+      }
+    }
+    stats.put(this.stageName, total.summarize());
+  }
+
   /**
    * The context will be added if the sink was found to be empty(at somepoint during the call). If the queue was not
    * empty (at somepoint during the call) the context might not be added. This method should only be used where the
@@ -110,14 +148,16 @@ public class StageQueueImpl implements Sink {
    */
   @Override
   public boolean addLossy(EventContext context) {
-    SourceQueueImpl sourceQueue;
-    if (context instanceof MultiThreadedEventContext) {
-      sourceQueue = getSourceQueueFor((MultiThreadedEventContext) context);
+    final boolean empty;
+    if (this.idleWorkers != null) {
+      empty = size() == 0;
+    } else if (context instanceof MultiThreadedEventContext) {
+      empty = getSourceQueueFor((MultiThreadedEventContext) context).isEmpty();
     } else {
-      sourceQueue = this.sourceQueues[0];
+      empty = this.sourceQueues[0].isEmpty();
     }
 
-    if (sourceQueue.isEmpty()) {
+    if (empty) {
       add(context);
       return true;
     } else {
@@ -152,7 +192,11 @@ public class StageQueueImpl implements Sink {
     try {
       while (true) {
         try {
-          if (context instanceof MultiThreadedEventContext) {
+          if (this.idleWorkers != null) {
+            this.sourceQueues[(this.nextQueue.getAndIncrement() & Integer.MAX_VALUE) % this.sourceQueues.length]
+                .put(context);
+            this.idleWorkers.workAdded();
+          } else if (context instanceof MultiThreadedEventContext) {
             SourceQueueImpl sourceQueue = getSourceQueueFor((MultiThreadedEventContext) context);
             sourceQueue.put(context);
           } else {
@@ -256,16 +300,67 @@ public class StageQueueImpl implements Sink {
     this.sourceQueues[0].getStatsCollector().reset();
   }
 
+  /**
+   * What goes into the queue in place of the context when the queue is timed.
+   */
+  private static final class Enqueued {
+    private final EventContext context;
+    private final long         enqueuedAt;
+
+    private Enqueued(EventContext context) {
+      this.context = context;
+      this.enqueuedAt = System.nanoTime();
+    }
+  }
+
+  /**
+   * Shared by the workers of an unordered stage. A worker that finds every queue empty waits here, rather than on its
+   * own queue, and is woken by the next add to any of them.
+   */
+  private static final class IdleWorkers {
+    private final SourceQueueImpl[] queues;
+    private final ReentrantLock     lock      = new ReentrantLock();
+    private final Condition         workAdded = lock.newCondition();
+    private final AtomicInteger     waiting   = new AtomicInteger();
+
+    private IdleWorkers(SourceQueueImpl[] queues) {
+      this.queues = queues;
+    }
+
+    void workAdded() {
+      // a worker counts itself before its last look at the queues, so it either sees the work or gets this signal
+      if (this.waiting.get() > 0) {
+        this.lock.lock();
+        try {
+          this.workAdded.signal();
+        } finally {
+          this.lock.unlock();
+        }
+      }
+    }
+  }
+
   private static final class SourceQueueImpl implements Source {
 
     private final TCQueue                     queue;
     private final String                      sourceName;
     private volatile StageQueueStatsCollector statsCollector;
-
-    public SourceQueueImpl(TCQueue queue, String sourceName, StageQueueStatsCollector statsCollector) {
+    private final StageLatency                latency;
+    private final IdleWorkers                 idleWorkers;
+    private final int                         index;
+
+    /**
+     * @param idleWorkers : Shared by all the stage's workers to take events from the others' queues when this one is
+     *        empty, or null if events have to be handled by the worker they were queued for
+     */
+    public SourceQueueImpl(TCQueue queue, String sourceName, StageQueueStatsCollector statsCollector,
+                           StageLatency latency, IdleWorkers idleWorkers, int index) {
       this.queue = queue;
       this.sourceName = sourceName;
       this.statsCollector = statsCollector;
+      this.latency = latency;
+      this.idleWorkers = idleWorkers;
+      this.index = index;
     }
 
     public StageQueueStatsCollector getStatsCollector() {
@@ -295,15 +390,47 @@ public class StageQueueImpl implements Sink {
 
     @Override
     public EventContext poll(long timeout) throws InterruptedException {
-      EventContext rv = (EventContext) this.queue.poll(timeout);
-      if (rv != null) {
-        this.statsCollector.contextRemoved();
+      Object rv = this.idleWorkers == null ? this.queue.poll(timeout) : pollOrSteal(timeout);
+      if (rv == null) { return null; }
+      this.statsCollector.contextRemoved();
+      if (this.latency == null) { return (EventContext) rv; }
+      Enqueued enqueued = (Enqueued) rv;
+      this.latency.queued(enqueued.enqueuedAt, System.nanoTime());
+      return enqueued.context;
+    }
+
+    private Object pollOrSteal(long timeout) throws InterruptedException {
+      Object rv = pollAny();
+      if (rv != null || timeout <= 0) { return rv; }
+      long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+      this.idleWorkers.lock.lockInterruptibly();
+      this.idleWorkers.waiting.incrementAndGet();
+      try {
+        while ((rv = pollAny()) == null) {
+          if (nanos <= 0) { return null; }
+          nanos = this.idleWorkers.workAdded.awaitNanos(nanos);
+        }
+        return rv;
+      } finally {
+        this.idleWorkers.waiting.decrementAndGet();
+        this.idleWorkers.lock.unlock();
+      }
+    }
+
+    /**
+     * Takes from this worker's own queue first, then from the others'.
+     */
+    private Object pollAny() throws InterruptedException {
+      final SourceQueueImpl[] queues = this.idleWorkers.queues;
+      for (int i = 0; i < queues.length; i++) {
+        final Object rv = queues[(this.index + i) % queues.length].queue.poll(0);
+        if (rv != null) { return rv; }
       }
-      return rv;
+      return null;
     }
 
-    public void put(Object obj) throws InterruptedException {
-      this.queue.put(obj);
+    public void put(EventContext context) throws InterruptedException {
+      this.queue.put(this.latency == null ? context : new Enqueued(context));
       this.statsCollector.contextAdded();
     }
 
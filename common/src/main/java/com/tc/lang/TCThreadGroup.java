@@ -20,12 +20,37 @@ import com.tc.logging.CallbackOnExitHandler;
 
 public class TCThreadGroup extends ThreadGroup {
 
-  private static final String    CLASS_NAME = TCThreadGroup.class.getName();
+  private static final String                   CLASS_NAME = TCThreadGroup.class.getName();
 
-  private final ThrowableHandler throwableHandler;
+  // virtual threads have no group of their own, this is the one they run on behalf of
+  private static final ThreadLocal<ThreadGroup> ADOPTED    = new ThreadLocal<ThreadGroup>();
+
+  private final ThrowableHandler                throwableHandler;
 
   public static boolean currentThreadInTCThreadGroup() {
-    return Thread.currentThread().getThreadGroup().getClass().getName().equals(CLASS_NAME);
+    ThreadGroup group = ADOPTED.get();
+    if (group == null) {
+      group = Thread.currentThread().getThreadGroup();
+    }
+    return group != null && group.getClass().getName().equals(CLASS_NAME);
+  }
+
+  /**
+   * Wraps a runnable so that, for {@link #currentThreadInTCThreadGroup()}, the thread running it belongs to the given
+   * group. Meant for threads that cannot be created in a group, such as virtual threads.
+   */
+  public static Runnable runInGroup(final ThreadGroup group, final Runnable runnable) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        ADOPTED.set(group);
+        try {
+          runnable.run();
+        } finally {
+          ADOPTED.remove();
+        }
+      }
+    };
   }
 
   public TCThreadGroup(ThrowableHandler throwableHandler) {
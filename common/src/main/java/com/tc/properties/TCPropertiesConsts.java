@@ -419,6 +419,16 @@ public interface TCPropertiesConsts {
   public static final String L2_L1RECONNECT_SEND_WINDOW                                     = "l2.l1reconnect.sendWindow";
   public static final String L2_L1REJOIN_SLEEP_MILLIS                                       = "l2.l1rejoin.sleep.millis";
 
+  /*********************************************************************************************************************
+   * <code>
+   * Section: Once-And-Only-Once Send Window
+   * Description: Local to each node, unlike the reconnect properties above
+   * sendWindow.adaptive - If true, shrink the send window below the configured one while acks are delayed by queueing
+   *                       and grow it back once they speed up
+   * </code>
+   ********************************************************************************************************************/
+  public static final String NET_OOO_SEND_WINDOW_ADAPTIVE                                   = "net.ooo.sendWindow.adaptive";
+
   /*********************************************************************************************************************
    * <code>
    * Section : L1 Object Manager Properties
@@ -495,19 +505,32 @@ public interface TCPropertiesConsts {
    * Description : Stage monitoring can be enabled or disabled for debugging.
    * stage.monitor.enabled                : &lt;true/false&gt;    - Enable or Disable Monitoring
    * stage.monitor.delay                  : long            - frequency in milliseconds
+   * stage.monitor.latency.enabled        : &lt;true/false&gt;    - Record queue wait and service time histograms per stage
+   *                                        and worker thread
+   * virtualThreads.enabled               : &lt;true/false&gt;    - Run SEDA stage workers and task runner threads on
+   *                                        virtual threads when the runtime has them (Java 21 and later). A stage
+   *                                        can opt out with seda.&lt;stage name&gt;.virtualThreads = false
    * bytebuffer.pooling.enabled           : Enable/disable tc byte buffer pooling
    * bytebuffer.common.pool.maxcount      : Max size of pool for tc byte buffer
    * bytebuffer.threadlocal.pool.maxcount : Thread pool size
+   * messages.coalescing.budgetMicros     : Longest a write is held back for more messages to join its batch, only
+   *                                        done while messages arrive faster than that. 0 disables
+   * messages.hydrate.inline.maxBytes     : Messages up to this size are hydrated by the thread that received them,
+   *                                        unless their channel still has messages waiting to be hydrated. 0 disables
    * </code>
    ********************************************************************************************************************/
   public static final String TC_STAGE_MONITOR_ENABLED                                       = "tc.stage.monitor.enabled";
   public static final String TC_STAGE_MONITOR_DELAY                                         = "tc.stage.monitor.delay";
+  public static final String TC_STAGE_MONITOR_LATENCY_ENABLED                               = "tc.stage.monitor.latency.enabled";
+  public static final String TC_VIRTUAL_THREADS_ENABLED                                     = "tc.virtualThreads.enabled";
   public static final String TC_BYTEBUFFER_POOLING_ENABLED                                  = "tc.bytebuffer.pooling.enabled";
   public static final String TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT                             = "tc.bytebuffer.common.pool.maxcount";
   public static final String TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT                        = "tc.bytebuffer.threadlocal.pool.maxcount";
   public static final String TC_MESSAGE_GROUPING_ENABLED                                    = "tc.messages.grouping.enabled";
   public static final String TC_MESSAGE_GROUPING_MAXSIZE_KB                                 = "tc.messages.grouping.maxSizeKiloBytes";
   public static final String TC_MESSAGE_PACKUP_ENABLED                                      = "tc.messages.packup.enabled";
+  public static final String TC_MESSAGE_COALESCING_BUDGET_MICROS                            = "tc.messages.coalescing.budgetMicros";
+  public static final String TC_MESSAGE_HYDRATE_INLINE_MAX_BYTES                            = "tc.messages.hydrate.inline.maxBytes";
 
   /*********************************************************************************************************************
    * <code>
@@ -653,10 +676,24 @@ public interface TCPropertiesConsts {
    * Section : TCP Settings
    * tcpnodelay : Enable/disable tcp packet batching
    * keepalive  : Enable/disable tcp probe for running/broken connections
+   * gathering.enabled : Write and read cleartext message buffers straight to and from the socket
+   * compression.enabled   : Ask the server to exchange length prefixed frames, deflating the large ones
+   * compression.threshold : Frames smaller than this many bytes are always sent as they are
+   * compression.maxFrameSizeMB : Frames, or deflated frames once inflated, larger than this close the connection
+   * rebalance.interval    : How often (in milliseconds) connections are moved between worker comm threads to even
+   *                         out their traffic. 0 disables
+   * selector.provider     : Class name of the java.nio.channels.spi.SelectorProvider that sockets and selectors are
+   *                         opened through. Unset uses the platform default
    * </code>
    ********************************************************************************************************************/
   public static final String NET_CORE_KEEPALIVE                                             = "net.core.keepalive";
   public static final String NET_CORE_TCP_NO_DELAY                                          = "net.core.tcpnodelay";
+  public static final String NET_CORE_GATHERING_ENABLED                                     = "net.core.gathering.enabled";
+  public static final String NET_CORE_COMPRESSION_ENABLED                                   = "net.core.compression.enabled";
+  public static final String NET_CORE_COMPRESSION_THRESHOLD                                 = "net.core.compression.threshold";
+  public static final String NET_CORE_COMPRESSION_MAX_FRAME_SIZE_MB                         = "net.core.compression.maxFrameSizeMB";
+  public static final String NET_CORE_REBALANCE_INTERVAL                                    = "net.core.rebalance.interval";
+  public static final String NET_CORE_SELECTOR_PROVIDER                                     = "net.core.selector.provider";
 
   /*********************************************************************************************************************
    * <code>
@@ -813,6 +850,12 @@ public interface TCPropertiesConsts {
    * l2.offHeap.allocation.partial.disable.objects - disable the partial allocation of objectdb storage
    * l2.offHeap.allocation.partial.disable.map.hotset - disable caching map values in offheap
    * l2.offHeap.allocation.partial.enable.object.hotset - enable caching object values in offheap
+   * l2.offHeap.compaction.enabled - relocate live objects in the background to give back fragmented offheap
+   * l2.offHeap.compaction.interval - how often (ms) to check whether the ObjectDB needs compacting
+   * l2.offHeap.compaction.fragmentationRatio - compact when this fraction of the reserved ObjectDB space is unused
+   * l2.offHeap.compaction.batchSize - number of objects relocated at a time
+   * l2.offHeap.coldCompression.enabled - compress leaf objects in offheap once they have been idle for a while
+   * l2.offHeap.coldCompression.idleTime - time (ms) a leaf object must go unused to be compressed
    * 
    * </code>
    ********************************************************************************************************************/
@@ -839,10 +882,32 @@ public interface TCPropertiesConsts {
   public static final String L2_OFFHEAP_OBJECTDB_INITIAL_DATASIZE                           = "l2.offHeap.object.initialDataSize";
   public static final String L2_OFFHEAP_OBJECTDB_TABLESIZE                                  = "l2.offHeap.object.tableSize";
   public static final String L2_OFFHEAP_OBJECTDB_CONCURRENCY                                = "l2.offHeap.object.concurrency";
+  public static final String L2_OFFHEAP_COMPACTION_ENABLED                                  = "l2.offHeap.compaction.enabled";
+  public static final String L2_OFFHEAP_COMPACTION_INTERVAL                                 = "l2.offHeap.compaction.interval";
+  public static final String L2_OFFHEAP_COMPACTION_FRAGMENTATION_RATIO                      = "l2.offHeap.compaction.fragmentationRatio";
+  public static final String L2_OFFHEAP_COMPACTION_BATCH_SIZE                               = "l2.offHeap.compaction.batchSize";
+  public static final String L2_OFFHEAP_COLD_COMPRESSION_ENABLED                            = "l2.offHeap.coldCompression.enabled";
+  public static final String L2_OFFHEAP_COLD_COMPRESSION_IDLE_TIME                          = "l2.offHeap.coldCompression.idleTime";
 
   // for tests
   public static final String L2_OFFHEAP_SKIP_JVMARG_CHECK                                   = "l2.offHeapCache.skip.jvmarg.check";
 
+  /*********************************************************************************************************************
+   * <code>
+   * Section :  Restartable Store Settings
+   * l2.restartable.log.fsync               - force the restart log to disk when a transaction commits
+   * l2.restartable.log.compaction.minBytes - the restart log is not compacted while it is smaller than this (bytes)
+   * l2.restartable.log.compaction.ratio    - compact once the log is this many times larger than the last snapshot
+   * l2.restartable.backup.maxBytesPerSecond - rate a hot backup copies the store at, 0 for no limit
+   * l2.restartable.recovery.threads        - threads the restart log is replayed with on startup, 0 for one per core
+   * </code>
+   ********************************************************************************************************************/
+  public static final String L2_RESTARTABLE_LOG_FSYNC                                       = "l2.restartable.log.fsync";
+  public static final String L2_RESTARTABLE_LOG_COMPACTION_MIN_BYTES                        = "l2.restartable.log.compaction.minBytes";
+  public static final String L2_RESTARTABLE_LOG_COMPACTION_RATIO                            = "l2.restartable.log.compaction.ratio";
+  public static final String L2_RESTARTABLE_BACKUP_MAX_BYTES_PER_SECOND                     = "l2.restartable.backup.maxBytesPerSecond";
+  public static final String L2_RESTARTABLE_RECOVERY_THREADS                                = "l2.restartable.recovery.threads";
+
   public static final String L1_SEARCH_MAX_OPEN_RESULT_SETS                                 = "l1.search.max.open.resultSets";
   public static final String L2_SEARCH_MAX_PAGED_RESULT_SETS                                = "l2.search.max.paged.resultSets";
   public static final String L2_SEARCH_MAX_RESULT_PAGE_SIZE                                 = "l2.search.max.result.pageSize";
@@ -0,0 +1,127 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non negative values in power of two buckets, safe to record into from any number of threads without
+ * locking. Bucket 0 counts zeros and bucket {@code i} the values from {@code 2^(i-1)} to {@code 2^i - 1}.
+ */
+public class Histogram {
+  public static final int        BUCKETS = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong      count   = new AtomicLong();
+  private final AtomicLong      sum     = new AtomicLong();
+  private final AtomicLong      max     = new AtomicLong();
+
+  /**
+   * Negative values are counted as zero.
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current;
+    while ((current = max.get()) < value) {
+      if (max.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  }
+
+  public static int bucketOf(long value) {
+    return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+  }
+
+  /**
+   * @return the largest value that goes into the given bucket
+   */
+  public static long upperBoundOf(int bucket) {
+    if (bucket == 0) { return 0; }
+    return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    final long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+   * @return an upper bound for the given percentile (0 to 100) of the recorded values, never more than the largest one
+   */
+  public long getPercentile(double percentile) {
+    final long n = count.get();
+    if (n == 0) { return 0; }
+    final long rank = (long) Math.ceil(n * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) { return Math.min(upperBoundOf(i), max.get()); }
+    }
+    return max.get();
+  }
+
+  /**
+   * Adds everything recorded into the given histogram to this one. Values recorded into either while this runs may or
+   * may not be included.
+   */
+  public void merge(Histogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      final long n = other.buckets.get(i);
+      if (n > 0) {
+        buckets.addAndGet(i, n);
+      }
+    }
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+    final long otherMax = other.max.get();
+    long current;
+    while ((current = max.get()) < otherMax) {
+      if (max.compareAndSet(current, otherMax)) {
+        break;
+      }
+    }
+  }
+
+  public long[] getBucketCounts() {
+    final long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() + " mean=" + String.format("%.1f", getMean()) + " p50<=" + getPercentile(50)
+           + " p99<=" + getPercentile(99) + " max=" + getMax();
+  }
+}
@@ -16,8 +16,12 @@
  */
 package com.tc.util.concurrent;
 
+import com.tc.properties.TCPropertiesImpl;
+
 public class QueueFactory {
 
+  public static final String RING_BUFFER = "ringBuffer";
+
   /**
    * @return a TCQueue backed by LinkedBlockingQueue
    */
@@ -33,4 +37,15 @@ public class QueueFactory {
     return new TCLinkedBlockingQueue(capacity);
   }
 
+  /**
+   * @return a queue for the given SEDA stage. A bounded stage gets a {@link TCRingBufferQueue} when
+   *         {@code seda.<stage>.queue} is set to {@value #RING_BUFFER}, any other stage the same queue as
+   *         {@link #createInstance(int)}.
+   */
+  public TCQueue createInstance(String stageName, int capacity) {
+    String type = TCPropertiesImpl.getProperties().getProperty("seda." + stageName + ".queue", true);
+    if (RING_BUFFER.equals(type) && capacity != Integer.MAX_VALUE) { return new TCRingBufferQueue(capacity); }
+    return createInstance(capacity);
+  }
+
 }
@@ -188,7 +188,10 @@ public class ScheduledNamedTaskRunner extends ScheduledThreadPoolExecutor implem
 
   private static ThreadFactory newThreadFactory(final ThreadGroup threadGroup) {
     final ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
-    if (threadGroup != null) {
+    if (VirtualThreads.isEnabled()) {
+      // parked between tasks most of the time, which costs a virtual thread next to nothing
+      builder.setThreadFactory(VirtualThreads.newThreadFactory("task-runner-thread", threadGroup));
+    } else if (threadGroup != null) {
       builder.setThreadFactory(new ThreadGroupAwareFactory(threadGroup));
     }
     builder.setDaemon(true).setNameFormat("task-runner-thread-%s").setPriority(Thread.NORM_PRIORITY);
@@ -0,0 +1,217 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded {@link TCQueue} on a ring of slots that producers and consumers claim with a compare-and-set on their own
+ * counter, so neither side takes a lock or allocates while the queue is neither empty nor full. Each slot carries a
+ * sequence number telling whether it is free to write or ready to read. It is built for many producers and a single
+ * consumer, but stays correct with several consumers sharing it.
+ * <p>
+ * A thread that finds the queue empty (or full, when putting) polls it a few more times before it parks on a lock. The
+ * lock is only touched by the other side when somebody is actually parked.
+ * <p>
+ * The capacity is rounded up to the next power of two.
+ */
+public class TCRingBufferQueue implements TCQueue {
+
+  private static final int                   SPINS         = 128;
+
+  private final int                          mask;
+  private final AtomicReferenceArray<Object> slots;
+  private final AtomicLongArray              sequences;
+  private final AtomicLong                   head          = new AtomicLong();
+  private final AtomicLong                   tail          = new AtomicLong();
+
+  private final ReentrantLock                lock          = new ReentrantLock();
+  private final Condition                    notEmpty      = lock.newCondition();
+  private final Condition                    notFull       = lock.newCondition();
+  private final AtomicInteger                parkedTakers  = new AtomicInteger();
+  private final AtomicInteger                parkedPutters = new AtomicInteger();
+
+  public TCRingBufferQueue(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) { throw new IllegalArgumentException("capacity " + capacity); }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+    this.slots = new AtomicReferenceArray<Object>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  private boolean tryOffer(Object obj) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          slots.set(index, obj);
+          // a volatile write so a taker that parks after this is guaranteed to see it, see park()
+          sequences.set(index, pos + 1);
+          if (parkedTakers.get() > 0) {
+            signal(notEmpty);
+          }
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  private Object tryPoll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) pos & mask;
+      long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          Object obj = slots.get(index);
+          slots.set(index, null);
+          sequences.set(index, pos + mask + 1);
+          if (parkedPutters.get() > 0) {
+            signal(notFull);
+          }
+          return obj;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  private void signal(Condition condition) {
+    lock.lock();
+    try {
+      condition.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(Object obj) throws InterruptedException {
+    offer(obj, -1);
+  }
+
+  /**
+   * @param timeout in milliseconds, negative to wait for as long as it takes
+   */
+  @Override
+  public boolean offer(Object obj, long timeout) throws InterruptedException {
+    if (obj == null) { throw new NullPointerException(); }
+    for (int i = 0; i < SPINS; i++) {
+      if (tryOffer(obj)) { return true; }
+    }
+    if (timeout == 0) { return false; }
+
+    long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+    lock.lockInterruptibly();
+    parkedPutters.incrementAndGet();
+    try {
+      while (!tryOffer(obj)) {
+        if (timeout < 0) {
+          notFull.await();
+        } else {
+          if (nanos <= 0) { return false; }
+          nanos = notFull.awaitNanos(nanos);
+        }
+      }
+      return true;
+    } finally {
+      parkedPutters.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object take() throws InterruptedException {
+    return poll(-1);
+  }
+
+  /**
+   * @param timeout in milliseconds, negative to wait for as long as it takes
+   */
+  @Override
+  public Object poll(long timeout) throws InterruptedException {
+    Object obj;
+    for (int i = 0; i < SPINS; i++) {
+      if ((obj = tryPoll()) != null) { return obj; }
+    }
+    if (timeout == 0) { return null; }
+
+    long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+    lock.lockInterruptibly();
+    // counted before looking again, so a producer either sees us parked or we see its element
+    parkedTakers.incrementAndGet();
+    try {
+      while ((obj = tryPoll()) == null) {
+        if (timeout < 0) {
+          notEmpty.await();
+        } else {
+          if (nanos <= 0) { return null; }
+          nanos = notEmpty.awaitNanos(nanos);
+        }
+      }
+      return obj;
+    } finally {
+      parkedTakers.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object peek() {
+    long pos = head.get();
+    int index = (int) pos & mask;
+    return sequences.get(index) == pos + 1 ? slots.get(index) : null;
+  }
+
+  @Override
+  public int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, mask + 1));
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+}
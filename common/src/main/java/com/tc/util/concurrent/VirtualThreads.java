@@ -0,0 +1,103 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import com.tc.lang.TCThreadGroup;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Creates virtual threads on runtimes that have them (Java 21 and later). They are looked up reflectively so the code
+ * still builds and runs on older ones.
+ * <p>
+ * Virtual threads cannot be created in a {@link ThreadGroup} and are always daemons. Callers pass the group a platform
+ * thread would have been created in as the uncaught exception handler instead. The thread then also counts as a member
+ * of that group for {@link TCThreadGroup#currentThreadInTCThreadGroup()}.
+ */
+public final class VirtualThreads {
+
+  private static final TCLogger      logger  = TCLogging.getLogger(VirtualThreads.class);
+  private static final ThreadFactory FACTORY = lookupFactory();
+  private static final AtomicBoolean WARNED  = new AtomicBoolean();
+
+  private VirtualThreads() {
+    //
+  }
+
+  private static ThreadFactory lookupFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  public static boolean isSupported() {
+    return FACTORY != null;
+  }
+
+  /**
+   * @return true if {@link TCPropertiesConsts#TC_VIRTUAL_THREADS_ENABLED} is set and the runtime supports virtual
+   *         threads
+   */
+  public static boolean isEnabled() {
+    if (!TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.TC_VIRTUAL_THREADS_ENABLED, false)) {
+      return false;
+    }
+    if (FACTORY == null && WARNED.compareAndSet(false, true)) {
+      logger.warn(TCPropertiesConsts.TC_VIRTUAL_THREADS_ENABLED + " is set but this runtime has no virtual threads, "
+                  + "using platform threads");
+    }
+    return FACTORY != null;
+  }
+
+  /**
+   * @param handler : Receives what the thread does not catch, or null for the default handler. If it is a thread
+   *        group, the thread runs as a member of it.
+   * @throws IllegalStateException if the runtime does not support virtual threads
+   */
+  public static Thread newThread(String name, Runnable runnable, UncaughtExceptionHandler handler) {
+    if (FACTORY == null) { throw new IllegalStateException("Virtual threads are not supported by this runtime"); }
+    Thread thread = FACTORY.newThread(handler instanceof ThreadGroup ? TCThreadGroup
+        .runInGroup((ThreadGroup) handler, runnable) : runnable);
+    thread.setName(name);
+    if (handler != null) {
+      thread.setUncaughtExceptionHandler(handler);
+    }
+    return thread;
+  }
+
+  /**
+   * @see #newThread(String, Runnable, UncaughtExceptionHandler)
+   */
+  public static ThreadFactory newThreadFactory(final String name, final UncaughtExceptionHandler handler) {
+    if (FACTORY == null) { throw new IllegalStateException("Virtual threads are not supported by this runtime"); }
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return VirtualThreads.newThread(name, runnable, handler);
+      }
+    };
+  }
+}
@@ -18,14 +18,28 @@ package com.tc.async.impl;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.SpecializedEventContext;
 import com.tc.async.api.Stage;
+import com.tc.async.api.UnorderedEventHandler;
 import com.tc.lang.TCThreadGroup;
 import com.tc.lang.ThrowableHandlerImpl;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.TestCase;
 
@@ -166,6 +180,113 @@ public class StageManagerImplTest extends TestCase {
     stageManager.stopAll();
   }
 
+  public void testBatchStage() throws Exception {
+    final BatchTestEventHandler batchHandler = new BatchTestEventHandler();
+    stageManager.createStage("batchStage", batchHandler, 1, 30);
+    Stage s = stageManager.getStage("batchStage");
+    for (int i = 0; i < 5; i++) {
+      s.getSink().add(new TestEventContext());
+    }
+    s.getSink().add(new SpecializedEventContext() {
+      @Override
+      public void execute() {
+        batchHandler.recordBatch(-1);
+      }
+
+      @Override
+      public Object getKey() {
+        return null;
+      }
+    });
+    for (int i = 0; i < 3; i++) {
+      s.getSink().add(new TestEventContext());
+    }
+
+    s.start(new ConfigurationContextImpl(null));
+    batchHandler.waitForEventContextCount(8, 60, SECONDS);
+    assertEquals(Arrays.asList(5, -1, 3), batchHandler.getBatches());
+    stageManager.stopAll();
+  }
+
+  public void testUnorderedStage() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final TestEventContext slow = new TestEventContext();
+    final UnorderedTestEventHandler unorderedHandler = new UnorderedTestEventHandler(slow, release);
+    stageManager.createStage("unorderedStage", unorderedHandler, 2, 30);
+    Stage s = stageManager.getStage("unorderedStage");
+    s.getSink().add(slow);
+    for (int i = 0; i < 5; i++) {
+      s.getSink().add(new TestMultiThreadedEventContext("Thread-1"));
+    }
+    assertEquals(6, s.getSink().size());
+
+    s.start(new ConfigurationContextImpl(null));
+    // whichever worker picks up the slow context, the other one handles everything else
+    unorderedHandler.waitForEventContextCount(5, 60, SECONDS);
+    assertEquals(5, unorderedHandler.getContexts().size());
+    assertFalse(unorderedHandler.getContexts().contains(slow));
+    assertEquals(0, s.getSink().size());
+    release.countDown();
+    unorderedHandler.waitForEventContextCount(6, 60, SECONDS);
+    stageManager.stopAll();
+  }
+
+  public void testLatencyStats() throws Exception {
+    stageManager.createStage("untimedStage", testEventHandler, 1, 10);
+    TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_STAGE_MONITOR_LATENCY_ENABLED, "true");
+    try {
+      stageManager.createStage("timedStage", testEventHandler, 2, 1, 10);
+    } finally {
+      TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_STAGE_MONITOR_LATENCY_ENABLED, "false");
+    }
+    Stage s = stageManager.getStage("timedStage");
+    for (int i = 0; i < 6; i++) {
+      s.getSink().add(new TestMultiThreadedEventContext(i % 2 == 0 ? "even" : "odd"));
+    }
+    s.start(new ConfigurationContextImpl(null));
+    testEventHandler.waitForEventContextCount(6, 60, SECONDS);
+
+    Map<String, Map<String, Long>> stats = stageManager.getLatencyStats();
+    assertEquals(3, stats.size());
+    assertFalse(stats.containsKey("untimedStage"));
+    assertEquals(6L, stats.get("timedStage").get("events").longValue());
+    assertEquals(3L, stats.get("timedStage[0]").get("events").longValue());
+    assertEquals(3L, stats.get("timedStage[1]").get("events").longValue());
+    assertTrue(stats.get("timedStage").get("queueWaitMaxMicros") >= stats.get("timedStage").get("queueWaitP50Micros"));
+    stageManager.stopAll();
+  }
+
+  public void testOrderedStageOnVirtualThreads() throws Exception {
+    final int keys = 4;
+    final int perKey = 200;
+    final KeyOrderEventHandler orderHandler = new KeyOrderEventHandler();
+    TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_VIRTUAL_THREADS_ENABLED, "true");
+    try {
+      stageManager.createStage("virtualStage", orderHandler, 3, 1, 10 * keys * perKey);
+    } finally {
+      TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_VIRTUAL_THREADS_ENABLED, "false");
+    }
+    Stage s = stageManager.getStage("virtualStage");
+    s.start(new ConfigurationContextImpl(null));
+    for (int i = 0; i < perKey; i++) {
+      for (int key = 0; key < keys; key++) {
+        s.getSink().add(new SequencedEventContext("key-" + key, i));
+      }
+    }
+    orderHandler.waitForEventContextCount(keys * perKey, 60, SECONDS);
+
+    // each key is handled by one worker, in the order it was added
+    assertEquals(keys, orderHandler.lastSequence.size());
+    for (int key = 0; key < keys; key++) {
+      assertEquals(Integer.valueOf(perKey - 1), orderHandler.lastSequence.get("key-" + key));
+    }
+    assertEquals(0, orderHandler.outOfOrder);
+    // the workers still count as members of the stage manager's thread group, virtual or not
+    assertEquals(0, orderHandler.outsideGroup);
+    assertEquals(VirtualThreads.isSupported(), orderHandler.groupless > 0);
+    stageManager.stopAll();
+  }
+
   /*
    * @see TestCase#tearDown()
    */
@@ -174,6 +295,80 @@ public class StageManagerImplTest extends TestCase {
     super.tearDown();
   }
 
+  private static class BatchTestEventHandler extends TestEventHandler implements BatchEventHandler {
+    private final List<Integer> batches = new ArrayList<Integer>();
+
+    @Override
+    public synchronized void handleEvents(Collection contexts) {
+      recordBatch(contexts.size());
+      for (Object context : contexts) {
+        handleEvent((EventContext) context);
+      }
+    }
+
+    synchronized void recordBatch(int size) {
+      batches.add(size);
+    }
+
+    synchronized List<Integer> getBatches() {
+      return new ArrayList<Integer>(batches);
+    }
+  }
+
+  private static class UnorderedTestEventHandler extends TestEventHandler implements UnorderedEventHandler {
+    private final EventContext   slow;
+    private final CountDownLatch release;
+
+    UnorderedTestEventHandler(EventContext slow, CountDownLatch release) {
+      this.slow = slow;
+      this.release = release;
+    }
+
+    @Override
+    public void handleEvent(EventContext context) {
+      if (context == slow) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+      super.handleEvent(context);
+    }
+  }
+
+  private static class KeyOrderEventHandler extends TestEventHandler {
+    final Map<Object, Integer> lastSequence = new HashMap<Object, Integer>();
+    int                        outOfOrder;
+    int                        outsideGroup;
+    int                        groupless;
+
+    @Override
+    public synchronized void handleEvent(EventContext context) {
+      SequencedEventContext sequenced = (SequencedEventContext) context;
+      Integer last = lastSequence.put(sequenced.getKey(), sequenced.sequence);
+      if (sequenced.sequence != (last == null ? 0 : last + 1)) {
+        outOfOrder++;
+      }
+      if (!TCThreadGroup.currentThreadInTCThreadGroup()) {
+        outsideGroup++;
+      }
+      if (!(Thread.currentThread().getThreadGroup() instanceof TCThreadGroup)) {
+        groupless++;
+      }
+      super.handleEvent(context);
+    }
+  }
+
+  private static class SequencedEventContext extends TestMultiThreadedEventContext {
+    final int sequence;
+
+    SequencedEventContext(String key, int sequence) {
+      super(key);
+      this.sequence = sequence;
+    }
+  }
+
   private static class TestEventContext implements EventContext {
     public TestEventContext() {
       //
@@ -0,0 +1,71 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats;
+
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import junit.framework.TestCase;
+
+@Category(CheckShorts.class)
+public class HistogramTest extends TestCase {
+
+  public void testBuckets() {
+    assertEquals(0, Histogram.bucketOf(0));
+    assertEquals(0, Histogram.bucketOf(-5));
+    assertEquals(1, Histogram.bucketOf(1));
+    assertEquals(2, Histogram.bucketOf(2));
+    assertEquals(2, Histogram.bucketOf(3));
+    assertEquals(11, Histogram.bucketOf(1024));
+    assertEquals(63, Histogram.bucketOf(Long.MAX_VALUE));
+    assertEquals(1023, Histogram.upperBoundOf(10));
+    assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(63));
+  }
+
+  public void testPercentiles() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(99));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50.5, histogram.getMean(), 0.001);
+    assertEquals(63, histogram.getPercentile(50));
+    assertEquals(100, histogram.getPercentile(99));
+    assertEquals(1, histogram.getBucketCounts()[1]);
+    assertEquals(37, histogram.getBucketCounts()[7]);
+  }
+
+  public void testMerge() {
+    Histogram a = new Histogram();
+    Histogram b = new Histogram();
+    for (int i = 1; i <= 50; i++) {
+      a.record(i);
+    }
+    for (int i = 51; i <= 100; i++) {
+      b.record(i);
+    }
+    a.merge(b);
+    a.merge(new Histogram());
+    assertEquals(100, a.getCount());
+    assertEquals(100, a.getMax());
+    assertEquals(50.5, a.getMean(), 0.001);
+    assertEquals(37, a.getBucketCounts()[7]);
+    assertEquals(50, b.getCount());
+  }
+}
@@ -16,6 +16,7 @@
  */
 package com.tc.util.concurrent;
 
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.test.TCTestCase;
 import com.tc.util.Assert;
 
@@ -32,4 +33,14 @@ public class QueueFactoryTest extends TCTestCase {
 
     Assert.assertTrue(queue instanceof TCLinkedBlockingQueue);
   }
+
+  public void testRingBufferPerStage() {
+    TCPropertiesImpl.getProperties().setProperty("seda.QueueFactoryTest.queue", QueueFactory.RING_BUFFER);
+    QueueFactory qFactory = new QueueFactory();
+
+    Assert.assertTrue(qFactory.createInstance("QueueFactoryTest", 100) instanceof TCRingBufferQueue);
+    // unbounded stages keep the linked queue
+    Assert.assertTrue(qFactory.createInstance("QueueFactoryTest", Integer.MAX_VALUE) instanceof TCLinkedBlockingQueue);
+    Assert.assertTrue(qFactory.createInstance("OtherStage", 100) instanceof TCLinkedBlockingQueue);
+  }
 }
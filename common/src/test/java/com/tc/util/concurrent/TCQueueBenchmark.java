@@ -0,0 +1,99 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TCLinkedBlockingQueue} with {@link TCRingBufferQueue} as a stage queue: four threads putting and
+ * either one thread taking, as with {@code threadsToQueueRatio=1}, or four threads taking from the same queue, as with a
+ * shared stage queue. Both queues are bounded the way a stage with a sink capacity is. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=<this class>}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TCQueueBenchmark {
+
+  private static final Object EVENT = new Object();
+
+  @Param({ "linked", "ringBuffer" })
+  private String              queueType;
+
+  @Param({ "1024" })
+  private int                 capacity;
+
+  private TCQueue             queue;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    queue = "linked".equals(queueType) ? new TCLinkedBlockingQueue(capacity) : new TCRingBufferQueue(capacity);
+  }
+
+  @Benchmark
+  @Group("singleConsumer")
+  @GroupThreads(4)
+  public void singleConsumerPut() throws InterruptedException {
+    // offer with a timeout so producers don't hang once the taker has stopped at the end of an iteration
+    queue.offer(EVENT, 10);
+  }
+
+  @Benchmark
+  @Group("singleConsumer")
+  @GroupThreads(1)
+  public Object singleConsumerTake() throws InterruptedException {
+    return queue.poll(10);
+  }
+
+  @Benchmark
+  @Group("sharedQueue")
+  @GroupThreads(4)
+  public void sharedQueuePut() throws InterruptedException {
+    queue.offer(EVENT, 10);
+  }
+
+  @Benchmark
+  @Group("sharedQueue")
+  @GroupThreads(4)
+  public Object sharedQueueTake() throws InterruptedException {
+    return queue.poll(10);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(TCQueueBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,143 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import com.tc.test.TCTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TCRingBufferQueueTest extends TCTestCase {
+
+  public void testCapacityIsRoundedUp() {
+    assertEquals(1, new TCRingBufferQueue(1).capacity());
+    assertEquals(128, new TCRingBufferQueue(100).capacity());
+    assertEquals(128, new TCRingBufferQueue(128).capacity());
+  }
+
+  public void testFifoAndBounds() throws Exception {
+    TCRingBufferQueue queue = new TCRingBufferQueue(4);
+    assertTrue(queue.isEmpty());
+    assertNull(queue.peek());
+    assertNull(queue.poll(0));
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(Integer.valueOf(i), 0));
+    }
+    assertEquals(4, queue.size());
+    assertFalse(queue.offer(Integer.valueOf(4), 0));
+    assertFalse(queue.offer(Integer.valueOf(4), 10));
+
+    assertEquals(Integer.valueOf(0), queue.peek());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(Integer.valueOf(i), queue.take());
+    }
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll(10));
+  }
+
+  public void testWrapsAround() throws Exception {
+    TCRingBufferQueue queue = new TCRingBufferQueue(2);
+    for (int i = 0; i < 100; i++) {
+      queue.put(Integer.valueOf(i));
+      assertEquals(Integer.valueOf(i), queue.poll(0));
+    }
+  }
+
+  public void testParkedTakerIsWoken() throws Exception {
+    final TCRingBufferQueue queue = new TCRingBufferQueue(2);
+    final Object[] taken = new Object[1];
+    Thread taker = new Thread() {
+      @Override
+      public void run() {
+        try {
+          taken[0] = queue.take();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    taker.start();
+    Thread.sleep(200);
+    queue.put("x");
+    taker.join(10000);
+    assertFalse(taker.isAlive());
+    assertEquals("x", taken[0]);
+  }
+
+  public void testParkedPutterIsWoken() throws Exception {
+    final TCRingBufferQueue queue = new TCRingBufferQueue(1);
+    queue.put("a");
+    Thread putter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          queue.put("b");
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    putter.start();
+    Thread.sleep(200);
+    assertEquals("a", queue.take());
+    putter.join(10000);
+    assertFalse(putter.isAlive());
+    assertEquals("b", queue.poll(0));
+  }
+
+  public void testManyProducersOneConsumer() throws Exception {
+    final int producers = 4;
+    final int perProducer = 100000;
+    final TCRingBufferQueue queue = new TCRingBufferQueue(64);
+    final CountDownLatch start = new CountDownLatch(1);
+    for (int p = 0; p < producers; p++) {
+      final long base = (long) p * perProducer;
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < perProducer; i++) {
+              queue.put(Long.valueOf(base + i));
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      }.start();
+    }
+
+    start.countDown();
+    long[] last = new long[producers];
+    for (int p = 0; p < producers; p++) {
+      last[p] = -1;
+    }
+    AtomicLong sum = new AtomicLong();
+    for (int i = 0; i < producers * perProducer; i++) {
+      long value = ((Long) queue.take()).longValue();
+      int producer = (int) (value / perProducer);
+      // each producer's elements come out in the order it put them
+      assertTrue(value > last[producer]);
+      last[producer] = value;
+      sum.addAndGet(value);
+    }
+    long n = (long) producers * perProducer;
+    assertEquals(n * (n - 1) / 2, sum.get());
+    assertTrue(queue.isEmpty());
+  }
+}
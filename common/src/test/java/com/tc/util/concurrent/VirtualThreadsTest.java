@@ -0,0 +1,77 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.test.TCTestCase;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VirtualThreadsTest extends TCTestCase {
+
+  public void testDisabledByDefault() {
+    assertFalse(VirtualThreads.isEnabled());
+  }
+
+  public void testEnabledOnlyWhenSupported() {
+    TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_VIRTUAL_THREADS_ENABLED, "true");
+    try {
+      assertEquals(VirtualThreads.isSupported(), VirtualThreads.isEnabled());
+    } finally {
+      TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_VIRTUAL_THREADS_ENABLED, "false");
+    }
+  }
+
+  public void testNewThread() throws Exception {
+    final AtomicReference<Throwable> uncaught = new AtomicReference<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final UncaughtExceptionHandler handler = new UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread t, Throwable e) {
+        uncaught.set(e);
+        done.countDown();
+      }
+    };
+    final Runnable failing = new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("expected");
+      }
+    };
+
+    if (!VirtualThreads.isSupported()) {
+      try {
+        VirtualThreads.newThread("test", failing, handler);
+        fail();
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      return;
+    }
+
+    Thread thread = VirtualThreads.newThreadFactory("virtual-test", handler).newThread(failing);
+    assertEquals("virtual-test", thread.getName());
+    assertTrue(thread.isDaemon());
+    thread.start();
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertEquals("expected", uncaught.get().getMessage());
+  }
+}
@@ -173,6 +173,11 @@ public class TCServerInfo extends AbstractTerracottaMBean implements TCServerInf
     return server.getActivateTime();
   }
 
+  @Override
+  public Map<String, Long> getStartupTimings() {
+    return server.getStartupTimings();
+  }
+
   @Override
   public boolean isGarbageCollectionEnabled() {
     return server.isGarbageCollectionEnabled();
@@ -477,6 +477,12 @@ public class TCServerImpl extends SEDA implements TCServer {
     return this.activateTime;
   }
 
+  @Override
+  public Map<String, Long> getStartupTimings() {
+    if (this.dsoServer != null) { return this.dsoServer.getStartupTimings(); }
+    return Collections.emptyMap();
+  }
+
   @Override
   public boolean isGarbageCollectionEnabled() {
     return this.configurationSetupManager.dsoL2Config().garbageCollection().getEnabled();
@@ -1051,7 +1057,9 @@ public class TCServerImpl extends SEDA implements TCServer {
     TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider = this.dsoServer
         .getOperatorEventsHistoryProvider();
     DSOMBean dso = new DSO(mgmtContext, configContext, mBeanServer, gcStatsPublisher, operatorEventHistoryProvider,
-                           this.dsoServer.getOffheapStats(), this.dsoServer.getStorageStats());
+                           this.dsoServer.getOffheapStats(), this.dsoServer.getStorageStats(),
+                           this.dsoServer.getStageManager(),
+                           this.dsoServer.getCommunicationsManager().getConnectionManager());
     mBeanServer.registerMBean(dso, L2MBeanNames.DSO);
   }
 
@@ -43,6 +43,11 @@ public class NullTCServerInfo extends AbstractTerracottaMBean implements TCServe
     return 0;
   }
 
+  @Override
+  public Map<String, Long> getStartupTimings() {
+    return null;
+  }
+
   @Override
   public String getBuildID() {
     return "";
@@ -1,6 +1,8 @@
 package com.tc.net.core;
 
 import com.tc.net.core.security.TCSecurityManager;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 
 /**
  * Created by alsu on 27/01/16.
@@ -19,7 +21,8 @@ public class BufferManagerFactoryProviderImpl implements BufferManagerFactoryPro
     if (securityManager != null) {
       return securityManager.getBufferManagerFactory();
     } else {
-      return new ClearTextBufferManagerFactory();
+      return new ClearTextBufferManagerFactory(TCPropertiesImpl.getProperties()
+          .getBoolean(TCPropertiesConsts.NET_CORE_GATHERING_ENABLED, false));
     }
   }
 }
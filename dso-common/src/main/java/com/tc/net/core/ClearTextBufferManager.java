@@ -34,13 +34,19 @@ class ClearTextBufferManager implements BufferManager {
   private static final String   BUFFER_SIZE    = "clear.text.buffer.size";
   private static final int      BUFFER_SIZE_KB = Integer.getInteger(BUFFER_SIZE, 16) * 1024;
   private final SocketChannel   channel;
-  private final ByteBuffer      sendBuffer     = ByteBuffer.allocate(BUFFER_SIZE_KB);
-  private final ByteBuffer      recvBuffer     = ByteBuffer.allocate(BUFFER_SIZE_KB);
+  private final ByteBuffer      sendBuffer;
+  private final ByteBuffer      recvBuffer;
 
   ClearTextBufferManager(SocketChannel channel) {
+    this(channel, false);
+  }
+
+  ClearTextBufferManager(SocketChannel channel, boolean direct) {
     this.channel = channel;
+    this.sendBuffer = direct ? ByteBuffer.allocateDirect(BUFFER_SIZE_KB) : ByteBuffer.allocate(BUFFER_SIZE_KB);
+    this.recvBuffer = direct ? ByteBuffer.allocateDirect(BUFFER_SIZE_KB) : ByteBuffer.allocate(BUFFER_SIZE_KB);
     if (logger.isDebugEnabled()) {
-      logger.debug("ClearTextBufferManager " + BUFFER_SIZE + " " + BUFFER_SIZE_KB);
+      logger.debug("ClearTextBufferManager " + BUFFER_SIZE + " " + BUFFER_SIZE_KB + (direct ? " direct" : ""));
     }
   }
 
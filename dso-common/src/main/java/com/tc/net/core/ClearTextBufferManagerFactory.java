@@ -22,8 +22,25 @@ import java.nio.channels.SocketChannel;
  * @author Ludovic Orban
  */
 public class ClearTextBufferManagerFactory implements BufferManagerFactory {
+  private final boolean gathering;
+
+  public ClearTextBufferManagerFactory() {
+    this(false);
+  }
+
+  /**
+   * @param gathering whether connections should write and read message buffers straight to and from the channel, see
+   *        {@link GatheringBufferManager}
+   */
+  public ClearTextBufferManagerFactory(boolean gathering) {
+    this.gathering = gathering;
+  }
+
   @Override
   public BufferManager createBufferManager(SocketChannel socketChannel, boolean client) {
+    if (gathering) {
+      return new GatheringClearTextBufferManager(socketChannel);
+    }
     return new ClearTextBufferManager(socketChannel);
   }
 }
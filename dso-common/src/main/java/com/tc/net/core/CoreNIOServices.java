@@ -47,11 +47,14 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -174,6 +177,85 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
   }
 
+  /**
+   * @return how long the reader thread has spent waiting in select, in nanoseconds
+   */
+  public long getReaderIdleNanos() {
+    return readerComm.getIdleNanos();
+  }
+
+  /**
+   * @return how long the writer thread has spent waiting in select, in nanoseconds
+   */
+  public long getWriterIdleNanos() {
+    return writerComm.getIdleNanos();
+  }
+
+  /**
+   * @return how many interest changes and other tasks have been handed to the comm threads by other threads
+   */
+  public long getSelectorTasksAdded() {
+    return readerComm.getSelectorTasksAdded() + writerComm.getSelectorTasksAdded();
+  }
+
+  /**
+   * @return how many times the comm threads have been woken up to run those tasks
+   */
+  public long getSelectorWakeups() {
+    return readerComm.getSelectorWakeups() + writerComm.getSelectorWakeups();
+  }
+
+  List<TCConnectionImpl> getManagedConnections() {
+    synchronized (managedConnectionsMap) {
+      final List<TCConnectionImpl> connections = new ArrayList<TCConnectionImpl>(managedConnectionsMap.size());
+      for (TCConnection connection : managedConnectionsMap.keySet()) {
+        connections.add((TCConnectionImpl) connection);
+      }
+      return connections;
+    }
+  }
+
+  /**
+   * Hands a connection this worker comm manages over to another one, along with its weight. Both comm threads here
+   * forget the channel before the target registers it, so the connection is never read or written by two selectors.
+   *
+   * @return false if the connection is no longer managed here
+   */
+  boolean moveConnection(final TCConnectionImpl connection, final CoreNIOServices target) {
+    final Integer weight;
+    synchronized (managedConnectionsMap) {
+      weight = managedConnectionsMap.remove(connection);
+      if (weight == null) { return false; }
+      this.clientWeights -= weight;
+      connection.removeListener(this);
+    }
+
+    // interest requests still on their way to this worker are dropped once the connection points elsewhere
+    final SocketChannel channel = connection.getChannel();
+    connection.setCommWorker(target);
+    readerComm.unregister(channel);
+    writerComm.unregister(channel);
+
+    target.addConnection(connection, weight);
+    if (connection.isClosed()) {
+      // the close event went to neither of us
+      target.forgetConnection(connection);
+      return false;
+    }
+    target.requestReadWriteInterest(connection, channel);
+    return true;
+  }
+
+  private void forgetConnection(TCConnection connection) {
+    synchronized (managedConnectionsMap) {
+      final Integer weight = managedConnectionsMap.remove(connection);
+      if (weight != null) {
+        this.clientWeights -= weight;
+        connection.removeListener(this);
+      }
+    }
+  }
+
   protected CommThread getReaderComm() {
     return this.readerComm;
   }
@@ -276,6 +358,20 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     writerComm.removeWriteInterest(conn, channel);
   }
 
+  /**
+   * Takes the write interest of the connection away and gives it back once the delay has passed, on whichever worker
+   * the connection is with by then. Only to be called from the writer comm thread.
+   */
+  void deferWriteInterest(final TCConnectionImpl conn, final SocketChannel channel, final long delayNanos) {
+    writerComm.removeWriteInterest(conn, channel);
+    writerComm.schedule(delayNanos, new Runnable() {
+      @Override
+      public void run() {
+        conn.getCommWorker().requestWriteInterest(conn, channel);
+      }
+    });
+  }
+
   private void requestReadWriteInterest(TCConnectionImpl conn, SocketChannel sc) {
     readerComm.requestReadInterest(conn, sc);
     writerComm.requestWriteInterest(conn, sc);
@@ -283,10 +379,17 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
 
   protected class CommThread extends Thread {
     private final Selector            selector;
-    private final LinkedBlockingQueue selectorTasks;
+    private final Queue<Runnable>     selectorTasks;
     private final String              name;
     private final AtomicLong          bytesRead    = new AtomicLong(0);
     private final AtomicLong          bytesWritten = new AtomicLong(0);
+    private final AtomicLong          idleNanos    = new AtomicLong(0);
+    private final AtomicLong          tasksAdded   = new AtomicLong(0);
+    private final AtomicLong          wakeups      = new AtomicLong(0);
+    // set by whoever wakes the selector up, cleared by this thread before it runs the selector tasks
+    private final AtomicBoolean       wakeupPending = new AtomicBoolean(false);
+    // only touched by this thread, see schedule()
+    private final PriorityQueue<TimedTask> timedTasks = new PriorityQueue<TimedTask>();
     private final COMM_THREAD_MODE    mode;
 
     public CommThread(final COMM_THREAD_MODE mode) {
@@ -295,7 +398,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       setName(name);
 
       this.selector = createSelector();
-      this.selectorTasks = new LinkedBlockingQueue();
+      this.selectorTasks = new ConcurrentLinkedQueue<Runnable>();
       this.mode = mode;
     }
 
@@ -337,7 +440,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       try {
         for (int i = 0; i < tries; i++) {
           try {
-            selector1 = Selector.open();
+            selector1 = NIOProvider.get().openSelector();
             return selector1;
           } catch (IOException ioe) {
             throw new RuntimeException(ioe);
@@ -363,21 +466,64 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
 
     void addSelectorTask(final Runnable task) {
-      boolean isInterrupted = false;
+      this.selectorTasks.add(task);
+      this.tasksAdded.incrementAndGet();
+      // Every wakeup is a system call on the selector's wakeup pipe and a trip around the select loop. Tasks queued
+      // while one is still pending are picked up by the same trip, as the flag is only cleared before the queue is
+      // drained.
+      if (this.wakeupPending.compareAndSet(false, true)) {
+        this.wakeups.incrementAndGet();
+        this.selector.wakeup();
+      }
+    }
 
-      try {
-        while (true) {
-          try {
-            this.selectorTasks.put(task);
-            break;
-          } catch (InterruptedException e) {
-            logger.warn(e);
-            isInterrupted = true;
-          }
+    /**
+     * Runs the task on this thread once the delay has passed, rounded up to the millisecond the selector waits in. Only
+     * to be called from this thread.
+     */
+    void schedule(final long delayNanos, final Runnable task) {
+      Assert.eval(Thread.currentThread() == this);
+      this.timedTasks.add(new TimedTask(System.nanoTime() + delayNanos, task));
+    }
+
+    /**
+     * @return how long the selector may wait for the next timed task, zero if one is due and -1 if there is none
+     */
+    private long selectTimeoutMillis() {
+      final TimedTask next = this.timedTasks.peek();
+      if (next == null) { return -1; }
+      final long remaining = next.deadline - System.nanoTime();
+      if (remaining <= 0) { return 0; }
+      return Math.max(1, (remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Runs the queued and the due timed tasks. Has to happen on every trip around the select loop, a trip that skipped
+     * it would leave the wakeup flag set and the next tasks queued without waking the selector.
+     */
+    private void runSelectorTasks() {
+      this.wakeupPending.set(false);
+      Runnable task;
+      while ((task = this.selectorTasks.poll()) != null) {
+        try {
+          task.run();
+        } catch (Exception e) {
+          logger.error("error running selector task", e);
+        }
+      }
+      runTimedTasks();
+    }
+
+    private void runTimedTasks() {
+      final long now = System.nanoTime();
+      TimedTask next;
+      while ((next = this.timedTasks.peek()) != null && next.deadline - now <= 0) {
+        this.timedTasks.poll();
+        try {
+          next.task.run();
+        } catch (Exception e) {
+          logger.error("error running timed selector task", e);
         }
-      } finally {
-        this.selector.wakeup();
-        Util.selfInterruptIfNeeded(isInterrupted);
       }
     }
 
@@ -524,7 +670,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       }
     }
 
-    private void dispose(Selector localSelector, LinkedBlockingQueue localSelectorTasks) {
+    private void dispose(Selector localSelector, Queue<Runnable> localSelectorTasks) {
       Assert.eval(Thread.currentThread() == this);
 
       if (localSelector != null) {
@@ -558,27 +704,39 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       Assert.eval(Thread.currentThread() == this);
 
       Selector localSelector = this.selector;
-      LinkedBlockingQueue localSelectorTasks = this.selectorTasks;
 
       while (true) {
         final int numKeys;
+        final long selectStart = System.nanoTime();
         try {
-          numKeys = localSelector.select();
+          final long timeout = selectTimeoutMillis();
+          if (timeout < 0) {
+            numKeys = localSelector.select();
+          } else if (timeout == 0) {
+            numKeys = localSelector.selectNow();
+          } else {
+            numKeys = localSelector.select(timeout);
+          }
         } catch (IOException ioe) {
           if (NIOWorkarounds.linuxSelectWorkaround(ioe)) {
             logger.warn("working around Sun bug 4504001");
+            runSelectorTasks();
             continue;
           }
 
           if (NIOWorkaroundsTemp.solarisSelectWorkaround(ioe)) {
             logger.warn("working around Solaris select IOException");
+            runSelectorTasks();
             continue;
           }
 
           throw ioe;
         } catch (CancelledKeyException cke) {
           logger.warn("Cencelled Key " + cke);
+          runSelectorTasks();
           continue;
+        } finally {
+          this.idleNanos.addAndGet(System.nanoTime() - selectStart);
         }
 
         if (isStopRequested()) {
@@ -588,31 +746,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
           return;
         }
 
-        boolean isInterrupted = false;
-        // run any pending selector tasks
-        while (true) {
-          Runnable task;
-          while (true) {
-            try {
-              task = (Runnable) localSelectorTasks.poll(0, TimeUnit.MILLISECONDS);
-              break;
-            } catch (InterruptedException ie) {
-              logger.error("Error getting task from task queue", ie);
-              isInterrupted = true;
-            }
-          }
-
-          if (null == task) {
-            break;
-          }
-
-          try {
-            task.run();
-          } catch (Exception e) {
-            logger.error("error running selector task", e);
-          }
-        }
-        Util.selfInterruptIfNeeded(isInterrupted);
+        runSelectorTasks();
 
         final Set selectedKeys = localSelector.selectedKeys();
         if ((0 == numKeys) && (0 == selectedKeys.size())) {
@@ -742,6 +876,18 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       return this.bytesWritten.get();
     }
 
+    long getIdleNanos() {
+      return this.idleNanos.get();
+    }
+
+    long getSelectorTasksAdded() {
+      return this.tasksAdded.get();
+    }
+
+    long getSelectorWakeups() {
+      return this.wakeups.get();
+    }
+
     private void handleRequest(final InterestRequest req) {
       // ignore the request if we are stopped/stopping
       if (isStopRequested()) { return; }
@@ -770,6 +916,15 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       Selector localSelector = null;
       localSelector = selector;
 
+      if (request.attachment instanceof TCConnectionImpl
+          && ((TCConnectionImpl) request.attachment).getCommWorker() != CoreNIOServices.this) {
+        // the connection moved to another worker comm since this request was made
+        if (logger.isDebugEnabled()) {
+          logger.debug("Skipping modifyInterest for a connection that moved - " + request);
+        }
+        return;
+      }
+
       try {
         final int existingOps;
 
@@ -900,6 +1055,23 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
   }
 
+  private static final class TimedTask implements Comparable<TimedTask> {
+    private final long     deadline;
+    private final Runnable task;
+
+    TimedTask(final long deadline, final Runnable task) {
+      this.deadline = deadline;
+      this.task = task;
+    }
+
+    @Override
+    public int compareTo(final TimedTask other) {
+      // nanoTime values are only comparable through their difference
+      final long diff = this.deadline - other.deadline;
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+  }
+
   /**
    * A temporary class. These apis are available in the latest tim-api version. Since, TC 3.6 can't use the newer
    * tim-api version, having a copy of them here.
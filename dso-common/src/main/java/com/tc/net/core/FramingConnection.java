@@ -0,0 +1,32 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+/**
+ * A {@link TCConnection} that can switch to exchanging length prefixed frames once both ends agreed to it in the
+ * transport handshake. Frames at least {@code net.core.compression.threshold} bytes long are deflated when that saves
+ * space.
+ */
+public interface FramingConnection {
+
+  /**
+   * Frames every message queued after this call and expects frames from the peer from now on. The caller has to make
+   * sure the peer switches at the same point in the conversation.
+   */
+  void enableFraming();
+
+}
@@ -0,0 +1,48 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BufferManager} that can write and read the caller's buffers straight to and from the channel, with a single
+ * gathering or scattering call, instead of copying them through buffers of its own first. The copying methods are
+ * still used where the connection has been detached to a {@link PipeSocket}.
+ */
+public interface GatheringBufferManager extends BufferManager {
+
+  /**
+   * @return the number of bytes written, possibly 0 if the socket send buffer is full
+   */
+  long sendFrom(ByteBuffer[] srcs, int offset, int length) throws IOException;
+
+  /**
+   * @return the number of bytes read, possibly 0 if nothing was available
+   */
+  long recvTo(ByteBuffer[] dsts, int offset, int length) throws IOException;
+
+  /**
+   * @return the number of write calls made on the channel so far
+   */
+  long getChannelWrites();
+
+  /**
+   * @return the number of read calls made on the channel so far
+   */
+  long getChannelReads();
+}
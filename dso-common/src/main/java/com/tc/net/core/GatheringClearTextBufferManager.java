@@ -0,0 +1,76 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cleartext {@link GatheringBufferManager}. Its own buffers are direct, as they are only used by a
+ * {@link PipeSocket} and then go straight to the channel.
+ */
+class GatheringClearTextBufferManager extends ClearTextBufferManager implements GatheringBufferManager {
+  private final SocketChannel channel;
+  private final AtomicLong    channelWrites = new AtomicLong();
+  private final AtomicLong    channelReads  = new AtomicLong();
+
+  GatheringClearTextBufferManager(SocketChannel channel) {
+    super(channel, true);
+    this.channel = channel;
+  }
+
+  @Override
+  public long sendFrom(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    channelWrites.incrementAndGet();
+    long written = channel.write(srcs, offset, length);
+    if (written == -1) { throw new EOFException(); }
+    return written;
+  }
+
+  @Override
+  public long recvTo(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    channelReads.incrementAndGet();
+    long read = channel.read(dsts, offset, length);
+    if (read == -1) { throw new EOFException(); }
+    return read;
+  }
+
+  @Override
+  public int sendFromBuffer() throws IOException {
+    channelWrites.incrementAndGet();
+    return super.sendFromBuffer();
+  }
+
+  @Override
+  public int recvToBuffer() throws IOException {
+    channelReads.incrementAndGet();
+    return super.recvToBuffer();
+  }
+
+  @Override
+  public long getChannelWrites() {
+    return channelWrites.get();
+  }
+
+  @Override
+  public long getChannelReads() {
+    return channelReads.get();
+  }
+}
@@ -0,0 +1,65 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import java.nio.channels.spi.SelectorProvider;
+
+/**
+ * Picks the {@link SelectorProvider} that every selector, socket channel and server socket channel of the comm layer
+ * is opened through. Channels can only be registered with selectors of the provider that opened them, so they all have
+ * to come from the same place.
+ * <p>
+ * The platform default is used unless <code>net.core.selector.provider</code> names another provider, for example a
+ * native edge-triggered epoll or io_uring one on Linux. A provider that cannot be loaded is logged and the platform
+ * default is used instead.
+ */
+final class NIOProvider {
+  private static final TCLogger         logger   = TCLogging.getLogger(NIOProvider.class);
+
+  private static final SelectorProvider PROVIDER = load(TCPropertiesImpl.getProperties()
+                                                     .getProperty(TCPropertiesConsts.NET_CORE_SELECTOR_PROVIDER, true));
+
+  private NIOProvider() {
+    // static helper
+  }
+
+  static SelectorProvider get() {
+    return PROVIDER;
+  }
+
+  static SelectorProvider load(String className) {
+    if (className == null || className.trim().length() == 0) { return SelectorProvider.provider(); }
+
+    try {
+      final Class<?> c = Class.forName(className.trim(), true, NIOProvider.class.getClassLoader());
+      final SelectorProvider provider = (SelectorProvider) c.newInstance();
+      logger.info("Using selector provider " + c.getName());
+      return provider;
+    } catch (Exception e) {
+      logger.warn("Cannot use selector provider " + className + ", falling back to " + SelectorProvider.provider(), e);
+      return SelectorProvider.provider();
+    } catch (LinkageError e) {
+      logger.warn("Cannot use selector provider " + className + ", falling back to " + SelectorProvider.provider(), e);
+      return SelectorProvider.provider();
+    }
+  }
+}
@@ -34,6 +34,7 @@ import com.tc.net.protocol.transport.WireProtocolMessage;
 import com.tc.net.protocol.transport.WireProtocolMessageImpl;
 import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.stats.Histogram;
 import com.tc.util.Assert;
 import com.tc.util.TCTimeoutException;
 import com.tc.util.concurrent.SetOnceFlag;
@@ -52,6 +53,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -70,11 +72,12 @@ import javax.net.ssl.SSLHandshakeException;
  * @author teck
  * @author mgovinda
  */
-final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannelWriter {
+final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannelWriter, FramingConnection {
 
   private static final long                  NO_CONNECT_TIME             = -1L;
   private static final TCLogger              logger                      = TCLogging.getLogger(TCConnection.class);
   private static final long                  WARN_THRESHOLD              = 0x400000L;                                                    // 4MB
+  private static final int                   MAX_GATHERED_BUFFERS        = 64;
 
   private volatile CoreNIOServices           commWorker;
   private volatile SocketChannel             channel;
@@ -99,10 +102,18 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private final SocketParams                 socketParams;
   private final AtomicLong                   totalRead                   = new AtomicLong(0);
   private final AtomicLong                   totalWrite                  = new AtomicLong(0);
+  private final AtomicLong                   ioEvents                    = new AtomicLong(0);
   private final ArrayList<WriteContext>      writeContexts               = new ArrayList<WriteContext>();
   private final Object                       pipeSocketWriteInterestLock = new Object();
   private boolean                            hasPipeSocketWriteInterest  = false;
   private int                                writeBufferSize             = 0;
+  // set once framing is enabled, reads go through it from then on
+  private volatile WireFrameCodec            frameCodec;
+  // guarded by writeMessages, the first unframedMessages queued messages predate enableFraming()
+  private WireFrameCodec                     outboundCodec;
+  private int                                unframedMessages            = 0;
+  // guarded by writeMessages, null unless a coalescing budget is configured
+  private final WriteCoalescer               coalescer;
 
   private static final boolean               MSG_GROUPING_ENABLED        = TCPropertiesImpl
       .getProperties()
@@ -115,8 +126,26 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       .getProperties()
       .getBoolean(TCPropertiesConsts.TC_MESSAGE_PACKUP_ENABLED,
           true);
+  private static final boolean               COMPRESSION_ENABLED         = TCPropertiesImpl
+      .getProperties()
+      .getBoolean(TCPropertiesConsts.NET_CORE_COMPRESSION_ENABLED,
+          false);
+  private static final int                   COMPRESSION_THRESHOLD       = TCPropertiesImpl
+      .getProperties()
+      .getInt(TCPropertiesConsts.NET_CORE_COMPRESSION_THRESHOLD,
+          4096);
+  private static final int                   MAX_FRAME_SIZE              = (int) Math
+      .min(TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.NET_CORE_COMPRESSION_MAX_FRAME_SIZE_MB, 256)
+           * 1024 * 1024, WireFrameCodec.MAX_FRAME_SIZE);
+  private static final long                  COALESCING_BUDGET_MICROS    = TCPropertiesImpl
+      .getProperties()
+      .getLong(TCPropertiesConsts.TC_MESSAGE_COALESCING_BUDGET_MICROS,
+          0);
   private final Object                       readerLock                  = new Object();
   private final Object                       writerLock                  = new Object();
+  // nio views handed to the gathering buffer manager, guarded by readerLock and writerLock respectively
+  private ByteBuffer[]                       scatterBuffers              = new ByteBuffer[0];
+  private final ByteBuffer[]                 gatherBuffers               = new ByteBuffer[MAX_GATHERED_BUFFERS];
 
   static {
     logger.info("Comms Message Batching " + (MSG_GROUPING_ENABLED ? "enabled" : "disabled"));
@@ -168,12 +197,52 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
     this.socketParams = socketParams;
     this.commWorker = nioServiceThread;
+    this.coalescer = COALESCING_BUDGET_MICROS > 0 ? new WriteCoalescer(COALESCING_BUDGET_MICROS) : null;
   }
 
   public void setCommWorker(final CoreNIOServices worker) {
     this.commWorker = worker;
   }
 
+  CoreNIOServices getCommWorker() {
+    return this.commWorker;
+  }
+
+  SocketChannel getChannel() {
+    return this.channel;
+  }
+
+  /**
+   * @return the bytes read and written so far, see {@link TCWorkerCommManager} for what this is used for
+   */
+  long getTotalBytesTransferred() {
+    return this.totalRead.get() + this.totalWrite.get();
+  }
+
+  /**
+   * @return the number of times a comm thread got to read or write this connection
+   */
+  long getTotalIoEvents() {
+    return this.ioEvents.get();
+  }
+
+  /**
+   * Adds the sizes and added delays of the batches written so far to the given histograms, if writes are coalesced.
+   */
+  void addCoalescingStatsTo(final Histogram batchSizes, final Histogram addedDelays) {
+    if (this.coalescer != null) {
+      batchSizes.merge(this.coalescer.getBatchSizes());
+      addedDelays.merge(this.coalescer.getAddedDelays());
+    }
+  }
+
+  /**
+   * @return the codec framing this connection, or null if it did not negotiate framing
+   */
+  WireFrameCodec getFrameCodec() {
+    return this.frameCodec;
+  }
+
   private void closeImpl(final Runnable callback) {
     Assert.assertTrue(this.closed.isSet());
 
@@ -194,8 +263,16 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     } finally {
       synchronized (this.writeMessages) {
         this.writeMessages.clear();
+        if (this.coalescer != null) {
+          this.coalescer.cleared();
+          logger.info("Closed connection " + this.channel + ": " + this.coalescer);
+        }
       }
     }
+    final WireFrameCodec codec = this.frameCodec;
+    if (codec != null) {
+      logger.info("Closed framed connection " + this.channel + ": " + codec);
+    }
     try {
       if (pipeSocket != null) {
         synchronized (pipeSocketWriteInterestLock) {
@@ -246,7 +323,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   private SocketChannel createChannel() throws IOException, SocketException {
-    final SocketChannel rv = SocketChannel.open();
+    final SocketChannel rv = NIOProvider.get().openSocketChannel();
     final Socket s = rv.socket();
     this.socketParams.applySocketParams(s);
     return rv;
@@ -303,12 +380,27 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   @Override
   public int doRead() throws IOException {
+    this.ioEvents.incrementAndGet();
     synchronized (readerLock) {
       return doReadInternal();
     }
   }
 
   private int doReadInternal() throws IOException {
+    final WireFrameCodec codec = this.frameCodec;
+    if (pipeSocket == null && codec != null) {
+      final int read = doFramedRead(codec);
+      this.totalRead.addAndGet(read);
+      return read;
+    }
+
+    final BufferManager manager = this.bufferManager;
+    if (pipeSocket == null && manager instanceof GatheringBufferManager) {
+      final int read = doScatteringRead((GatheringBufferManager) manager);
+      this.totalRead.addAndGet(read);
+      return read;
+    }
+
     try {
       bufferManager.recvToBuffer();
     } catch (SSLException ssle) {
@@ -346,12 +438,20 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   @Override
   public int doWrite() throws IOException {
+    this.ioEvents.incrementAndGet();
     synchronized (writerLock) {
       return doWriteInternal();
     }
   }
 
   private int doWriteInternal() throws IOException {
+    final BufferManager manager = this.bufferManager;
+    if (pipeSocket == null && manager instanceof GatheringBufferManager) {
+      final int gathered = doGatheringWrite((GatheringBufferManager) manager);
+      this.totalWrite.addAndGet(gathered);
+      return gathered;
+    }
+
     int written;
     try {
       written = doWriteToBuffer();
@@ -403,35 +503,61 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   private void buildWriteContextsFromMessages() {
     TCNetworkMessage messagesToWrite[];
+    final WireFrameCodec framing;
+    final int unframed;
     synchronized (this.writeMessages) {
       if (this.closed.isSet()) { return; }
+      if (this.coalescer != null) {
+        final long now = System.nanoTime();
+        if (this.coalescer.hold(now, MSG_GROUPING_MAX_SIZE_BYTES, WireProtocolHeader.MAX_MESSAGE_COUNT)) {
+          // with the write interest left registered the comm thread would keep selecting this connection until then
+          this.commWorker.deferWriteInterest(this, this.channel, this.coalescer.holdRemaining(now));
+          return;
+        }
+        this.coalescer.drained(now);
+      }
       messagesToWrite = this.writeMessages.toArray(new TCNetworkMessage[this.writeMessages.size()]);
       this.writeMessages.clear();
+      framing = this.outboundCodec;
+      unframed = this.unframedMessages;
+      this.unframedMessages = 0;
     }
 
     int batchSize = 0;
     int batchMsgCount = 0;
     TCNetworkMessage msg = null;
-    for (final TCNetworkMessage element : messagesToWrite) {
-      msg = element;
+    WireFrameCodec codec = null;
+    for (int m = 0; m < messagesToWrite.length; m++) {
+      msg = messagesToWrite[m];
+
+      if (framing != null && m == unframed) {
+        // the messages queued before framing was enabled must not end up in the same batch as the ones after
+        if (batchMsgCount > 0) {
+          this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(this.messagesToBatch), codec));
+          batchSize = 0;
+          batchMsgCount = 0;
+          this.messagesToBatch.clear();
+        }
+        codec = framing;
+      }
 
       // we don't want to group already constructed Transport Handshake WireProtocolMessages
       if (msg instanceof WireProtocolMessage) {
         final TCNetworkMessage ms = finalizeWireProtocolMessage((WireProtocolMessage) msg, 1);
-        this.writeContexts.add(new WriteContext(ms));
+        this.writeContexts.add(new WriteContext(ms, codec));
         continue;
       }
 
       // GenericNetwork messages are used for testing
       if (WireProtocolHeader.PROTOCOL_UNKNOWN == WireProtocolHeader.getProtocolForMessageClass(msg)) {
-        this.writeContexts.add(new WriteContext(msg));
+        this.writeContexts.add(new WriteContext(msg, codec));
         continue;
       }
 
       if (MSG_GROUPING_ENABLED) {
         if (!canBatch(msg, batchSize, batchMsgCount)) {
           if (batchMsgCount > 0) {
-            this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(this.messagesToBatch)));
+            this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(this.messagesToBatch), codec));
             batchSize = 0;
             batchMsgCount = 0;
             this.messagesToBatch.clear();
@@ -443,14 +569,14 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         batchMsgCount++;
         this.messagesToBatch.add(msg);
       } else {
-        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(msg)));
+        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(msg), codec));
       }
       msg = null;
     }
 
     if (MSG_GROUPING_ENABLED && batchMsgCount > 0) {
       final TCNetworkMessage ms = buildWireProtocolMessageGroup(this.messagesToBatch);
-      this.writeContexts.add(new WriteContext(ms));
+      this.writeContexts.add(new WriteContext(ms, codec));
     }
 
     messagesToWrite = null;
@@ -565,6 +691,176 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return totalBytesWritten;
   }
 
+  /**
+   * Reads whole frames from the channel and hands their bodies to the protocol adaptor, see {@link WireFrameCodec}.
+   */
+  private int doFramedRead(final WireFrameCodec codec) throws IOException {
+    try {
+      bufferManager.recvToBuffer();
+    } catch (SSLException ssle) {
+      logger.error("SSL error: " + ssle);
+      closeReadOnException(ssle);
+      return 0;
+    } catch (IOException ioe) {
+      closeReadOnException(ioe);
+      return 0;
+    }
+
+    int bytesRead = 0;
+    int read;
+    do {
+      read = bufferManager.forwardFromReadBuffer(codec.inputBuffer());
+      bytesRead += read;
+      try {
+        ByteBuffer body;
+        while ((body = codec.nextFrame()) != null) {
+          addFrameData(body);
+        }
+      } catch (IOException ioe) {
+        closeReadOnException(ioe);
+        break;
+      }
+    } while (read != 0);
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Read " + bytesRead + " framed bytes on connection " + this.channel.toString());
+    }
+    return bytesRead;
+  }
+
+  private void addFrameData(final ByteBuffer body) {
+    while (body.hasRemaining()) {
+      final TCByteBuffer[] readBuffers = getReadBuffers();
+      int copied = 0;
+      for (final TCByteBuffer readBuffer : readBuffers) {
+        final ByteBuffer buf = extractNioBuffer(readBuffer);
+        final int n = Math.min(buf.remaining(), body.remaining());
+        if (n > 0) {
+          final ByteBuffer src = body.duplicate();
+          src.limit(src.position() + n);
+          buf.put(src);
+          body.position(body.position() + n);
+          copied += n;
+        }
+        if (!body.hasRemaining() || buf.hasRemaining()) {
+          break;
+        }
+      }
+      addNetworkData(readBuffers, copied);
+    }
+  }
+
+  /**
+   * Reads from the channel straight into the protocol adaptor's buffers, for as long as the channel fills them all.
+   */
+  private int doScatteringRead(final GatheringBufferManager manager) throws IOException {
+    int bytesRead = 0;
+    while (true) {
+      final TCByteBuffer[] readBuffers = getReadBuffers();
+      if (this.scatterBuffers.length < readBuffers.length) {
+        this.scatterBuffers = new ByteBuffer[readBuffers.length];
+      }
+      final ByteBuffer[] dsts = this.scatterBuffers;
+      long room = 0;
+      for (int i = 0; i < readBuffers.length; i++) {
+        dsts[i] = extractNioBuffer(readBuffers[i]);
+        room += dsts[i].remaining();
+      }
+
+      final long read;
+      try {
+        read = manager.recvTo(dsts, 0, readBuffers.length);
+      } catch (IOException ioe) {
+        closeReadOnException(ioe);
+        return bytesRead;
+      } finally {
+        Arrays.fill(dsts, 0, readBuffers.length, null);
+      }
+
+      if (read > 0) {
+        addNetworkData(readBuffers, (int) read);
+        bytesRead += read;
+      }
+      if (read == 0 || read < room) {
+        break;
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("Read " + bytesRead + " bytes on connection " + this.channel.toString());
+    }
+    return bytesRead;
+  }
+
+  /**
+   * Writes the queued messages straight from their own buffers, several messages to a channel write where possible.
+   */
+  private int doGatheringWrite(final GatheringBufferManager manager) throws IOException {
+    final boolean debug = logger.isDebugEnabled();
+    int totalBytesWritten = 0;
+
+    if (this.writeContexts.size() <= 0) {
+      buildWriteContextsFromMessages();
+    }
+    final ByteBuffer[] srcs = this.gatherBuffers;
+    while (this.writeContexts.size() > 0) {
+      int count = 0;
+      for (int c = 0, n = this.writeContexts.size(); c < n && count < srcs.length; c++) {
+        final WriteContext context = this.writeContexts.get(c);
+        for (int i = context.index; i < context.entireMessageData.length && count < srcs.length; i++) {
+          srcs[count++] = context.entireMessageData[i].getNioBuffer();
+        }
+      }
+
+      final long written;
+      try {
+        written = manager.sendFrom(srcs, 0, count);
+      } catch (IOException ioe) {
+        closeWriteOnException(ioe);
+        return totalBytesWritten;
+      } finally {
+        Arrays.fill(srcs, 0, count, null);
+      }
+      if (debug) {
+        logger.debug("Wrote " + written + " bytes from " + count + " buffers on connection " + this.channel);
+      }
+      totalBytesWritten += written;
+
+      if (!completeWrittenContexts()) {
+        // the socket send buffer is full, carry on when the channel is writable again
+        break;
+      }
+    }
+
+    synchronized (this.writeMessages) {
+      if (this.closed.isSet()) { return totalBytesWritten; }
+
+      if (this.writeMessages.isEmpty() && this.writeContexts.isEmpty()) {
+        this.commWorker.removeWriteInterest(this, this.channel);
+      }
+    }
+    return totalBytesWritten;
+  }
+
+  /**
+   * Retires the fully written buffers and messages at the head of the write queue.
+   *
+   * @return false if a message is left partly written
+   */
+  private boolean completeWrittenContexts() {
+    while (this.writeContexts.size() > 0) {
+      final WriteContext context = this.writeContexts.get(0);
+      final TCByteBuffer[] buffers = context.entireMessageData;
+      while (context.index < buffers.length && !buffers[context.index].hasRemaining()) {
+        context.incrementIndexAndCleanOld();
+      }
+      if (!context.done()) { return false; }
+      context.writeComplete();
+      this.writeContexts.remove(0);
+    }
+    return true;
+  }
+
   static private ByteBuffer extractNioBuffer(final TCByteBuffer buffer) {
     return buffer.getNioBuffer();
   }
@@ -588,6 +884,9 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       if (this.closed.isSet()) { return; }
       this.writeMessages.addLast(message);
       msgCount = this.writeMessages.size();
+      if (this.coalescer != null) {
+        this.coalescer.messageQueued(System.nanoTime(), (int) bytesToWrite);
+      }
       newData = (msgCount == 1);
     }
 
@@ -710,9 +1009,40 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
     buf.append(" [").append(this.totalRead.get()).append(" read, ").append(this.totalWrite.get()).append(" write]");
 
+    final BufferManager manager = this.bufferManager;
+    if (manager instanceof GatheringBufferManager) {
+      final GatheringBufferManager gathering = (GatheringBufferManager) manager;
+      buf.append(" [").append(bytesPerCall(this.totalRead.get(), gathering.getChannelReads())).append(" bytes/read, ")
+          .append(bytesPerCall(this.totalWrite.get(), gathering.getChannelWrites())).append(" bytes/write]");
+    }
+
+    final WireFrameCodec codec = this.frameCodec;
+    if (codec != null) {
+      buf.append(' ').append(codec);
+    }
+
+    if (this.coalescer != null) {
+      buf.append(' ').append(this.coalescer);
+    }
+
     return buf.toString();
   }
 
+  private static long bytesPerCall(final long bytes, final long calls) {
+    return calls == 0 ? 0 : bytes / calls;
+  }
+
+  @Override
+  public void enableFraming() {
+    final WireFrameCodec codec = new WireFrameCodec(COMPRESSION_ENABLED, COMPRESSION_THRESHOLD, MAX_FRAME_SIZE);
+    synchronized (this.writeMessages) {
+      if (this.closed.isSet() || this.outboundCodec != null) { return; }
+      this.outboundCodec = codec;
+      this.unframedMessages = this.writeMessages.size();
+    }
+    this.frameCodec = codec;
+  }
+
   @Override
   public final void addListener(final TCConnectionEventListener listener) {
     if (listener == null) { return; }
@@ -964,15 +1294,26 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     private final TCNetworkMessage message;
     private int                    index = 0;
     private final TCByteBuffer[]   entireMessageData;
+    private final boolean          recycle;
 
     WriteContext(final TCNetworkMessage message) {
+      this(message, null);
+    }
+
+    WriteContext(final TCNetworkMessage message, final WireFrameCodec codec) {
       // either WireProtocolMessage or WireProtocolMessageGroup
       this.message = message;
 
-      if (MESSSAGE_PACKUP) {
+      if (codec != null) {
+        // frames share buffers with the message or are plain heap buffers, neither come from the pool
+        this.entireMessageData = codec.encode(message.getEntireMessageData());
+        this.recycle = false;
+      } else if (MESSSAGE_PACKUP) {
         this.entireMessageData = getPackedUpMessage(message.getEntireMessageData());
+        this.recycle = true;
       } else {
         this.entireMessageData = getClonedMessage(message.getEntireMessageData());
+        this.recycle = false;
       }
 
     }
@@ -986,7 +1327,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
 
     void incrementIndexAndCleanOld() {
-      if (MESSSAGE_PACKUP) {
+      if (recycle) {
         // we created these new messages. lets recycle it.
         entireMessageData[index].recycle();
       }
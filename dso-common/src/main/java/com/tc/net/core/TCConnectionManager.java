@@ -21,6 +21,7 @@ import com.tc.net.protocol.ProtocolAdaptorFactory;
 import com.tc.net.protocol.TCProtocolAdaptor;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Manages connections and listeners. The connection manager also provides default implementations of connection event
@@ -95,4 +96,11 @@ public interface TCConnectionManager {
    * Get the associated comm implementation cotext -- used for testing only
    */
   public TCComm getTcComm();
+
+  /**
+   * Get write coalescing and wire framing figures summed over every connection created by this manager, closed ones
+   * included. Batch sizes are in messages and delays in microseconds. The framed byte counts are those of the messages
+   * before and after framing, their ratio is what compression saved. framedConnections only counts open connections.
+   */
+  public Map<String, Long> getConnectionStats();
 }
@@ -31,6 +31,7 @@ import com.tc.net.protocol.TCProtocolException;
 import com.tc.net.protocol.transport.ConnectionHealthCheckerUtil;
 import com.tc.net.protocol.transport.HealthCheckerConfig;
 import com.tc.net.protocol.transport.HealthCheckerConfigImpl;
+import com.tc.stats.Histogram;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.io.IOException;
@@ -40,7 +41,10 @@ import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The {@link TCConnectionManager} implementation.
@@ -63,6 +67,14 @@ public class TCConnectionManagerImpl implements TCConnectionManager {
   private final SocketParams            socketParams;
   private final TCSecurityManager       securityManager;
   private final BufferManagerFactoryProvider bufferManagerFactoryProvider;
+  private final AtomicLong              closedBytesTransferred = new AtomicLong();
+  private final AtomicLong              closedIoEvents         = new AtomicLong();
+  private final Histogram               closedBatchSizes       = new Histogram();
+  private final Histogram               closedAddedDelays      = new Histogram();
+  private final AtomicLong              closedFrameRawOut      = new AtomicLong();
+  private final AtomicLong              closedFrameWireOut     = new AtomicLong();
+  private final AtomicLong              closedFrameRawIn       = new AtomicLong();
+  private final AtomicLong              closedFrameWireIn      = new AtomicLong();
 
   public TCConnectionManagerImpl() {
     this("ConnectionMgr", 0, new HealthCheckerConfigImpl("DefaultConfigForActiveConnections"), null);
@@ -91,7 +103,7 @@ public class TCConnectionManagerImpl implements TCConnectionManager {
 
   protected TCListener createListenerImpl(TCSocketAddress addr, ProtocolAdaptorFactory factory, int backlog,
                                           boolean reuseAddr) throws IOException {
-    ServerSocketChannel ssc = ServerSocketChannel.open();
+    ServerSocketChannel ssc = NIOProvider.get().openServerSocketChannel();
     ssc.configureBlocking(false);
     ServerSocket serverSocket = ssc.socket();
     this.socketParams.applyServerSocketParams(serverSocket, reuseAddr);
@@ -247,9 +259,7 @@ public class TCConnectionManagerImpl implements TCConnectionManager {
   }
 
   void connectionClosed(TCConnection conn) {
-    synchronized (connections) {
-      connections.remove(conn);
-    }
+    removeConnection(conn);
   }
 
   void newConnection(TCConnection conn) {
@@ -259,9 +269,88 @@ public class TCConnectionManagerImpl implements TCConnectionManager {
   }
 
   void removeConnection(TCConnection connection) {
+    final boolean removed;
     synchronized (connections) {
-      connections.remove(connection);
+      removed = connections.remove(connection);
+    }
+    if (removed && connection instanceof TCConnectionImpl) {
+      closedBytesTransferred.addAndGet(((TCConnectionImpl) connection).getTotalBytesTransferred());
+      closedIoEvents.addAndGet(((TCConnectionImpl) connection).getTotalIoEvents());
+      ((TCConnectionImpl) connection).addCoalescingStatsTo(closedBatchSizes, closedAddedDelays);
+      final WireFrameCodec codec = ((TCConnectionImpl) connection).getFrameCodec();
+      if (codec != null) {
+        closedFrameRawOut.addAndGet(codec.getRawBytesOut());
+        closedFrameWireOut.addAndGet(codec.getWireBytesOut());
+        closedFrameRawIn.addAndGet(codec.getRawBytesIn());
+        closedFrameWireIn.addAndGet(codec.getWireBytesIn());
+      }
+    }
+  }
+
+  /**
+   * @return the bytes read and written by every connection this manager has had, closed ones included
+   */
+  public long getTotalBytesTransferred() {
+    long total = closedBytesTransferred.get();
+    for (TCConnection conn : getAllConnections()) {
+      if (conn instanceof TCConnectionImpl) {
+        total += ((TCConnectionImpl) conn).getTotalBytesTransferred();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @return the number of reads and writes done by every connection this manager has had, closed ones included
+   */
+  public long getTotalIoEvents() {
+    long total = closedIoEvents.get();
+    for (TCConnection conn : getAllConnections()) {
+      if (conn instanceof TCConnectionImpl) {
+        total += ((TCConnectionImpl) conn).getTotalIoEvents();
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public Map<String, Long> getConnectionStats() {
+    final Histogram batchSizes = new Histogram();
+    final Histogram addedDelays = new Histogram();
+    batchSizes.merge(closedBatchSizes);
+    addedDelays.merge(closedAddedDelays);
+    long framedConnections = 0;
+    long rawOut = closedFrameRawOut.get();
+    long wireOut = closedFrameWireOut.get();
+    long rawIn = closedFrameRawIn.get();
+    long wireIn = closedFrameWireIn.get();
+    for (TCConnection conn : getAllConnections()) {
+      if (conn instanceof TCConnectionImpl) {
+        ((TCConnectionImpl) conn).addCoalescingStatsTo(batchSizes, addedDelays);
+        final WireFrameCodec codec = ((TCConnectionImpl) conn).getFrameCodec();
+        if (codec != null) {
+          framedConnections++;
+          rawOut += codec.getRawBytesOut();
+          wireOut += codec.getWireBytesOut();
+          rawIn += codec.getRawBytesIn();
+          wireIn += codec.getWireBytesIn();
+        }
+      }
     }
+    final Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    stats.put("coalescedBatches", batchSizes.getCount());
+    stats.put("coalescedBatchSizeP50", batchSizes.getPercentile(50));
+    stats.put("coalescedBatchSizeP99", batchSizes.getPercentile(99));
+    stats.put("coalescedBatchSizeMax", batchSizes.getMax());
+    stats.put("coalescingDelayP50Micros", addedDelays.getPercentile(50));
+    stats.put("coalescingDelayP99Micros", addedDelays.getPercentile(99));
+    stats.put("coalescingDelayMaxMicros", addedDelays.getMax());
+    stats.put("framedConnections", framedConnections);
+    stats.put("framedRawBytesOut", rawOut);
+    stats.put("framedWireBytesOut", wireOut);
+    stats.put("framedRawBytesIn", rawIn);
+    stats.put("framedWireBytesIn", wireIn);
+    return stats;
   }
 
   protected TCConnectionEventListener getConnectionListener() {
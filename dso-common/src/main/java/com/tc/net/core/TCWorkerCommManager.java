@@ -20,16 +20,28 @@ import com.tc.logging.LossyTCLogger;
 import com.tc.logging.LossyTCLogger.LossyTCLoggerType;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The whole intention of this class is to manage the workerThreads for each Listener
+ * <p>
+ * Connections are placed on the worker comm with the least weight. With {@code net.core.rebalance.interval} set, the
+ * traffic of every connection is also sampled that often and, when one worker comm carries half as much again as the
+ * least loaded one, a connection is moved across to even them out. A connection's load is the bytes it moved over the
+ * interval plus {@link #EVENT_COST_BYTES} for every time a comm thread had to read or write it.
  * 
  * @author Manoj G
  */
@@ -40,6 +52,12 @@ public class TCWorkerCommManager {
 
   private static final String     WORKER_NAME_PREFIX = "TCWorkerComm # ";
 
+  // what a selector wakeup and the system calls that go with it are worth, in bytes copied
+  static final long               EVENT_COST_BYTES   = 4096;
+
+  private static final long       REBALANCE_INTERVAL = TCPropertiesImpl.getProperties()
+                                                         .getLong(TCPropertiesConsts.NET_CORE_REBALANCE_INTERVAL, 0);
+
   private final int               totalWorkerComm;
   private final CoreNIOServices[] workerCommThreads;
   private final SetOnceFlag       started            = new SetOnceFlag();
@@ -47,10 +65,21 @@ public class TCWorkerCommManager {
 
   private final AtomicInteger     nextWorkerCommId   = new AtomicInteger();
 
+  private final String                  name;
+  private Timer                         rebalanceTimer;
+  // guarded by this, counters of every connection and idle time of every comm thread at the previous rebalance
+  private Map<TCConnectionImpl, long[]> lastConnectionSamples = new HashMap<TCConnectionImpl, long[]>();
+  private final long[]                  lastIdleNanos;
+  private long                          lastSampleTime;
+  private final double[]                utilization;
+
   TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams) {
     if (workerCommCount <= 0) { throw new IllegalArgumentException("invalid worker count: " + workerCommCount); }
     logger.info("Creating " + workerCommCount + " worker comm threads for " + name);
+    this.name = name;
     this.totalWorkerComm = workerCommCount;
+    this.lastIdleNanos = new long[workerCommCount * 2];
+    this.utilization = new double[workerCommCount * 2];
     this.workerCommThreads = new CoreNIOServices[workerCommCount];
     for (int i = 0; i < this.workerCommThreads.length; i++) {
       this.workerCommThreads[i] = new CoreNIOServices(name + ":" + WORKER_NAME_PREFIX + i, this, socketParams);
@@ -98,6 +127,20 @@ public class TCWorkerCommManager {
       for (CoreNIOServices workerCommThread : this.workerCommThreads) {
         workerCommThread.start();
       }
+      if (REBALANCE_INTERVAL > 0 && this.totalWorkerComm > 1) {
+        this.lastSampleTime = System.nanoTime();
+        this.rebalanceTimer = new Timer(name + " worker comm rebalancer", true);
+        this.rebalanceTimer.schedule(new TimerTask() {
+          @Override
+          public void run() {
+            try {
+              rebalance();
+            } catch (Exception e) {
+              logger.error("Error rebalancing worker comms", e);
+            }
+          }
+        }, REBALANCE_INTERVAL, REBALANCE_INTERVAL);
+      }
     } else {
       throw new IllegalStateException("already started");
     }
@@ -107,12 +150,123 @@ public class TCWorkerCommManager {
     if (!this.started.isSet()) { return; }
 
     if (this.stopped.attemptSet()) {
+      if (this.rebalanceTimer != null) {
+        this.rebalanceTimer.cancel();
+      }
       for (int i = 0; i < this.totalWorkerComm; i++) {
         this.workerCommThreads[i].requestStop();
       }
     }
   }
 
+  /**
+   * Samples the traffic of every connection since the last call and moves at most one connection from the busiest
+   * worker comm to the least busy one.
+   */
+  synchronized void rebalance() {
+    if (this.stopped.isSet()) { return; }
+
+    final long now = System.nanoTime();
+    final double elapsed = Math.max(1, now - this.lastSampleTime);
+    this.lastSampleTime = now;
+
+    final Map<TCConnectionImpl, long[]> samples = new HashMap<TCConnectionImpl, long[]>();
+    final long[] workerLoads = new long[this.totalWorkerComm];
+    final List<List<TCConnectionImpl>> connections = new ArrayList<List<TCConnectionImpl>>(this.totalWorkerComm);
+    final List<long[]> connectionLoads = new ArrayList<long[]>(this.totalWorkerComm);
+    for (int w = 0; w < this.totalWorkerComm; w++) {
+      final CoreNIOServices workerComm = this.workerCommThreads[w];
+      final List<TCConnectionImpl> managed = workerComm.getManagedConnections();
+      final long[] loads = new long[managed.size()];
+      for (int c = 0; c < managed.size(); c++) {
+        final TCConnectionImpl connection = managed.get(c);
+        final long[] sample = new long[] { connection.getTotalBytesTransferred(), connection.getTotalIoEvents() };
+        samples.put(connection, sample);
+        final long[] last = this.lastConnectionSamples.get(connection);
+        if (last != null) {
+          loads[c] = (sample[0] - last[0]) + (sample[1] - last[1]) * EVENT_COST_BYTES;
+          workerLoads[w] += loads[c];
+        }
+      }
+      connections.add(managed);
+      connectionLoads.add(loads);
+
+      final long readerIdle = workerComm.getReaderIdleNanos();
+      final long writerIdle = workerComm.getWriterIdleNanos();
+      this.utilization[2 * w] = utilization(readerIdle - this.lastIdleNanos[2 * w], elapsed);
+      this.utilization[2 * w + 1] = utilization(writerIdle - this.lastIdleNanos[2 * w + 1], elapsed);
+      this.lastIdleNanos[2 * w] = readerIdle;
+      this.lastIdleNanos[2 * w + 1] = writerIdle;
+    }
+    this.lastConnectionSamples = samples;
+
+    int busiest = 0;
+    int idlest = 0;
+    for (int w = 1; w < this.totalWorkerComm; w++) {
+      if (workerLoads[w] > workerLoads[busiest]) {
+        busiest = w;
+      }
+      if (workerLoads[w] < workerLoads[idlest]) {
+        idlest = w;
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      final StringBuilder buf = new StringBuilder("Worker comm load over the last " + (long) (elapsed / 1000000)
+                                                  + "ms:");
+      for (int w = 0; w < this.totalWorkerComm; w++) {
+        buf.append(' ').append(w).append("=[").append(perSecond(workerLoads[w], elapsed)).append(" load/s, ")
+            .append(String.format("R %.0f%% W %.0f%%", this.utilization[2 * w] * 100, this.utilization[2 * w + 1] * 100))
+            .append(']');
+      }
+      logger.debug(buf);
+    }
+
+    final int move = selectConnectionToMove(connectionLoads.get(busiest), workerLoads[busiest], workerLoads[idlest]);
+    if (move < 0) { return; }
+    final TCConnectionImpl connection = connections.get(busiest).get(move);
+    logger.info("Moving " + connection + " (" + perSecond(connectionLoads.get(busiest)[move], elapsed)
+                + " load/s) from " + this.workerCommThreads[busiest] + " (" + perSecond(workerLoads[busiest], elapsed)
+                + " load/s) to " + this.workerCommThreads[idlest] + " (" + perSecond(workerLoads[idlest], elapsed)
+                + " load/s)");
+    this.workerCommThreads[busiest].moveConnection(connection, this.workerCommThreads[idlest]);
+  }
+
+  /**
+   * @return the index of the connection whose move from the busiest to the idlest worker comm evens out their loads
+   *         best, or -1 if they are close enough already or no move would help
+   */
+  static int selectConnectionToMove(long[] connectionLoads, long busiestLoad, long idlestLoad) {
+    // within half as much again of each other is close enough
+    if (busiestLoad <= 0 || 2 * busiestLoad <= 3 * idlestLoad) { return -1; }
+
+    final long gap = busiestLoad - idlestLoad;
+    int best = -1;
+    for (int c = 0; c < connectionLoads.length; c++) {
+      // anything carrying the whole gap or more would only turn the idlest comm into the busiest one
+      if (connectionLoads[c] > 0 && connectionLoads[c] < gap
+          && (best < 0 || Math.abs(gap - 2 * connectionLoads[c]) < Math.abs(gap - 2 * connectionLoads[best]))) {
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  private static double utilization(long idleNanos, double elapsedNanos) {
+    return Math.max(0, Math.min(1, 1 - idleNanos / elapsedNanos));
+  }
+
+  private static long perSecond(long load, double elapsedNanos) {
+    return (long) (load * (TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+  }
+
+  /**
+   * @return the share of the last rebalance interval the worker comm's reader or writer thread spent outside select
+   */
+  protected synchronized double getUtilizationForWorkerComm(int workerCommId, boolean reader) {
+    return this.utilization[2 * workerCommId + (reader ? 0 : 1)];
+  }
+
   protected CoreNIOServices getWorkerComm(int workerCommId) {
     return this.workerCommThreads[workerCommId];
   }
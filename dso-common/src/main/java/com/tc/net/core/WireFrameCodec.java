@@ -0,0 +1,272 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Frames the wire protocol messages of a connection that negotiated it, see {@link FramingConnection}. A frame is a
+ * type byte and the length of the body, followed for {@link #DEFLATED} frames by the inflated length of the body.
+ * Encoding happens on the writing comm thread and decoding on the reading one.
+ * <p>
+ * The lengths in a frame header come from the peer, so frames whose body or inflated body is larger than the maximum
+ * frame size are rejected before anything is allocated for them.
+ */
+final class WireFrameCodec {
+  static final byte                      RAW             = 0;
+  static final byte                      DEFLATED        = 1;
+  static final int                       RAW_HEADER      = 1 + 4;
+  static final int                       DEFLATED_HEADER = RAW_HEADER + 4;
+  // keeps the header plus the body within the size of a byte array
+  static final int                       MAX_FRAME_SIZE  = Integer.MAX_VALUE - 64;
+
+  private static final int               INITIAL_INPUT   = 16 * 1024;
+
+  private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+    @Override
+    protected Deflater initialValue() {
+      return new Deflater(Deflater.BEST_SPEED);
+    }
+  };
+
+  private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+    @Override
+    protected Inflater initialValue() {
+      return new Inflater();
+    }
+  };
+
+  private final boolean                  compress;
+  private final int                      threshold;
+  private final int                      maxFrameSize;
+
+  private final AtomicLong               rawOut          = new AtomicLong();
+  private final AtomicLong               wireOut         = new AtomicLong();
+  private final AtomicLong               rawIn           = new AtomicLong();
+  private final AtomicLong               wireIn          = new AtomicLong();
+
+  // undecoded bytes are kept between readPos and the position of the buffer
+  private ByteBuffer                     input           = ByteBuffer.allocate(INITIAL_INPUT);
+  private int                            readPos         = 0;
+
+  /**
+   * @param maxFrameSize the largest body, or inflated body, accepted from the peer, at most {@link #MAX_FRAME_SIZE}
+   */
+  WireFrameCodec(final boolean compress, final int threshold, final int maxFrameSize) {
+    if (maxFrameSize <= 0 || maxFrameSize > MAX_FRAME_SIZE) { throw new IllegalArgumentException("maxFrameSize: "
+                                                                                                 + maxFrameSize); }
+    this.compress = compress;
+    this.threshold = threshold;
+    this.maxFrameSize = maxFrameSize;
+  }
+
+  /**
+   * @return the frame holding the given message. Small frames share the message buffers, so they must not be recycled
+   *         by the caller.
+   */
+  TCByteBuffer[] encode(final TCByteBuffer[] message) {
+    int length = 0;
+    for (final TCByteBuffer buffer : message) {
+      length += buffer.remaining();
+    }
+
+    if (this.compress && length >= this.threshold) {
+      final byte[] frame = deflate(message, length);
+      if (frame != null) {
+        this.rawOut.addAndGet(length);
+        this.wireOut.addAndGet(frame.length);
+        return new TCByteBuffer[] { TCByteBufferFactory.wrap(frame) };
+      }
+    }
+
+    final byte[] header = new byte[RAW_HEADER];
+    ByteBuffer.wrap(header).put(RAW).putInt(length);
+    final TCByteBuffer[] frame = new TCByteBuffer[message.length + 1];
+    frame[0] = TCByteBufferFactory.wrap(header);
+    for (int i = 0; i < message.length; i++) {
+      frame[i + 1] = message[i].duplicate();
+    }
+    this.rawOut.addAndGet(length);
+    this.wireOut.addAndGet(RAW_HEADER + length);
+    return frame;
+  }
+
+  private static byte[] deflate(final TCByteBuffer[] message, final int length) {
+    final byte[] raw = new byte[length];
+    int offset = 0;
+    for (final TCByteBuffer buffer : message) {
+      final ByteBuffer src = buffer.getNioBuffer().duplicate();
+      final int n = src.remaining();
+      src.get(raw, offset, n);
+      offset += n;
+    }
+
+    // only worth it if the deflated frame ends up smaller than the raw one
+    final byte[] out = new byte[RAW_HEADER + length - 1];
+    final Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+    int written = DEFLATED_HEADER;
+    while (!deflater.finished()) {
+      if (written >= out.length) { return null; }
+      written += deflater.deflate(out, written, out.length - written);
+    }
+    ByteBuffer.wrap(out).put(DEFLATED).putInt(written - DEFLATED_HEADER).putInt(length);
+    final byte[] frame = new byte[written];
+    System.arraycopy(out, 0, frame, 0, written);
+    return frame;
+  }
+
+  /**
+   * @return the buffer the bytes read from the socket go to, with room for at least one more byte
+   */
+  ByteBuffer inputBuffer() {
+    if (!this.input.hasRemaining()) {
+      compact();
+      if (!this.input.hasRemaining()) {
+        grow(this.input.capacity() * 2);
+      }
+    }
+    return this.input;
+  }
+
+  /**
+   * @return the body of the next complete frame read, or null if there is none yet. The returned buffer is only valid
+   *         until the next call to this codec.
+   */
+  ByteBuffer nextFrame() throws StreamCorruptedException {
+    final int available = this.input.position() - this.readPos;
+    if (available < RAW_HEADER) {
+      compact();
+      return null;
+    }
+
+    final byte type = this.input.get(this.readPos);
+    final int length = this.input.getInt(this.readPos + 1);
+    if (length < 0) { throw new StreamCorruptedException("Negative wire frame length " + length); }
+    if (length > this.maxFrameSize) { throw new StreamCorruptedException("Wire frame length " + length
+                                                                         + " exceeds the maximum of "
+                                                                         + this.maxFrameSize); }
+    final int header;
+    if (type == RAW) {
+      header = RAW_HEADER;
+    } else if (type == DEFLATED) {
+      header = DEFLATED_HEADER;
+    } else {
+      throw new StreamCorruptedException("Unknown wire frame type " + type);
+    }
+    if (available < header + length) {
+      compact();
+      if (this.input.capacity() < header + length) {
+        grow(header + length);
+      }
+      return null;
+    }
+
+    final int start = this.readPos + header;
+    this.readPos = start + length;
+    this.wireIn.addAndGet(header + length);
+    if (type == RAW) {
+      this.rawIn.addAndGet(length);
+      final ByteBuffer body = this.input.duplicate();
+      body.limit(start + length);
+      body.position(start);
+      return body;
+    }
+
+    final int rawLength = this.input.getInt(start - 4);
+    if (rawLength < 0) { throw new StreamCorruptedException("Negative inflated wire frame length " + rawLength); }
+    if (rawLength > this.maxFrameSize) { throw new StreamCorruptedException("Inflated wire frame length " + rawLength
+                                                                            + " exceeds the maximum of "
+                                                                            + this.maxFrameSize); }
+    this.rawIn.addAndGet(rawLength);
+    return ByteBuffer.wrap(inflate(this.input.array(), this.input.arrayOffset() + start, length, rawLength));
+  }
+
+  private static byte[] inflate(final byte[] data, final int offset, final int length, final int rawLength)
+      throws StreamCorruptedException {
+    final byte[] out = new byte[rawLength];
+    final Inflater inflater = INFLATER.get();
+    inflater.reset();
+    inflater.setInput(data, offset, length);
+    try {
+      int inflated = 0;
+      while (inflated < out.length && !inflater.finished()) {
+        final int n = inflater.inflate(out, inflated, out.length - inflated);
+        if (n == 0 && inflater.needsInput()) {
+          break;
+        }
+        inflated += n;
+      }
+      if (inflated != out.length) { throw new StreamCorruptedException("Truncated deflated wire frame"); }
+    } catch (DataFormatException e) {
+      throw new StreamCorruptedException("Corrupt deflated wire frame: " + e.getMessage());
+    }
+    return out;
+  }
+
+  private void compact() {
+    if (this.readPos == 0) { return; }
+    this.input.limit(this.input.position());
+    this.input.position(this.readPos);
+    this.input.compact();
+    this.readPos = 0;
+  }
+
+  private void grow(final int capacity) {
+    final ByteBuffer bigger = ByteBuffer.allocate(capacity);
+    this.input.flip();
+    bigger.put(this.input);
+    this.input = bigger;
+  }
+
+  long getRawBytesOut() {
+    return this.rawOut.get();
+  }
+
+  long getWireBytesOut() {
+    return this.wireOut.get();
+  }
+
+  long getRawBytesIn() {
+    return this.rawIn.get();
+  }
+
+  long getWireBytesIn() {
+    return this.wireIn.get();
+  }
+
+  @Override
+  public String toString() {
+    return "frames [out " + this.rawOut.get() + "/" + this.wireOut.get() + " ratio " + ratio(this.rawOut, this.wireOut)
+           + ", in " + this.rawIn.get() + "/" + this.wireIn.get() + " ratio " + ratio(this.rawIn, this.wireIn) + "]";
+  }
+
+  private static String ratio(final AtomicLong raw, final AtomicLong wire) {
+    final long w = wire.get();
+    return w == 0 ? "n/a" : String.format("%.2f", (double) raw.get() / w);
+  }
+}
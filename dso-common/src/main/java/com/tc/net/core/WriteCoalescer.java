@@ -0,0 +1,114 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.stats.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether the comm thread should hold back a connection's queued messages a little longer so that more of them
+ * go out in one batch. Writes are only held while messages arrive faster than the latency budget, so a connection that
+ * sends now and then never waits. All methods but the accessors are called with the connection's write queue locked.
+ */
+final class WriteCoalescer {
+  // weight of the newest inter-arrival gap in the moving average, as a power of two
+  private static final int  GAP_SHIFT   = 3;
+  private static final long MAX_GAP     = TimeUnit.SECONDS.toNanos(1);
+
+  private final long        budgetNanos;
+  private final Histogram   batchSizes  = new Histogram();
+  private final Histogram   addedDelays = new Histogram();
+
+  private long              averageGap  = MAX_GAP;
+  private long              lastArrival = 0;
+  private long              firstQueued = 0;
+  private long              holdStart   = 0;
+  private int               queuedBytes = 0;
+  private int               queuedCount = 0;
+
+  WriteCoalescer(final long budgetMicros) {
+    this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+  }
+
+  void messageQueued(final long now, final int bytes) {
+    if (this.lastArrival != 0) {
+      final long gap = Math.min(now - this.lastArrival, MAX_GAP);
+      this.averageGap += (gap - this.averageGap) >> GAP_SHIFT;
+    }
+    this.lastArrival = now;
+    if (this.queuedCount == 0) {
+      this.firstQueued = now;
+    }
+    this.queuedCount++;
+    this.queuedBytes += bytes;
+  }
+
+  /**
+   * @return true if the queued messages should wait for more to join them
+   */
+  boolean hold(final long now, final int maxBytes, final int maxCount) {
+    if (this.queuedCount == 0 || this.averageGap >= this.budgetNanos) { return false; }
+    if (this.queuedBytes >= maxBytes || this.queuedCount >= maxCount) { return false; }
+    if (now - this.firstQueued >= this.budgetNanos) { return false; }
+    if (this.holdStart == 0) {
+      this.holdStart = now;
+    }
+    return true;
+  }
+
+  /**
+   * @return how much longer the messages that {@link #hold(long, int, int)} decided to hold may wait
+   */
+  long holdRemaining(final long now) {
+    return Math.max(0, this.firstQueued + this.budgetNanos - now);
+  }
+
+  /**
+   * Called when the queued messages are taken for writing.
+   */
+  void drained(final long now) {
+    if (this.queuedCount == 0) { return; }
+    this.batchSizes.record(this.queuedCount);
+    this.addedDelays.record(this.holdStart == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(now - this.holdStart));
+    this.holdStart = 0;
+    this.queuedCount = 0;
+    this.queuedBytes = 0;
+  }
+
+  void cleared() {
+    this.holdStart = 0;
+    this.queuedCount = 0;
+    this.queuedBytes = 0;
+  }
+
+  Histogram getBatchSizes() {
+    return this.batchSizes;
+  }
+
+  /**
+   * @return how long batches were held back, in microseconds
+   */
+  Histogram getAddedDelays() {
+    return this.addedDelays;
+  }
+
+  @Override
+  public String toString() {
+    return "coalescing [batch " + this.batchSizes + ", delay us " + this.addedDelays + "]";
+  }
+}
@@ -38,6 +38,10 @@ public interface NetworkLayer {
   public static final short  TYPE_TRANSPORT_LAYER              = 1;                                                                         // 0000000000000001
   public static final short  TYPE_OOO_LAYER                    = 2;                                                                         // 0000000000000010
   public static final short  TYPE_CHANNEL_LAYER                = 4;                                                                         // 0000000000000100
+  /**
+   * Not a layer: set by a client asking for wire frames, see {@link com.tc.net.core.FramingConnection}
+   */
+  public static final short  TYPE_FRAMING_REQUESTED            = 8;                                                                         // 0000000000001000
   public static final short  TYPE_TEST_MESSAGE                 = -1;                                                                        // This
                                                                                                                                              // is
                                                                                                                                              // for
@@ -0,0 +1,77 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.delivery;
+
+/**
+ * A send window that follows the round trip time of acks. It starts at the configured window and stays there while
+ * acks come back close to the fastest round trip seen, backs off when they are delayed by queueing somewhere on the
+ * path, and grows back one message per ack once they speed up again. It never drops to the receiver's delayed ack
+ * count, or the receiver would wait for messages the sender is holding back.
+ */
+final class AdaptiveSendWindow {
+  // the base round trip time is re-learnt this often so that it can follow a changed path
+  private static final int SAMPLES_PER_EPOCH = 256;
+  // acks to let through after a back off before backing off again
+  private static final int BACKOFF_COOLDOWN  = 8;
+
+  private final int        min;
+  private final int        max;
+  private int              window;
+  private long             minRtt            = Long.MAX_VALUE;
+  private long             epochMinRtt       = Long.MAX_VALUE;
+  private long             smoothedRtt       = 0;
+  private int              samples           = 0;
+  private int              cooldown          = 0;
+
+  AdaptiveSendWindow(int maxDelayedAcks, int sendWindow) {
+    this.min = Math.min(maxDelayedAcks + 1, sendWindow);
+    this.max = sendWindow;
+    this.window = sendWindow;
+  }
+
+  int get() {
+    return window;
+  }
+
+  void acked(long rttNanos) {
+    if (rttNanos <= 0) { return; }
+
+    smoothedRtt = smoothedRtt == 0 ? rttNanos : smoothedRtt + ((rttNanos - smoothedRtt) >> 3);
+    minRtt = Math.min(minRtt, rttNanos);
+    epochMinRtt = Math.min(epochMinRtt, rttNanos);
+    if (++samples == SAMPLES_PER_EPOCH) {
+      minRtt = epochMinRtt;
+      epochMinRtt = Long.MAX_VALUE;
+      samples = 0;
+    }
+
+    if (cooldown > 0) {
+      cooldown--;
+    } else if (smoothedRtt > 4 * minRtt) {
+      window = Math.max(min, window - window / 4);
+      cooldown = BACKOFF_COOLDOWN;
+    } else if (smoothedRtt <= 2 * minRtt && window < max) {
+      window++;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "window=" + window + " srtt=" + smoothedRtt / 1000 + "us minRtt="
+           + (minRtt == Long.MAX_VALUE ? 0 : minRtt / 1000) + "us";
+  }
+}
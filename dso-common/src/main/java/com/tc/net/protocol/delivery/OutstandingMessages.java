@@ -0,0 +1,113 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.delivery;
+
+import java.util.Arrays;
+
+/**
+ * The messages sent but not acknowledged yet, oldest first, with the time each was sent. The ring is sized for the send
+ * window up front and only grows when the window is unbounded. Not thread safe, the {@link SendStateMachine} guards it.
+ */
+final class OutstandingMessages {
+  private static final int     UNBOUNDED_CAPACITY = 64;
+
+  private OOOProtocolMessage[] messages;
+  private long[]               sentAt;
+  private int                  head               = 0;
+  private int                  size               = 0;
+
+  /**
+   * @param window the send window, 0 if unbounded
+   */
+  OutstandingMessages(int window) {
+    int capacity = Integer.highestOneBit(Math.max(window > 0 ? window : UNBOUNDED_CAPACITY, 1));
+    if (capacity < window) {
+      capacity <<= 1;
+    }
+    this.messages = new OOOProtocolMessage[capacity];
+    this.sentAt = new long[capacity];
+  }
+
+  void add(OOOProtocolMessage msg, long now) {
+    if (size == messages.length) {
+      grow();
+    }
+    final int i = (head + size) & (messages.length - 1);
+    messages[i] = msg;
+    sentAt[i] = now;
+    size++;
+  }
+
+  OOOProtocolMessage removeFirst() {
+    if (size == 0) { throw new IllegalStateException("no outstanding messages"); }
+    final OOOProtocolMessage msg = messages[head];
+    messages[head] = null;
+    head = (head + 1) & (messages.length - 1);
+    size--;
+    return msg;
+  }
+
+  /**
+   * @return when the oldest message was sent, or 0 if it has been resent since
+   */
+  long firstSentAt() {
+    return size == 0 ? 0 : sentAt[head];
+  }
+
+  OOOProtocolMessage get(int index) {
+    if (index < 0 || index >= size) { throw new IndexOutOfBoundsException(index + " of " + size); }
+    return messages[(head + index) & (messages.length - 1)];
+  }
+
+  /**
+   * Forgets the send times, an ack for a resent message says nothing about the round trip time.
+   */
+  void markResent() {
+    Arrays.fill(sentAt, 0);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int capacity() {
+    return messages.length;
+  }
+
+  void clear() {
+    Arrays.fill(messages, null);
+    head = 0;
+    size = 0;
+  }
+
+  private void grow() {
+    final OOOProtocolMessage[] biggerMessages = new OOOProtocolMessage[messages.length << 1];
+    final long[] biggerSentAt = new long[messages.length << 1];
+    for (int n = 0; n < size; n++) {
+      final int i = (head + n) & (messages.length - 1);
+      biggerMessages[n] = messages[i];
+      biggerSentAt[n] = sentAt[i];
+    }
+    messages = biggerMessages;
+    sentAt = biggerSentAt;
+    head = 0;
+  }
+}
@@ -20,12 +20,12 @@ import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.properties.ReconnectConfig;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.DebugUtil;
 import com.tc.util.Util;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -40,23 +40,31 @@ public class SendStateMachine extends AbstractStateMachine {
   final State                              PAUSED_STATE          = new PausedState();
 
   private final OOOProtocolMessageDelivery delivery;
-  private final LinkedList<OOOProtocolMessage> outstandingMsgs       = new LinkedList<OOOProtocolMessage>();
+  private final OutstandingMessages        outstandingMsgs;
   private final int                        sendWindow;
+  // null unless the window is bounded and net.ooo.sendWindow.adaptive is set
+  private final AdaptiveSendWindow         adaptiveWindow;
   private final boolean                    isClient;
   private final String                     debugId;
 
   private static final boolean             debug                 = false;
   private static final TCLogger            logger                = TCLogging.getLogger(SendStateMachine.class);
+  private static final boolean             ADAPTIVE_WINDOW       = TCPropertiesImpl
+                                                                     .getProperties()
+                                                                     .getBoolean(TCPropertiesConsts.NET_OOO_SEND_WINDOW_ADAPTIVE,
+                                                                                 false);
 
   private long                             sent                  = -1;
   private long                             acked                 = -1;
-  private int                              outstandingCnt        = 0;
   private LinkedBlockingQueue<TCNetworkMessage> sendQueue;
 
   public SendStateMachine(OOOProtocolMessageDelivery delivery, ReconnectConfig reconnectConfig, boolean isClient) {
     this.delivery = delivery;
     // set sendWindow from tc.properties if exist. 0 to disable window send.
     sendWindow = reconnectConfig.getSendWindow();
+    this.outstandingMsgs = new OutstandingMessages(sendWindow);
+    this.adaptiveWindow = (ADAPTIVE_WINDOW && sendWindow > 0) ? new AdaptiveSendWindow(reconnectConfig
+        .getMaxDelayAcks(), sendWindow) : null;
     int queueCap = reconnectConfig.getSendQueueCapacity();
     this.sendQueueCap = (queueCap == 0) ? Integer.MAX_VALUE : queueCap;
     this.sendQueue = new LinkedBlockingQueue<TCNetworkMessage>(this.sendQueueCap);
@@ -87,8 +95,9 @@ public class SendStateMachine extends AbstractStateMachine {
 
   @Override
   public String toString() {
-    return "CurrentState: " + getCurrentState() + "; OutStandingMsgsCount: " + outstandingCnt + "; Sent: " + sent
-           + "; Acked: " + acked + "; " + super.toString();
+    return "CurrentState: " + getCurrentState() + "; OutStandingMsgsCount: " + outstandingMsgs.size() + "; Sent: "
+           + sent + "; Acked: " + acked + (adaptiveWindow != null ? "; " + adaptiveWindow : "") + "; "
+           + super.toString();
   }
 
   @Override
@@ -132,13 +141,13 @@ public class SendStateMachine extends AbstractStateMachine {
 
         while (ackedSeq > acked) {
           ++acked;
-          removeMessage();
+          removeMessage(0);
         }
       }
-      if (outstandingCnt > 0) {
+      if (!outstandingMsgs.isEmpty()) {
         // resend those not acked
         resendOutstandings();
-        if (outstandingCnt >= sendWindow) {
+        if (outstandingMsgs.size() >= window()) {
           switchToState(SENDWINDOW_FULL_STATE);
         } else {
           switchToState(MESSAGE_WAIT_STATE);
@@ -172,7 +181,7 @@ public class SendStateMachine extends AbstractStateMachine {
         getCurrentState().execute(protocolMessage);
       } else {
         sendMoreIfAvailable();
-        if ((sendWindow > 0) && (outstandingCnt >= sendWindow)) {
+        if ((sendWindow > 0) && (outstandingMsgs.size() >= window())) {
           switchToState(SENDWINDOW_FULL_STATE);
         }
       }
@@ -203,12 +212,18 @@ public class SendStateMachine extends AbstractStateMachine {
         }
       }
 
+      final long now = System.nanoTime();
+      long rtt = 0;
       while (ackedSeq > acked) {
         ++acked;
-        removeMessage();
+        rtt = removeMessage(now);
+      }
+      if (adaptiveWindow != null) {
+        // only the newest message acked gives a useful sample, the older ones waited for the delayed ack
+        adaptiveWindow.acked(rtt);
       }
 
-      if (outstandingCnt < sendWindow) {
+      if (outstandingMsgs.size() < window()) {
         switchToState(MESSAGE_WAIT_STATE);
       } else {
         switchToState(SENDWINDOW_FULL_STATE);
@@ -255,7 +270,7 @@ public class SendStateMachine extends AbstractStateMachine {
 
   // send all or till the window
   private void sendMoreIfAvailable() {
-    while (((sendWindow <= 0) || (outstandingCnt < sendWindow)) && !sendQueue.isEmpty()) {
+    while (((sendWindow <= 0) || (outstandingMsgs.size() < window())) && !sendQueue.isEmpty()) {
       delivery.sendMessage(createProtocolMessage(++sent));
     }
   }
@@ -263,24 +278,29 @@ public class SendStateMachine extends AbstractStateMachine {
   private OOOProtocolMessage createProtocolMessage(long count) {
     final OOOProtocolMessage opm = delivery.createProtocolMessage(count, dequeue(sendQueue));
     Assert.eval(opm != null);
-    outstandingCnt++;
-    outstandingMsgs.add(opm);
+    outstandingMsgs.add(opm, adaptiveWindow != null ? System.nanoTime() : 0);
     return (opm);
   }
 
+  private int window() {
+    return adaptiveWindow != null ? adaptiveWindow.get() : sendWindow;
+  }
+
   private void resendOutstandings() {
-    ListIterator it = outstandingMsgs.listIterator(0);
-    while (it.hasNext()) {
-      OOOProtocolMessage msg = (OOOProtocolMessage) it.next();
-      delivery.sendMessage(msg);
+    outstandingMsgs.markResent();
+    for (int i = 0, n = outstandingMsgs.size(); i < n; i++) {
+      delivery.sendMessage(outstandingMsgs.get(i));
     }
   }
 
-  private void removeMessage() {
+  /**
+   * @return the round trip time of the removed message, or 0 if unknown
+   */
+  private long removeMessage(long now) {
+    final long sentAt = outstandingMsgs.firstSentAt();
     OOOProtocolMessage msg = outstandingMsgs.removeFirst();
     msg.reallyDoRecycleOnWrite();
-    outstandingCnt--;
-    Assert.eval(outstandingCnt >= 0);
+    return (sentAt == 0 || now == 0) ? 0 : now - sentAt;
   }
 
   @Override
@@ -290,7 +310,6 @@ public class SendStateMachine extends AbstractStateMachine {
     acked = -1;
 
     // purge out outstanding sends
-    outstandingCnt = 0;
     outstandingMsgs.clear();
 
     LinkedBlockingQueue<TCNetworkMessage> tmpQ = sendQueue;
@@ -19,14 +19,25 @@ package com.tc.net.protocol.tcm;
 import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.async.api.Sink;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class HydrateContext implements MultiThreadedEventContext {
 
-  private final Sink      destSink;
-  private final TCMessage message;
+  private final Sink          destSink;
+  private final TCMessage     message;
+  private final AtomicInteger channelPending;
 
   public HydrateContext(TCMessage message, Sink destSink) {
+    this(message, destSink, null);
+  }
+
+  /**
+   * @param channelPending messages of the same channel waiting to be hydrated, this one included
+   */
+  HydrateContext(TCMessage message, Sink destSink, AtomicInteger channelPending) {
     this.message = message;
     this.destSink = destSink;
+    this.channelPending = channelPending;
   }
 
   public Sink getDestSink() {
@@ -37,6 +48,12 @@ public class HydrateContext implements MultiThreadedEventContext {
     return message;
   }
 
+  void hydrated() {
+    if (channelPending != null) {
+      channelPending.decrementAndGet();
+    }
+  }
+
   @Override
   public Object getKey() {
     return message.getSourceNodeID();
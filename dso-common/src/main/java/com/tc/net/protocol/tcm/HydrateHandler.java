@@ -18,6 +18,8 @@ package com.tc.net.protocol.tcm;
 
 import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.EventContext;
+import com.tc.async.api.Sink;
+import com.tc.lang.Recyclable;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 
@@ -27,8 +29,14 @@ public class HydrateHandler extends AbstractEventHandler {
   @Override
   public void handleEvent(EventContext context) {
     HydrateContext hc = (HydrateContext) context;
-    TCMessage message = hc.getMessage();
+    try {
+      hydrateAndForward(hc.getMessage(), hc.getDestSink());
+    } finally {
+      hc.hydrated();
+    }
+  }
 
+  static void hydrateAndForward(TCMessage message, Sink destSink) {
     try {
       message.hydrate();
     } catch (Throwable t) {
@@ -38,9 +46,13 @@ public class HydrateHandler extends AbstractEventHandler {
         // oh well
       }
       message.getChannel().close();
+      // nothing downstream will see this message, hand its buffers back now
+      if (message instanceof Recyclable) {
+        ((Recyclable) message).recycle();
+      }
       return;
     }
-    hc.getDestSink().add(message);
+    destSink.add(message);
   }
 
 }
@@ -0,0 +1,109 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.tcm;
+
+import com.tc.async.api.ConfigurationContext;
+import com.tc.async.api.EventContext;
+import com.tc.async.api.EventHandler;
+import com.tc.async.api.EventHandlerException;
+import com.tc.lang.Recyclable;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the handler of a stage and then recycles every message it was given, handing the message's buffers back to the
+ * pool. Only stages whose handler is done with a message once <code>handleEvent</code> returns should be wrapped.
+ * <p>
+ * A handler that has to hold on to one particular message calls {@link #retain(Object)} from within
+ * <code>handleEvent</code>, and becomes responsible for recycling it.
+ */
+public class RecyclingEventHandler implements EventHandler {
+
+  private static final ThreadLocal<Object> RETAINED = new ThreadLocal<Object>();
+
+  private final EventHandler               delegate;
+  private final AtomicLong                 recycled = new AtomicLong();
+  private final AtomicLong                 retained = new AtomicLong();
+
+  public RecyclingEventHandler(EventHandler delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Keeps the message currently being handled on this thread from being recycled when its handler returns.
+   */
+  public static void retain(Object message) {
+    RETAINED.set(message);
+  }
+
+  @Override
+  public void handleEvent(EventContext context) throws EventHandlerException {
+    try {
+      delegate.handleEvent(context);
+    } finally {
+      release(context);
+    }
+  }
+
+  @Override
+  public void handleEvents(Collection contexts) throws EventHandlerException {
+    // one at a time, so that retain() applies to the message it was called for
+    for (Iterator i = contexts.iterator(); i.hasNext();) {
+      handleEvent((EventContext) i.next());
+    }
+  }
+
+  private void release(EventContext context) {
+    if (RETAINED.get() != null) {
+      final boolean kept = RETAINED.get() == context;
+      RETAINED.remove();
+      if (kept) {
+        retained.incrementAndGet();
+        return;
+      }
+    }
+    if (context instanceof Recyclable) {
+      ((Recyclable) context).recycle();
+      recycled.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void initializeContext(ConfigurationContext context) {
+    delegate.initializeContext(context);
+  }
+
+  @Override
+  public void destroy() {
+    delegate.destroy();
+  }
+
+  public long getRecycledCount() {
+    return recycled.get();
+  }
+
+  public long getRetainedCount() {
+    return retained.get();
+  }
+
+  @Override
+  public String toString() {
+    return "RecyclingEventHandler[" + delegate + ", recycled=" + recycled + ", retained=" + retained + "]";
+  }
+}
@@ -17,23 +17,60 @@
 package com.tc.net.protocol.tcm;
 
 import com.tc.async.api.Sink;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands messages to the hydrate stage, which hydrates them in order per source node and then passes them on to their
+ * destination stage.
+ * <p>
+ * Small messages can be hydrated straight away by the receiving thread instead, so that they don't queue up behind the
+ * large transaction batches of other nodes that happen to share their hydrate thread. That is only done when nothing
+ * else from the same channel is still waiting to be hydrated, which keeps the messages of a channel in order.
+ */
 class TCMessageSinkToSedaSink implements TCMessageSink {
-  private final Sink destSink;
-  private final Sink hydrateSink;
-  
+  private static final String PENDING_HYDRATIONS = "TCMessageSinkToSedaSink.pendingHydrations";
+
+  private final Sink          destSink;
+  private final Sink          hydrateSink;
+  private final int           inlineMaxBytes;
 
   public TCMessageSinkToSedaSink(Sink destSink, Sink hydrateSink) {
+    this(destSink, hydrateSink, TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.TC_MESSAGE_HYDRATE_INLINE_MAX_BYTES, 0));
+  }
+
+  TCMessageSinkToSedaSink(Sink destSink, Sink hydrateSink, int inlineMaxBytes) {
     this.destSink = destSink;
     this.hydrateSink = hydrateSink;
+    this.inlineMaxBytes = inlineMaxBytes;
   }
 
   @Override
-  public void putMessage(TCMessage message) {    
-    HydrateContext context = new HydrateContext(message, destSink);
-    hydrateSink.add(context);
+  public void putMessage(TCMessage message) {
+    if (inlineMaxBytes <= 0) {
+      hydrateSink.add(new HydrateContext(message, destSink));
+      return;
+    }
+
+    final AtomicInteger pending = pendingHydrations(message.getChannel());
+    // the messages of a channel arrive on a single thread, only the hydrate stage brings this count down
+    if (pending.get() == 0 && message.getTotalLength() <= inlineMaxBytes) {
+      HydrateHandler.hydrateAndForward(message, destSink);
+    } else {
+      pending.incrementAndGet();
+      hydrateSink.add(new HydrateContext(message, destSink, pending));
+    }
+  }
+
+  private static AtomicInteger pendingHydrations(MessageChannel channel) {
+    AtomicInteger pending = (AtomicInteger) channel.getAttachment(PENDING_HYDRATIONS);
+    if (pending == null) {
+      channel.addAttachment(PENDING_HYDRATIONS, new AtomicInteger(), false);
+      pending = (AtomicInteger) channel.getAttachment(PENDING_HYDRATIONS);
+    }
+    return pending;
   }
-  
-    
-  
 }
@@ -25,6 +25,7 @@ import com.tc.net.MaxConnectionsExceededException;
 import com.tc.net.ReconnectionRejectedException;
 import com.tc.net.core.ConnectionAddressProvider;
 import com.tc.net.core.ConnectionInfo;
+import com.tc.net.core.FramingConnection;
 import com.tc.net.core.TCConnection;
 import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.security.TCSecurityManager;
@@ -61,6 +62,7 @@ public class ClientMessageTransport extends MessageTransportBase {
   private final int                         callbackPort;
   private final TCSecurityManager           securityManager;
   private final ConnectionAddressProvider   addressProvider;
+  private final boolean                     framingRequested;
 
   public ClientMessageTransport(ClientConnectionEstablisher clientConnectionEstablisher,
                                 TransportHandshakeErrorHandler handshakeErrorHandler,
@@ -91,6 +93,8 @@ public class ClientMessageTransport extends MessageTransportBase {
     this.connectionEstablisher = clientConnectionEstablisher;
     this.callbackPort = callbackPort;
     this.securityManager = securityManager;
+    this.framingRequested = TCPropertiesImpl.getProperties()
+        .getBoolean(TCPropertiesConsts.NET_CORE_COMPRESSION_ENABLED, false);
   }
 
   /**
@@ -288,6 +292,9 @@ public class ClientMessageTransport extends MessageTransportBase {
       this.waitForSynAckResult = new TCFuture(this.status);
       // get the stack layer list and pass it in
       short stackLayerFlags = getCommunicationStackFlags(this);
+      if (isFramingRequested(getConnection())) {
+        stackLayerFlags |= NetworkLayer.TYPE_FRAMING_REQUESTED;
+      }
       if (connectionId.isSecured() && connectionId.getPassword() == null) {
         // Re-init the password
         ConnectionInfo connectionInfo = addressProvider.getIterator().next();
@@ -359,10 +366,18 @@ public class ClientMessageTransport extends MessageTransportBase {
       TransportHandshakeException, CommStackMismatchException, ReconnectionRejectedException {
     HandshakeResult result = handShake();
     handleHandshakeError(result);
+    if (isFramingRequested(connection)) {
+      // the server switched right after its SynAck, the Ack is the first frame we send
+      ((FramingConnection) connection).enableFraming();
+    }
     sendAck();
     connectionId.authenticated();
   }
 
+  private boolean isFramingRequested(TCConnection connection) {
+    return framingRequested && connection instanceof FramingConnection;
+  }
+
   private String getMaxConnectionsExceededMessage(int maxConnections) {
     return "Your product key only allows maximum " + maxConnections + " clients to connect.";
   }
@@ -26,9 +26,9 @@ import com.tc.util.Assert;
 import com.tc.util.concurrent.SetOnceFlag;
 import com.tc.util.concurrent.ThreadUtil;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -36,6 +36,9 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * The Engine which does the peer health checking work. Based on the config passed, it probes the peer once in specified
  * interval. When it doesn't get a reply from the peer, it disconnects the transport.
+ * <p>
+ * Anything received on a connection counts as a sign of life, so connections carrying traffic are never probed. They
+ * are not even looked at again until they could have gone idle, a {@link TimerWheel} keeps track of when that is.
  * 
  * @author Manoj
  */
@@ -141,8 +144,11 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
   }
 
   static class HealthCheckerMonitorThreadEngine implements Runnable {
-    private final ConcurrentMap<ConnectionID, MessageTransport> connectionMap =
-        new ConcurrentHashMap<ConnectionID, MessageTransport>();
+    private final ConcurrentMap<ConnectionID, Monitored> connectionMap =
+        new ConcurrentHashMap<ConnectionID, Monitored>();
+    // handed over to the monitor thread, which alone touches the wheel
+    private final Queue<Monitored>      added         = new ConcurrentLinkedQueue<Monitored>();
+    private final TimerWheel<Monitored> wheel;
     private final long                pingIdleTime;
     private final long                pingInterval;
     private final int                 pingProbes;
@@ -172,12 +178,19 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
         throw new AssertionError("HealthChecker Config Error");
       }
 
+      this.wheel = new TimerWheel<Monitored>(ticksFor(this.pingIdleTime) + 1);
+    }
+
+    private int ticksFor(long millis) {
+      return (int) Math.max(1, (millis + this.pingInterval - 1) / this.pingInterval);
     }
 
     private void addConnection(MessageTransport transport) {
       MessageTransportBase mtb = (MessageTransportBase) transport;
       mtb.setHealthCheckerContext(getHealthCheckerContext(mtb, config, connectionManager));
-      connectionMap.put(transport.getConnectionId(), transport);
+      final Monitored monitored = new Monitored(mtb);
+      connectionMap.put(transport.getConnectionId(), monitored);
+      added.add(monitored);
     }
 
     private boolean removeConnection(MessageTransport transport) {
@@ -203,42 +216,52 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
           return;
         }
 
-        // same interval for all connections
-        final boolean canCheckTime = canCheckTime();
+        for (Monitored monitored; (monitored = added.poll()) != null;) {
+          wheel.schedule(monitored, 1);
+        }
 
-        Iterator connectionIterator = connectionMap.values().iterator();
-        while (connectionIterator.hasNext()) {
-          MessageTransportBase mtb = (MessageTransportBase) connectionIterator.next();
+        for (Monitored monitored : wheel.advance()) {
+          final MessageTransportBase mtb = monitored.transport;
+          // skip connections that have been removed, or added again since this one was scheduled
+          if (connectionMap.get(mtb.getConnectionId()) != monitored) {
+            continue;
+          }
 
           TCConnection conn = mtb.getConnection();
           if (conn == null || !mtb.isConnected()) {
             logger.info("[" + (conn == null ? null : conn.getRemoteAddress().getCanonicalStringForm())
                         + "] is not connected. Health Monitoring for this node is now disabled.");
-            connectionIterator.remove();
+            connectionMap.remove(mtb.getConnectionId(), monitored);
             continue;
           }
 
           ConnectionHealthCheckerContext connContext = mtb.getHealthCheckerContext();
-          if ((conn.getIdleReceiveTime() >= this.pingIdleTime)) {
+          final long idleTime = conn.getIdleReceiveTime();
+          if (idleTime >= this.pingIdleTime) {
 
             if (!connContext.probeIfAlive()) {
               // Connection is dead. Disconnect the transport.
-              logger.error("Declared connection dead " + mtb.getConnectionId() + " idle time "
-                           + conn.getIdleReceiveTime() + "ms");
+              logger.error("Declared connection dead " + mtb.getConnectionId() + " idle time " + idleTime + "ms");
               mtb.disconnect();
-              connectionIterator.remove();
+              connectionMap.remove(mtb.getConnectionId(), monitored);
+              continue;
             }
+            wheel.schedule(monitored, 1);
           } else {
             connContext.refresh();
-          }
-          // is there any significant time difference between hosts ?
-          if (canCheckTime) {
-            connContext.checkTime();
+            // nothing to do before the connection could have gone idle
+            wheel.schedule(monitored, ticksFor(this.pingIdleTime - idleTime));
           }
         }
 
-        // update last check time once for all connections
-        if (canCheckTime) {
+        // is there any significant time difference between hosts ? same interval for all connections
+        if (canCheckTime()) {
+          for (Monitored monitored : connectionMap.values()) {
+            if (monitored.transport.isConnected()) {
+              monitored.transport.getHealthCheckerContext().checkTime();
+            }
+          }
+          // update last check time once for all connections
           this.lastCheckTime.set(System.currentTimeMillis());
         }
 
@@ -257,16 +280,22 @@ public class ConnectionHealthCheckerImpl implements ConnectionHealthChecker {
     }
 
     long getTotalProbesSentOnAllConnections() {
-      Iterator connIterator = connectionMap.values().iterator();
       long totalProbeSent = 0;
-      while (connIterator.hasNext()) {
-        MessageTransportBase mtb = (MessageTransportBase) connIterator.next();
-        ConnectionHealthCheckerContextImpl connContext = (ConnectionHealthCheckerContextImpl) mtb
+      for (Monitored monitored : connectionMap.values()) {
+        ConnectionHealthCheckerContextImpl connContext = (ConnectionHealthCheckerContextImpl) monitored.transport
             .getHealthCheckerContext();
         totalProbeSent += connContext.getTotalProbesSent();
       }
       return totalProbeSent;
     }
+
+    private static final class Monitored {
+      private final MessageTransportBase transport;
+
+      Monitored(MessageTransportBase transport) {
+        this.transport = transport;
+      }
+    }
   }
 
   /* For testing only */
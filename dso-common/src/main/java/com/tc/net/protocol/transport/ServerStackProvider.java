@@ -20,6 +20,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
+import com.tc.net.core.FramingConnection;
 import com.tc.net.core.TCConnection;
 import com.tc.net.core.security.TCSecurityManager;
 import com.tc.net.protocol.IllegalReconnectException;
@@ -343,6 +344,11 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
       // now check that the client side stack and server side stack are both in sync
       short clientStackLayerFlags = syn.getStackLayerFlags();
       short serverStackLayerFlags = this.transport.getCommunicationStackFlags(this.transport);
+      final boolean framingRequested = clientStackLayerFlags != NetworkLayer.TYPE_TEST_MESSAGE
+                                       && (clientStackLayerFlags & NetworkLayer.TYPE_FRAMING_REQUESTED) != 0;
+      if (framingRequested) {
+        clientStackLayerFlags &= ~NetworkLayer.TYPE_FRAMING_REQUESTED;
+      }
 
       // compare the two and send an error if there is a mismatch
       // send the layers present at the server side in the error message
@@ -375,6 +381,10 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
       logger.info("User " + principal + " successfully authenticated");
       // todo store principal ?
       sendSynAck(connectionId, syn.getSource(), isMaxConnectionReached);
+      if (framingRequested && syn.getSource() instanceof FramingConnection) {
+        // everything queued after the SynAck is framed, starting with our reply to the client's Ack
+        ((FramingConnection) syn.getSource()).enableFraming();
+      }
     }
 
     private boolean verifySyn(WireProtocolMessage message) {
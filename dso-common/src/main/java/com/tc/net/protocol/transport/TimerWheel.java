@@ -0,0 +1,97 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A hashed timing wheel with a fixed tick. Items are filed under the slot of the tick they are due at, so moving to the
+ * next tick only looks at that slot instead of at everything that is scheduled. Items due further out than the wheel
+ * is long share a slot with nearer ones and are left there until their own tick comes round.
+ * <p>
+ * Not thread safe.
+ */
+final class TimerWheel<T> {
+
+  private final List<Entry<T>>[] slots;
+  private final int              mask;
+  private long                   tick;
+  private int                    size;
+
+  @SuppressWarnings("unchecked")
+  TimerWheel(int minSlots) {
+    int length = 1;
+    while (length < minSlots) {
+      length <<= 1;
+    }
+    this.slots = new List[length];
+    for (int i = 0; i < length; i++) {
+      this.slots[i] = new ArrayList<Entry<T>>();
+    }
+    this.mask = length - 1;
+  }
+
+  /**
+   * Files the item to come out of {@link #advance()} the given number of ticks from now, at least one.
+   */
+  void schedule(T item, long ticks) {
+    final long due = this.tick + Math.max(1, ticks);
+    this.slots[(int) (due & this.mask)].add(new Entry<T>(item, due));
+    this.size++;
+  }
+
+  /**
+   * Moves to the next tick.
+   * 
+   * @return the items that are due at it, in the order they were scheduled
+   */
+  List<T> advance() {
+    this.tick++;
+    final List<Entry<T>> slot = this.slots[(int) (this.tick & this.mask)];
+    if (slot.isEmpty()) { return Collections.emptyList(); }
+
+    final List<T> due = new ArrayList<T>(slot.size());
+    int kept = 0;
+    for (int i = 0; i < slot.size(); i++) {
+      final Entry<T> entry = slot.get(i);
+      if (entry.due <= this.tick) {
+        due.add(entry.item);
+      } else {
+        slot.set(kept++, entry);
+      }
+    }
+    slot.subList(kept, slot.size()).clear();
+    this.size -= due.size();
+    return due;
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  private static final class Entry<T> {
+    private final T    item;
+    private final long due;
+
+    Entry(T item, long due) {
+      this.item = item;
+      this.due = due;
+    }
+  }
+}
@@ -17,6 +17,9 @@
 package com.tc.object.msg;
 
 import com.tc.lang.Recyclable;
+import com.tc.logging.LossyTCLogger;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,10 +30,15 @@ import java.util.Set;
 
 public class MessageRecyclerImpl implements MessageRecycler {
 
-  private static final int MAX_MESSAGES_TO_HOLD = 1000;
+  private static final int      MAX_MESSAGES_TO_HOLD = 1000;
+
+  private static final TCLogger lossyLogger          = new LossyTCLogger(TCLogging.getLogger(MessageRecyclerImpl.class),
+                                                                         60 * 1000);
 
   private final LinkedList messages             = new LinkedList();
   private final Map        keys2RecycleItem     = new HashMap();
+  private long             recycled;
+  private long             dropped;
 
   public MessageRecyclerImpl() {
     super();
@@ -49,11 +57,16 @@ public class MessageRecyclerImpl implements MessageRecycler {
       this.messages.addFirst(ri);
     } else {
       message.recycle();
+      this.recycled++;
     }
     if (this.messages.size() > MAX_MESSAGES_TO_HOLD) {
       // Let DGC take care of it. We don't want a OOME !
       RecycleItem ri = (RecycleItem) this.messages.removeLast();
       remove(ri);
+      // its buffers never make it back to the pool, most likely a key that is never processed
+      this.dropped++;
+      lossyLogger.warn("Giving up on recycling " + ri.getMessage() + ", still waiting for " + ri.getKeys().size()
+                       + " keys, " + this.dropped + " messages dropped so far");
     }
   }
 
@@ -73,12 +86,24 @@ public class MessageRecyclerImpl implements MessageRecycler {
         this.messages.remove(ri);
         Recyclable message = ri.getMessage();
         message.recycle();
+        this.recycled++;
         return true;
       }
     }
     return false;
   }
 
+  public synchronized long getRecycledCount() {
+    return this.recycled;
+  }
+
+  /**
+   * @return how many messages were let go of unrecycled because too many were waiting for their keys
+   */
+  public synchronized long getDroppedCount() {
+    return this.dropped;
+  }
+
   static final class RecycleItem {
     Recyclable message;
     Set        keys;
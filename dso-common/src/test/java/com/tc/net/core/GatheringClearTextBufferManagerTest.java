@@ -0,0 +1,80 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class GatheringClearTextBufferManagerTest extends TCTestCase {
+
+  public void testGatheringWriteAndScatteringRead() throws Exception {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    SocketChannel accepted = server.accept();
+    try {
+      GatheringClearTextBufferManager sender = new GatheringClearTextBufferManager(client);
+      GatheringClearTextBufferManager receiver = new GatheringClearTextBufferManager(accepted);
+
+      ByteBuffer[] srcs = new ByteBuffer[] { filled(100, 0), filled(5000, 100), filled(1, 5100) };
+      long sent = 0;
+      while (sent < 5101) {
+        sent += sender.sendFrom(srcs, 0, srcs.length);
+      }
+      for (ByteBuffer src : srcs) {
+        assertFalse(src.hasRemaining());
+      }
+
+      ByteBuffer[] dsts = new ByteBuffer[] { ByteBuffer.allocate(3000), ByteBuffer.allocate(3000) };
+      long received = 0;
+      while (received < 5101) {
+        received += receiver.recvTo(dsts, 0, dsts.length);
+      }
+      assertEquals(5101, received);
+      assertEquals(3000, dsts[0].position());
+      assertEquals(2101, dsts[1].position());
+      for (int i = 0; i < 3000; i++) {
+        assertEquals((byte) i, dsts[0].get(i));
+      }
+      for (int i = 0; i < 2101; i++) {
+        assertEquals((byte) (3000 + i), dsts[1].get(i));
+      }
+
+      assertTrue(sender.getChannelWrites() >= 1);
+      assertEquals(0, sender.getChannelReads());
+      assertTrue(receiver.getChannelReads() >= 1);
+      assertEquals(0, receiver.getChannelWrites());
+    } finally {
+      client.close();
+      accepted.close();
+      server.close();
+    }
+  }
+
+  private static ByteBuffer filled(int length, int start) {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    for (int i = 0; i < length; i++) {
+      buffer.put((byte) (start + i));
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
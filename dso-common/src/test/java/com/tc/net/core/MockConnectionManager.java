@@ -22,6 +22,8 @@ import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.protocol.ProtocolAdaptorFactory;
 import com.tc.net.protocol.TCProtocolAdaptor;
 
+import java.util.Map;
+
 /**
  * TODO Jan 4, 2005: comment describing what this class is for.
  */
@@ -135,6 +137,11 @@ public class MockConnectionManager implements TCConnectionManager {
     throw new ImplementMe();
   }
 
+  @Override
+  public Map<String, Long> getConnectionStats() {
+    throw new ImplementMe();
+  }
+
   @Override
   public TCConnection[] getAllActiveConnections() {
     throw new ImplementMe();
@@ -0,0 +1,36 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+import java.nio.channels.spi.SelectorProvider;
+
+public class NIOProviderTest extends TCTestCase {
+
+  public void testDefaultProvider() {
+    assertSame(SelectorProvider.provider(), NIOProvider.load(null));
+    assertSame(SelectorProvider.provider(), NIOProvider.load(" "));
+    assertSame(SelectorProvider.provider(), NIOProvider.get());
+  }
+
+  public void testFallsBackOnUnusableProvider() {
+    assertSame(SelectorProvider.provider(), NIOProvider.load("com.tc.net.core.NoSuchSelectorProvider"));
+    // loads, but is not a SelectorProvider
+    assertSame(SelectorProvider.provider(), NIOProvider.load(String.class.getName()));
+  }
+}
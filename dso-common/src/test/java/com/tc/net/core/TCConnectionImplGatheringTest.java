@@ -0,0 +1,330 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.protocol.TCNetworkMessage;
+import com.tc.net.protocol.TCProtocolAdaptor;
+import com.tc.test.TCTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TCConnectionImplGatheringTest extends TCTestCase {
+
+  private SocketChannel        channel;
+  private CoreNIOServices      commWorker;
+  private FakeBufferManager    bufferManager;
+  private RecordingAdaptor     adaptor;
+  private TCConnectionImpl     connection;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    channel = mock(SocketChannel.class);
+    when(channel.socket()).thenReturn(mock(Socket.class));
+    commWorker = mock(CoreNIOServices.class);
+    bufferManager = new FakeBufferManager();
+    adaptor = new RecordingAdaptor(1000, 1000);
+
+    BufferManagerFactoryProvider provider = new BufferManagerFactoryProvider() {
+      @Override
+      public BufferManagerFactory getBufferManagerFactory() {
+        return new BufferManagerFactory() {
+          @Override
+          public BufferManager createBufferManager(SocketChannel socketChannel, boolean client) {
+            return bufferManager;
+          }
+        };
+      }
+    };
+    connection = new TCConnectionImpl(null, adaptor, channel, mock(TCConnectionManagerImpl.class), commWorker,
+                                      mock(SocketParams.class), null, provider);
+  }
+
+  public void testScatteringReadHandsEverythingToTheAdaptor() throws Exception {
+    byte[] data = sequence(5000, 0);
+    bufferManager.inbound(data);
+
+    // 2000 bytes of room per round, the last round comes up short and ends the read
+    assertEquals(5000, connection.doRead());
+    assertEquals(3, bufferManager.recvArrays.size());
+    assertTrue(Arrays.equals(data, adaptor.received.toByteArray()));
+
+    byte[] more = sequence(10, 5000);
+    bufferManager.inbound(more);
+    assertEquals(10, connection.doRead());
+    assertEquals(5010, adaptor.received.size());
+
+    assertSameArray(bufferManager.recvArrays);
+    assertCleared(bufferManager.recvArrays.get(0));
+  }
+
+  public void testScatteringReadGrowsWithTheAdaptorBuffers() throws Exception {
+    bufferManager.inbound(sequence(10, 0));
+    assertEquals(10, connection.doRead());
+
+    adaptor.setSizes(100, 100, 100);
+    byte[] data = sequence(250, 10);
+    bufferManager.inbound(data);
+    assertEquals(250, connection.doRead());
+    assertEquals(260, adaptor.received.size());
+
+    assertEquals(2, bufferManager.recvArrays.size());
+    assertNotSame(bufferManager.recvArrays.get(0), bufferManager.recvArrays.get(1));
+    assertEquals(3, bufferManager.recvArrays.get(1).length);
+
+    adaptor.setSizes(1000);
+    bufferManager.inbound(sequence(5, 260));
+    assertEquals(5, connection.doRead());
+    assertSame(bufferManager.recvArrays.get(1), bufferManager.recvArrays.get(2));
+    assertEquals(1, bufferManager.recvLengths.get(2).intValue());
+    assertCleared(bufferManager.recvArrays.get(2));
+  }
+
+  public void testGatheringWriteCompletesMessagesAcrossPartialWrites() throws Exception {
+    byte[] first = sequence(300, 0);
+    byte[] second = sequence(50, 300);
+    byte[] third = sequence(700, 350);
+    TCNetworkMessage m1 = message(first, 100);
+    TCNetworkMessage m2 = message(second, 50);
+    TCNetworkMessage m3 = message(third, 200);
+    connection.putMessage(m1);
+    connection.putMessage(m2);
+    connection.putMessage(m3);
+
+    // a full send buffer leaves everything queued
+    bufferManager.writeBudget = 0;
+    assertEquals(0, connection.doWrite());
+    verify(m1, never()).wasSent();
+
+    // each partial write stops the loop until the channel is writable again
+    bufferManager.writeBudget = 120;
+    assertEquals(120, connection.doWrite());
+    verify(m1, never()).wasSent();
+
+    bufferManager.writeBudget = 200;
+    assertEquals(200, connection.doWrite());
+    verify(m1).wasSent();
+    verify(m2, never()).wasSent();
+
+    int written = 320;
+    while (written < 1050) {
+      written += connection.doWrite();
+    }
+    assertEquals(1050, written);
+    verify(m1).wasSent();
+    verify(m2).wasSent();
+    verify(m3).wasSent();
+    verify(commWorker, times(1)).removeWriteInterest(connection, channel);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    expected.write(first);
+    expected.write(second);
+    expected.write(third);
+    assertTrue(Arrays.equals(expected.toByteArray(), bufferManager.sent.toByteArray()));
+
+    assertSameArray(bufferManager.sendArrays);
+    assertCleared(bufferManager.sendArrays.get(0));
+  }
+
+  private static void assertSameArray(List<ByteBuffer[]> arrays) {
+    for (ByteBuffer[] array : arrays) {
+      assertSame(arrays.get(0), array);
+    }
+  }
+
+  private static void assertCleared(ByteBuffer[] array) {
+    // the connection must not keep the adaptor's or the messages' buffers reachable between calls
+    for (ByteBuffer buffer : array) {
+      assertNull(buffer);
+    }
+  }
+
+  private static TCNetworkMessage message(byte[] data, int chunk) {
+    List<TCByteBuffer> buffers = new ArrayList<TCByteBuffer>();
+    for (int i = 0; i < data.length; i += chunk) {
+      buffers.add(TCByteBufferFactory.wrap(Arrays.copyOfRange(data, i, Math.min(data.length, i + chunk))));
+    }
+    TCNetworkMessage message = mock(TCNetworkMessage.class);
+    when(message.getEntireMessageData()).thenReturn(buffers.toArray(new TCByteBuffer[buffers.size()]));
+    when(message.getTotalLength()).thenReturn(data.length);
+    return message;
+  }
+
+  private static byte[] sequence(int length, int start) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (start + i);
+    }
+    return data;
+  }
+
+  private static class RecordingAdaptor implements TCProtocolAdaptor {
+    final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private TCByteBuffer[]      buffers;
+
+    RecordingAdaptor(int... sizes) {
+      setSizes(sizes);
+    }
+
+    void setSizes(int... sizes) {
+      buffers = new TCByteBuffer[sizes.length];
+      for (int i = 0; i < sizes.length; i++) {
+        buffers[i] = TCByteBufferFactory.wrap(new byte[sizes[i]]);
+      }
+    }
+
+    @Override
+    public TCByteBuffer[] getReadBuffers() {
+      return buffers;
+    }
+
+    @Override
+    public void addReadData(TCConnection source, TCByteBuffer[] data, int length) {
+      int left = length;
+      for (TCByteBuffer buffer : data) {
+        buffer.flip();
+        int n = Math.min(left, buffer.remaining());
+        byte[] bytes = new byte[n];
+        buffer.get(bytes);
+        received.write(bytes, 0, n);
+        buffer.clear();
+        left -= n;
+      }
+      assertEquals(0, left);
+    }
+  }
+
+  /**
+   * Stands in for the socket: writes at most {@link #writeBudget} bytes per call and reads from what was queued with
+   * {@link #inbound(byte[])}, remembering the arrays it was handed.
+   */
+  private static class FakeBufferManager implements GatheringBufferManager {
+    final List<ByteBuffer[]>    sendArrays  = new ArrayList<ByteBuffer[]>();
+    final List<ByteBuffer[]>    recvArrays  = new ArrayList<ByteBuffer[]>();
+    final List<Integer>         recvLengths = new ArrayList<Integer>();
+    final ByteArrayOutputStream sent        = new ByteArrayOutputStream();
+    int                         writeBudget = Integer.MAX_VALUE;
+    private ByteBuffer          inbound     = ByteBuffer.allocate(0);
+    private long                writes;
+    private long                reads;
+
+    void inbound(byte[] data) {
+      inbound = ByteBuffer.wrap(data);
+    }
+
+    @Override
+    public long sendFrom(ByteBuffer[] srcs, int offset, int length) {
+      sendArrays.add(srcs);
+      writes++;
+      int budget = writeBudget;
+      long written = 0;
+      for (int i = offset; i < offset + length && budget > 0; i++) {
+        int n = Math.min(budget, srcs[i].remaining());
+        byte[] bytes = new byte[n];
+        srcs[i].get(bytes);
+        sent.write(bytes, 0, n);
+        budget -= n;
+        written += n;
+      }
+      return written;
+    }
+
+    @Override
+    public long recvTo(ByteBuffer[] dsts, int offset, int length) {
+      recvArrays.add(dsts);
+      recvLengths.add(length);
+      reads++;
+      long read = 0;
+      for (int i = offset; i < offset + length && inbound.hasRemaining(); i++) {
+        int n = Math.min(dsts[i].remaining(), inbound.remaining());
+        ByteBuffer src = inbound.duplicate();
+        src.limit(src.position() + n);
+        dsts[i].put(src);
+        inbound.position(inbound.position() + n);
+        read += n;
+      }
+      return read;
+    }
+
+    @Override
+    public long getChannelWrites() {
+      return writes;
+    }
+
+    @Override
+    public long getChannelReads() {
+      return reads;
+    }
+
+    @Override
+    public int forwardFromReadBuffer(ByteBuffer dest) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int forwardToWriteBuffer(ByteBuffer src) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int sendFromBuffer() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int recvToBuffer() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      //
+    }
+
+    @Override
+    public boolean remainingToSend() {
+      return false;
+    }
+
+    @Override
+    public int forwardFromReadBuffer(GatheringByteChannel gbc) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int forwardToWriteBuffer(ScatteringByteChannel sbc) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -31,10 +31,16 @@ import com.tc.net.protocol.tcm.CommunicationsManager;
 import com.tc.net.protocol.tcm.CommunicationsManagerImpl;
 import com.tc.net.protocol.tcm.NetworkListener;
 import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessage;
 import com.tc.net.protocol.tcm.TCMessageRouterImpl;
+import com.tc.net.protocol.tcm.TCMessageSink;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.net.protocol.tcm.UnsupportedMessageTypeException;
+import com.tc.net.protocol.tcm.msgs.PingMessage;
 import com.tc.net.protocol.transport.ClientConnectionEstablisher;
 import com.tc.net.protocol.transport.ClientMessageTransport;
 import com.tc.net.protocol.transport.DefaultConnectionIdFactory;
+import com.tc.net.protocol.transport.DisabledHealthCheckerConfigImpl;
 import com.tc.net.protocol.transport.HealthCheckerConfigImpl;
 import com.tc.net.protocol.transport.MessageTransport;
 import com.tc.net.protocol.transport.NullConnectionPolicy;
@@ -57,7 +63,9 @@ import com.tc.util.PortChooser;
 import com.tc.util.concurrent.ThreadUtil;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 public class TCWorkerCommManagerTest extends TCTestCase {
@@ -387,6 +395,102 @@ public class TCWorkerCommManagerTest extends TCTestCase {
     listener.stop(5000);
   }
 
+  public void testMoveConnectionKeepsTrafficInOrder() throws Exception {
+    final int pings = 1000;
+    CommunicationsManager serverComms = new CommunicationsManagerImpl("Server-MoveCommsMgr", new NullMessageMonitor(),
+                                                                      new TCMessageRouterImpl(),
+                                                                      new PlainNetworkStackHarnessFactory(),
+                                                                      new NullConnectionPolicy(), 2,
+                                                                      new DisabledHealthCheckerConfigImpl(),
+                                                                      new ServerID(),
+                                                                      new TransportHandshakeErrorNullHandler(),
+                                                                      Collections.EMPTY_MAP, Collections.EMPTY_MAP,
+                                                                      null);
+    serverComms.addClassMapping(TCMessageType.PING_MESSAGE, PingMessage.class);
+    ((CommunicationsManagerImpl) serverComms).getMessageRouter().routeMessageType(TCMessageType.PING_MESSAGE,
+                                                                                  new TCMessageSink() {
+      @Override
+      public void putMessage(TCMessage message) throws UnsupportedMessageTypeException {
+        PingMessage ping = (PingMessage) message;
+        try {
+          ping.hydrate();
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+        ping.createResponse().send();
+      }
+    });
+    NetworkListener listener = serverComms.createListener(new NullSessionManager(), new TCSocketAddress(0), true,
+                                                          new DefaultConnectionIdFactory());
+    listener.start(Collections.EMPTY_SET);
+
+    CommunicationsManager clientComms = new CommunicationsManagerImpl("Client-MoveCommsMgr", new NullMessageMonitor(),
+                                                                      new PlainNetworkStackHarnessFactory(),
+                                                                      new NullConnectionPolicy());
+    final List<Long> received = Collections.synchronizedList(new ArrayList<Long>());
+    clientComms.addClassMapping(TCMessageType.PING_MESSAGE, PingMessage.class);
+    ((CommunicationsManagerImpl) clientComms).getMessageRouter().routeMessageType(TCMessageType.PING_MESSAGE,
+                                                                                  new TCMessageSink() {
+      @Override
+      public void putMessage(TCMessage message) throws UnsupportedMessageTypeException {
+        PingMessage pong = (PingMessage) message;
+        try {
+          pong.hydrate();
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+        received.add(pong.getSequence());
+      }
+    });
+    int port = listener.getBindPort();
+    ClientMessageChannel channel = clientComms
+        .createClientChannel(new NullSessionManager(), 0, TCSocketAddress.LOOPBACK_IP, port, 5000,
+                             new ConnectionAddressProvider(new ConnectionInfo[] { new ConnectionInfo(
+                                 TCSocketAddress.LOOPBACK_IP, port) }));
+    channel.open();
+    waitForConnected(channel);
+    waitForTotalWeights(serverComms, 2, 1);
+
+    TCCommImpl comm = (TCCommImpl) serverComms.getConnectionManager().getTcComm();
+    final int from = comm.getWeightForWorkerComm(0) == 1 ? 0 : 1;
+    final CoreNIOServices source = comm.getWorkerComm(from);
+    final CoreNIOServices target = comm.getWorkerComm(1 - from);
+    final TCConnectionImpl connection = source.getManagedConnections().get(0);
+    final long targetReadBefore = target.getReaderComm().getTotalBytesRead();
+
+    for (int i = 0; i < pings; i++) {
+      if (i == pings / 2) {
+        // moved while earlier pings and their replies are still in flight
+        assertTrue(source.moveConnection(connection, target));
+      }
+      PingMessage ping = (PingMessage) channel.createMessage(TCMessageType.PING_MESSAGE);
+      ping.initialize(i);
+      ping.send();
+    }
+    CallableWaiter.waitOnCallable(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return received.size() == pings;
+      }
+    });
+    for (int i = 0; i < pings; i++) {
+      assertEquals(Long.valueOf(i), received.get(i));
+    }
+
+    assertTrue(source.getManagedConnections().isEmpty());
+    assertEquals(Collections.singletonList(connection), target.getManagedConnections());
+    assertEquals(0, comm.getWeightForWorkerComm(from));
+    assertEquals(1, comm.getWeightForWorkerComm(1 - from));
+    assertTrue(target.getReaderComm().getTotalBytesRead() > targetReadBefore);
+    // the connection no longer belongs to the worker it came from
+    assertFalse(source.moveConnection(connection, target));
+
+    channel.close();
+    clientComms.shutdown();
+    listener.stop(5000);
+    serverComms.shutdown();
+  }
+
   private static void waitForConnected(final ClientMessageChannel... channels) throws Exception {
     CallableWaiter.waitOnCallable(new Callable<Boolean>() {
       @Override
@@ -439,6 +543,17 @@ public class TCWorkerCommManagerTest extends TCTestCase {
     });
   }
 
+  public void testSelectConnectionToMove() {
+    // close enough already
+    assertEquals(-1, TCWorkerCommManager.selectConnectionToMove(new long[] { 100, 50 }, 150, 120));
+    assertEquals(-1, TCWorkerCommManager.selectConnectionToMove(new long[0], 0, 0));
+    // a single hot connection can only be moved around, not split
+    assertEquals(-1, TCWorkerCommManager.selectConnectionToMove(new long[] { 1000 }, 1000, 0));
+    // the move that leaves both sides closest to even wins
+    assertEquals(2, TCWorkerCommManager.selectConnectionToMove(new long[] { 600, 50, 300, 0 }, 950, 350));
+    assertEquals(1, TCWorkerCommManager.selectConnectionToMove(new long[] { 900, 400, 10 }, 1310, 100));
+  }
+
   private static void waitForRead(final CoreNIOServices commThread) throws Exception {
     CallableWaiter.waitOnCallable(new Callable<Boolean>() {
       @Override
@@ -0,0 +1,167 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.test.TCTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class WireFrameCodecTest extends TCTestCase {
+
+  private static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+  public void testSmallFramesAreNotCompressed() throws Exception {
+    WireFrameCodec codec = new WireFrameCodec(true, 4096, MAX_FRAME_SIZE);
+    byte[] message = repeating(4095);
+    TCByteBuffer[] frame = codec.encode(split(message));
+
+    assertEquals(WireFrameCodec.RAW, frame[0].getNioBuffer().get(0));
+    assertEquals(message.length + WireFrameCodec.RAW_HEADER, codec.getWireBytesOut());
+    assertEquals(message.length, codec.getRawBytesOut());
+  }
+
+  public void testRoundTripInSmallReads() throws Exception {
+    WireFrameCodec sender = new WireFrameCodec(true, 4096, MAX_FRAME_SIZE);
+    byte[][] messages = new byte[][] { repeating(10), repeating(100000), random(20000), repeating(4096) };
+
+    ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    for (byte[] message : messages) {
+      for (TCByteBuffer buffer : sender.encode(split(message))) {
+        ByteBuffer nio = buffer.getNioBuffer().duplicate();
+        byte[] bytes = new byte[nio.remaining()];
+        nio.get(bytes);
+        wire.write(bytes);
+      }
+    }
+    assertTrue(sender.getWireBytesOut() < sender.getRawBytesOut());
+    assertEquals(wire.size(), sender.getWireBytesOut());
+
+    WireFrameCodec receiver = new WireFrameCodec(true, 4096, MAX_FRAME_SIZE);
+    List<byte[]> bodies = new ArrayList<byte[]>();
+    ByteBuffer src = ByteBuffer.wrap(wire.toByteArray());
+    while (src.hasRemaining()) {
+      ByteBuffer dst = receiver.inputBuffer();
+      int n = Math.min(Math.min(dst.remaining(), src.remaining()), 1000);
+      ByteBuffer chunk = src.duplicate();
+      chunk.limit(chunk.position() + n);
+      dst.put(chunk);
+      src.position(src.position() + n);
+
+      ByteBuffer body;
+      while ((body = receiver.nextFrame()) != null) {
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        bodies.add(bytes);
+      }
+    }
+
+    assertEquals(messages.length, bodies.size());
+    for (int i = 0; i < messages.length; i++) {
+      assertTrue(Arrays.equals(messages[i], bodies.get(i)));
+    }
+    assertEquals(sender.getRawBytesOut(), receiver.getRawBytesIn());
+    assertEquals(sender.getWireBytesOut(), receiver.getWireBytesIn());
+  }
+
+  public void testUnknownFrameType() throws Exception {
+    WireFrameCodec codec = new WireFrameCodec(false, 0, MAX_FRAME_SIZE);
+    codec.inputBuffer().put((byte) 7).putInt(1).put((byte) 0);
+    try {
+      codec.nextFrame();
+      fail();
+    } catch (StreamCorruptedException e) {
+      // expected
+    }
+  }
+
+  public void testOversizedFrameLength() throws Exception {
+    WireFrameCodec codec = new WireFrameCodec(false, 0, MAX_FRAME_SIZE);
+    codec.inputBuffer().put(WireFrameCodec.RAW).putInt(MAX_FRAME_SIZE + 1);
+    assertCorrupt(codec);
+
+    // would overflow the header plus body length
+    codec = new WireFrameCodec(false, 0, MAX_FRAME_SIZE);
+    codec.inputBuffer().put(WireFrameCodec.DEFLATED).putInt(Integer.MAX_VALUE).putInt(10);
+    assertCorrupt(codec);
+  }
+
+  public void testOversizedInflatedLength() throws Exception {
+    WireFrameCodec codec = new WireFrameCodec(false, 0, MAX_FRAME_SIZE);
+    codec.inputBuffer().put(WireFrameCodec.DEFLATED).putInt(1).putInt(Integer.MAX_VALUE).put((byte) 0);
+    assertCorrupt(codec);
+  }
+
+  public void testFrameOfMaximumSizeIsAccepted() throws Exception {
+    WireFrameCodec sender = new WireFrameCodec(true, 4096, MAX_FRAME_SIZE);
+    WireFrameCodec receiver = new WireFrameCodec(true, 4096, MAX_FRAME_SIZE);
+    byte[] message = repeating(MAX_FRAME_SIZE);
+    for (TCByteBuffer buffer : sender.encode(split(message))) {
+      ByteBuffer src = buffer.getNioBuffer().duplicate();
+      while (src.hasRemaining()) {
+        ByteBuffer dst = receiver.inputBuffer();
+        ByteBuffer chunk = src.duplicate();
+        chunk.limit(chunk.position() + Math.min(dst.remaining(), src.remaining()));
+        src.position(chunk.limit());
+        dst.put(chunk);
+        ByteBuffer body = receiver.nextFrame();
+        if (body != null) {
+          byte[] bytes = new byte[body.remaining()];
+          body.get(bytes);
+          assertTrue(Arrays.equals(message, bytes));
+        }
+      }
+    }
+    assertEquals(MAX_FRAME_SIZE, receiver.getRawBytesIn());
+  }
+
+  private static void assertCorrupt(WireFrameCodec codec) {
+    try {
+      codec.nextFrame();
+      fail();
+    } catch (StreamCorruptedException e) {
+      // expected
+    }
+  }
+
+  private static TCByteBuffer[] split(byte[] message) {
+    int half = message.length / 2;
+    return new TCByteBuffer[] { TCByteBufferFactory.wrap(Arrays.copyOfRange(message, 0, half)),
+        TCByteBufferFactory.wrap(Arrays.copyOfRange(message, half, message.length)) };
+  }
+
+  private static byte[] repeating(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i % 7);
+    }
+    return data;
+  }
+
+  private static byte[] random(int length) {
+    byte[] data = new byte[length];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+}
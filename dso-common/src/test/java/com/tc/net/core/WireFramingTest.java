@@ -0,0 +1,192 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.net.TCSocketAddress;
+import com.tc.net.protocol.PlainNetworkStackHarnessFactory;
+import com.tc.net.protocol.tcm.ClientMessageChannel;
+import com.tc.net.protocol.tcm.CommunicationsManager;
+import com.tc.net.protocol.tcm.CommunicationsManagerImpl;
+import com.tc.net.protocol.tcm.NetworkListener;
+import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessage;
+import com.tc.net.protocol.tcm.TCMessageRouterImpl;
+import com.tc.net.protocol.tcm.TCMessageSink;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.net.protocol.tcm.UnsupportedMessageTypeException;
+import com.tc.net.protocol.tcm.msgs.PingMessage;
+import com.tc.net.protocol.transport.DefaultConnectionIdFactory;
+import com.tc.net.protocol.transport.DisabledHealthCheckerConfigImpl;
+import com.tc.net.protocol.transport.NullConnectionPolicy;
+import com.tc.object.session.NullSessionManager;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.test.TCTestCase;
+import com.tc.util.CallableWaiter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the transport handshake over real connections, with a client that asks for wire frames and with one that
+ * doesn't, and checks that messages make it back and forth either way.
+ */
+public class WireFramingTest extends TCTestCase {
+  private static final int     PINGS    = 500;
+
+  private CommunicationsManager serverComms;
+  private NetworkListener       listener;
+  private CommunicationsManager clientComms;
+  private ClientMessageChannel  channel;
+  private final List<Long>      received = Collections.synchronizedList(new ArrayList<Long>());
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    serverComms = new CommunicationsManagerImpl("Server-FramingCommsMgr", new NullMessageMonitor(),
+                                                new TCMessageRouterImpl(), new PlainNetworkStackHarnessFactory(),
+                                                new NullConnectionPolicy(), new DisabledHealthCheckerConfigImpl(),
+                                                Collections.EMPTY_MAP, Collections.EMPTY_MAP);
+    serverComms.addClassMapping(TCMessageType.PING_MESSAGE, PingMessage.class);
+    ((CommunicationsManagerImpl) serverComms).getMessageRouter().routeMessageType(TCMessageType.PING_MESSAGE,
+                                                                                  new TCMessageSink() {
+      @Override
+      public void putMessage(TCMessage message) throws UnsupportedMessageTypeException {
+        PingMessage ping = (PingMessage) message;
+        try {
+          ping.hydrate();
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+        ping.createResponse().send();
+      }
+    });
+    listener = serverComms.createListener(new NullSessionManager(), new TCSocketAddress(0), true,
+                                          new DefaultConnectionIdFactory());
+    listener.start(Collections.EMPTY_SET);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (channel != null) {
+      channel.close();
+    }
+    if (clientComms != null) {
+      clientComms.shutdown();
+    }
+    listener.stop(5000);
+    serverComms.shutdown();
+    super.tearDown();
+  }
+
+  public void testFramedRoundTrip() throws Exception {
+    openClient(true);
+    pingPong();
+
+    final WireFrameCodec client = onlyConnection(clientComms).getFrameCodec();
+    final WireFrameCodec server = onlyConnection(serverComms).getFrameCodec();
+    assertNotNull(client);
+    assertNotNull(server);
+    // everything after the handshake was framed by one end and taken apart by the other
+    CallableWaiter.waitOnCallable(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return client.getWireBytesOut() == server.getWireBytesIn() && server.getWireBytesOut() == client.getWireBytesIn();
+      }
+    });
+    assertEquals(client.getRawBytesOut(), server.getRawBytesIn());
+    assertEquals(server.getRawBytesOut(), client.getRawBytesIn());
+    assertTrue(client.getRawBytesOut() > 0);
+    assertTrue(server.getRawBytesOut() > 0);
+
+    Map<String, Long> stats = serverComms.getConnectionManager().getConnectionStats();
+    assertEquals(Long.valueOf(1), stats.get("framedConnections"));
+    assertEquals(Long.valueOf(server.getRawBytesIn()), stats.get("framedRawBytesIn"));
+    assertEquals(Long.valueOf(server.getWireBytesOut()), stats.get("framedWireBytesOut"));
+  }
+
+  public void testPeerWithoutFraming() throws Exception {
+    openClient(false);
+    pingPong();
+
+    assertNull(onlyConnection(clientComms).getFrameCodec());
+    assertNull(onlyConnection(serverComms).getFrameCodec());
+    Map<String, Long> stats = serverComms.getConnectionManager().getConnectionStats();
+    assertEquals(Long.valueOf(0), stats.get("framedConnections"));
+    assertEquals(Long.valueOf(0), stats.get("framedRawBytesIn"));
+  }
+
+  private void openClient(final boolean framing) throws Exception {
+    // the client asks for frames if compression is enabled when its transport is created
+    TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.NET_CORE_COMPRESSION_ENABLED,
+                                                 Boolean.toString(framing));
+    try {
+      clientComms = new CommunicationsManagerImpl("Client-FramingCommsMgr", new NullMessageMonitor(),
+                                                  new TCMessageRouterImpl(), new PlainNetworkStackHarnessFactory(),
+                                                  new NullConnectionPolicy(), new DisabledHealthCheckerConfigImpl(),
+                                                  Collections.EMPTY_MAP, Collections.EMPTY_MAP);
+      clientComms.addClassMapping(TCMessageType.PING_MESSAGE, PingMessage.class);
+      ((CommunicationsManagerImpl) clientComms).getMessageRouter().routeMessageType(TCMessageType.PING_MESSAGE,
+                                                                                    new TCMessageSink() {
+        @Override
+        public void putMessage(TCMessage message) throws UnsupportedMessageTypeException {
+          PingMessage pong = (PingMessage) message;
+          try {
+            pong.hydrate();
+          } catch (Exception e) {
+            throw new AssertionError(e);
+          }
+          received.add(pong.getSequence());
+        }
+      });
+      final int port = listener.getBindPort();
+      channel = clientComms.createClientChannel(new NullSessionManager(), 0, TCSocketAddress.LOOPBACK_IP, port, 5000,
+                                                new ConnectionAddressProvider(new ConnectionInfo[] { new ConnectionInfo(
+                                                    TCSocketAddress.LOOPBACK_IP, port) }));
+      channel.open();
+    } finally {
+      TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.NET_CORE_COMPRESSION_ENABLED, "false");
+    }
+  }
+
+  private void pingPong() throws Exception {
+    for (int i = 0; i < PINGS; i++) {
+      PingMessage ping = (PingMessage) channel.createMessage(TCMessageType.PING_MESSAGE);
+      ping.initialize(i);
+      ping.send();
+    }
+    CallableWaiter.waitOnCallable(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return received.size() == PINGS;
+      }
+    });
+    // a single connection each way, so the replies come back in the order the pings went out
+    for (int i = 0; i < PINGS; i++) {
+      assertEquals(Long.valueOf(i), received.get(i));
+    }
+  }
+
+  private static TCConnectionImpl onlyConnection(final CommunicationsManager comms) {
+    TCConnection[] connections = comms.getConnectionManager().getAllConnections();
+    assertEquals(1, connections.length);
+    return (TCConnectionImpl) connections[0];
+  }
+}
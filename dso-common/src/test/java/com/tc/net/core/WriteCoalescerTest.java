@@ -0,0 +1,76 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class WriteCoalescerTest extends TCTestCase {
+
+  private static final long US = TimeUnit.MICROSECONDS.toNanos(1);
+
+  public void testNoHoldAtLowRate() {
+    WriteCoalescer coalescer = new WriteCoalescer(100);
+    long now = TimeUnit.SECONDS.toNanos(10);
+    for (int i = 0; i < 20; i++) {
+      now += TimeUnit.MILLISECONDS.toNanos(5);
+      coalescer.messageQueued(now, 100);
+      assertFalse(coalescer.hold(now + US, 1024, 100));
+      coalescer.drained(now + US);
+    }
+    assertEquals(20, coalescer.getBatchSizes().getCount());
+    assertEquals(0, coalescer.getAddedDelays().getMax());
+  }
+
+  public void testHoldsWithinBudgetAtHighRate() {
+    WriteCoalescer coalescer = new WriteCoalescer(100);
+    long now = TimeUnit.SECONDS.toNanos(10);
+    for (int i = 0; i < 200; i++) {
+      now += 2 * US;
+      coalescer.messageQueued(now, 100);
+    }
+    coalescer.drained(now);
+
+    long first = now + 2 * US;
+    coalescer.messageQueued(first, 100);
+    assertTrue(coalescer.hold(first + 10 * US, 1024 * 1024, 100));
+    assertEquals(90 * US, coalescer.holdRemaining(first + 10 * US));
+    coalescer.messageQueued(first + 20 * US, 100);
+    assertTrue(coalescer.hold(first + 50 * US, 1024 * 1024, 100));
+    assertEquals(50 * US, coalescer.holdRemaining(first + 50 * US));
+    assertEquals(0, coalescer.holdRemaining(first + 150 * US));
+    assertFalse(coalescer.hold(first + 100 * US, 1024 * 1024, 100));
+    coalescer.drained(first + 100 * US);
+
+    assertEquals(2, coalescer.getBatchSizes().getCount());
+    assertEquals(101.0, coalescer.getBatchSizes().getMean(), 0.001);
+    assertEquals(90, coalescer.getAddedDelays().getMax());
+  }
+
+  public void testFullBatchIsNotHeld() {
+    WriteCoalescer coalescer = new WriteCoalescer(1000);
+    long now = TimeUnit.SECONDS.toNanos(10);
+    for (int i = 0; i < 100; i++) {
+      now += US;
+      coalescer.messageQueued(now, 100);
+    }
+    assertFalse(coalescer.hold(now, 1024 * 1024, 100));
+    assertFalse(coalescer.hold(now, 5000, 1000));
+    assertTrue(coalescer.hold(now, 1024 * 1024, 1000));
+  }
+}
@@ -0,0 +1,57 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.delivery;
+
+import com.tc.test.TCTestCase;
+
+public class AdaptiveSendWindowTest extends TCTestCase {
+
+  public void testBacksOffWhenAcksAreDelayedAndRecovers() {
+    AdaptiveSendWindow window = new AdaptiveSendWindow(16, 256);
+    assertEquals(256, window.get());
+
+    for (int i = 0; i < 50; i++) {
+      window.acked(100000);
+    }
+    assertEquals(256, window.get());
+
+    for (int i = 0; i < 200; i++) {
+      window.acked(1000000);
+    }
+    assertEquals(17, window.get());
+
+    for (int i = 0; i < 300; i++) {
+      window.acked(100000);
+    }
+    assertTrue(window.get() > 200);
+  }
+
+  public void testNeverBelowDelayedAcksAndRelearnsBaseRtt() {
+    AdaptiveSendWindow window = new AdaptiveSendWindow(16, 32);
+    window.acked(1000);
+    for (int i = 0; i < 200; i++) {
+      window.acked(1000000);
+    }
+    assertEquals(17, window.get());
+
+    // the slower path becomes the new normal once a whole epoch has gone by without faster acks
+    for (int i = 0; i < 600; i++) {
+      window.acked(1000000);
+    }
+    assertEquals(32, window.get());
+  }
+}
@@ -0,0 +1,63 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.delivery;
+
+import com.tc.test.TCTestCase;
+
+public class OutstandingMessagesTest extends TCTestCase {
+
+  public void testWrapsAroundWithoutGrowing() {
+    OutstandingMessages outstanding = new OutstandingMessages(32);
+    assertEquals(32, outstanding.capacity());
+
+    long next = 0;
+    long first = 0;
+    for (int round = 0; round < 10; round++) {
+      while (outstanding.size() < 32) {
+        outstanding.add(new TestProtocolMessage(null, next, -1), 1000 + next);
+        next++;
+      }
+      for (int i = 0; i < 20; i++) {
+        assertEquals(1000 + first, outstanding.firstSentAt());
+        assertEquals(first++, outstanding.removeFirst().getSent());
+      }
+    }
+    assertEquals(32, outstanding.capacity());
+    assertEquals(12, outstanding.size());
+    for (int i = 0; i < outstanding.size(); i++) {
+      assertEquals(first + i, outstanding.get(i).getSent());
+    }
+
+    outstanding.markResent();
+    assertEquals(0, outstanding.firstSentAt());
+  }
+
+  public void testUnboundedWindowGrows() {
+    OutstandingMessages outstanding = new OutstandingMessages(0);
+    outstanding.add(new TestProtocolMessage(null, 0, -1), 1);
+    outstanding.removeFirst();
+    int initial = outstanding.capacity();
+    for (int i = 0; i < initial * 3; i++) {
+      outstanding.add(new TestProtocolMessage(null, i, -1), 1);
+    }
+    assertTrue(outstanding.capacity() >= initial * 3);
+    for (int i = 0; i < initial * 3; i++) {
+      assertEquals(i, outstanding.removeFirst().getSent());
+    }
+    assertTrue(outstanding.isEmpty());
+  }
+}
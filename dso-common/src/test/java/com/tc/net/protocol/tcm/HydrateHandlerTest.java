@@ -18,6 +18,7 @@ package com.tc.net.protocol.tcm;
 
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
+import com.tc.lang.Recyclable;
 import com.tc.test.TCTestCase;
 
 import static org.mockito.Matchers.any;
@@ -26,6 +27,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 public class HydrateHandlerTest extends TCTestCase {
 
@@ -44,4 +46,16 @@ public class HydrateHandlerTest extends TCTestCase {
     verify(message).hydrate();
     verify(sink, never()).add(any(EventContext.class));
   }
+
+  public void testFailedMessageIsRecycled() throws Exception {
+    HydrateHandler handler = new HydrateHandler();
+
+    MessageChannel channel = mock(MessageChannel.class);
+    TCMessage message = mock(TCMessage.class, withSettings().extraInterfaces(Recyclable.class));
+    when(message.getChannel()).thenReturn(channel);
+    doThrow(new RuntimeException("bummer")).when(message).hydrate();
+
+    handler.handleEvent(new HydrateContext(message, mock(Sink.class)));
+    verify((Recyclable) message).recycle();
+  }
 }
@@ -0,0 +1,90 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.tcm;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tc.async.api.EventContext;
+import com.tc.async.api.EventHandler;
+import com.tc.lang.Recyclable;
+import com.tc.test.TCTestCase;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+public class RecyclingEventHandlerTest extends TCTestCase {
+
+  public void testRecyclesAfterHandling() throws Exception {
+    EventHandler delegate = mock(EventHandler.class);
+    RecyclingEventHandler handler = new RecyclingEventHandler(delegate);
+    TCMessage message = recyclableMessage();
+
+    handler.handleEvent(message);
+    verify(delegate).handleEvent(message);
+    verify((Recyclable) message).recycle();
+    assertEquals(1, handler.getRecycledCount());
+
+    // contexts that are not messages pass straight through
+    handler.handleEvent(mock(EventContext.class));
+    assertEquals(1, handler.getRecycledCount());
+  }
+
+  public void testRecyclesWhenHandlerFails() throws Exception {
+    EventHandler delegate = mock(EventHandler.class);
+    TCMessage message = recyclableMessage();
+    doThrow(new RuntimeException("bummer")).when(delegate).handleEvent(message);
+
+    try {
+      new RecyclingEventHandler(delegate).handleEvent(message);
+      fail();
+    } catch (RuntimeException e) {
+      // expected
+    }
+    verify((Recyclable) message).recycle();
+  }
+
+  public void testRetainedMessageIsNotRecycled() throws Exception {
+    final TCMessage kept = recyclableMessage();
+    TCMessage other = recyclableMessage();
+    EventHandler delegate = mock(EventHandler.class);
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        RecyclingEventHandler.retain(kept);
+        return null;
+      }
+    }).when(delegate).handleEvent(kept);
+    RecyclingEventHandler handler = new RecyclingEventHandler(delegate);
+
+    handler.handleEvents(Arrays.asList(kept, other));
+    verify((Recyclable) kept, never()).recycle();
+    verify((Recyclable) other).recycle();
+    assertEquals(1, handler.getRetainedCount());
+    assertEquals(1, handler.getRecycledCount());
+  }
+
+  private static TCMessage recyclableMessage() {
+    return mock(TCMessage.class, withSettings().extraInterfaces(Recyclable.class));
+  }
+}
@@ -0,0 +1,96 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.tcm;
+
+import org.mockito.ArgumentCaptor;
+
+import com.tc.async.api.EventContext;
+import com.tc.async.api.Sink;
+import com.tc.test.TCTestCase;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TCMessageSinkToSedaSinkTest extends TCTestCase {
+
+  private final Sink           destSink    = mock(Sink.class);
+  private final Sink           hydrateSink = mock(Sink.class);
+  private final MessageChannel channel     = mock(MessageChannel.class);
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    when(channel.getAttachment(anyString())).thenReturn(new AtomicInteger());
+  }
+
+  public void testAllQueuedWhenDisabled() throws Exception {
+    TCMessage small = message(10);
+    new TCMessageSinkToSedaSink(destSink, hydrateSink, 0).putMessage(small);
+    verify(hydrateSink).add(any(EventContext.class));
+    verify(small, never()).hydrate();
+  }
+
+  public void testSmallMessageHydratedInline() throws Exception {
+    TCMessage small = message(10);
+    new TCMessageSinkToSedaSink(destSink, hydrateSink, 1024).putMessage(small);
+    verify(small).hydrate();
+    verify(destSink).add(small);
+    verify(hydrateSink, never()).add(any(EventContext.class));
+  }
+
+  public void testSmallMessageWaitsBehindQueuedOnes() throws Exception {
+    TCMessageSinkToSedaSink sink = new TCMessageSinkToSedaSink(destSink, hydrateSink, 1024);
+    TCMessage large = message(4096);
+    TCMessage small = message(10);
+
+    sink.putMessage(large);
+    sink.putMessage(small);
+    verify(small, never()).hydrate();
+
+    ArgumentCaptor<EventContext> queued = ArgumentCaptor.forClass(EventContext.class);
+    verify(hydrateSink, times(2)).add(queued.capture());
+    List<EventContext> contexts = queued.getAllValues();
+    assertSame(large, ((HydrateContext) contexts.get(0)).getMessage());
+    assertSame(small, ((HydrateContext) contexts.get(1)).getMessage());
+
+    HydrateHandler handler = new HydrateHandler();
+    handler.handleEvent(contexts.get(0));
+    handler.handleEvent(contexts.get(1));
+
+    // the channel has caught up, small messages go straight through again
+    TCMessage next = message(10);
+    sink.putMessage(next);
+    verify(next).hydrate();
+    verify(destSink).add(next);
+    verify(hydrateSink, times(2)).add(any(EventContext.class));
+  }
+
+  private TCMessage message(int length) {
+    TCMessage message = mock(TCMessage.class);
+    when(message.getChannel()).thenReturn(channel);
+    when(message.getTotalLength()).thenReturn(length);
+    return message;
+  }
+}
@@ -47,6 +47,7 @@ import com.tc.util.concurrent.ThreadUtil;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 public class ConnectionHealthCheckReverseCallbackTest extends TCTestCase {
@@ -221,6 +222,11 @@ public class ConnectionHealthCheckReverseCallbackTest extends TCTestCase {
       return delegate.getTcComm();
     }
 
+    @Override
+    public Map<String, Long> getConnectionStats() {
+      return delegate.getConnectionStats();
+    }
+
     @Override
     public final void shutdown() {
       delegate.shutdown();
@@ -0,0 +1,70 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.test.TCTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TimerWheelTest extends TCTestCase {
+
+  public void testItemsComeOutWhenDue() {
+    TimerWheel<String> wheel = new TimerWheel<String>(4);
+    wheel.schedule("a", 1);
+    wheel.schedule("b", 3);
+    wheel.schedule("c", 1);
+    assertEquals(3, wheel.size());
+
+    assertEquals(Arrays.asList("a", "c"), wheel.advance());
+    assertEquals(Collections.emptyList(), wheel.advance());
+    assertEquals(Arrays.asList("b"), wheel.advance());
+    assertEquals(0, wheel.size());
+  }
+
+  public void testAtLeastOneTick() {
+    TimerWheel<String> wheel = new TimerWheel<String>(4);
+    wheel.schedule("a", 0);
+    assertEquals(Arrays.asList("a"), wheel.advance());
+  }
+
+  public void testBeyondWheelLength() {
+    TimerWheel<String> wheel = new TimerWheel<String>(3);
+    // a wheel of 4 slots, "far" shares a slot with "near" but is due a full turn later
+    wheel.schedule("near", 2);
+    wheel.schedule("far", 6);
+    assertEquals(Collections.emptyList(), wheel.advance());
+    assertEquals(Arrays.asList("near"), wheel.advance());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Collections.emptyList(), wheel.advance());
+    }
+    assertEquals(1, wheel.size());
+    assertEquals(Arrays.asList("far"), wheel.advance());
+    assertEquals(0, wheel.size());
+  }
+
+  public void testRescheduleFromDueItems() {
+    TimerWheel<String> wheel = new TimerWheel<String>(8);
+    wheel.schedule("a", 1);
+    for (int i = 0; i < 20; i++) {
+      for (String item : wheel.advance()) {
+        wheel.schedule(item, 1);
+      }
+      assertEquals(1, wheel.size());
+    }
+  }
+}
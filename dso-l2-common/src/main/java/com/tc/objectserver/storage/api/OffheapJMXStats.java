@@ -42,6 +42,11 @@ public interface OffheapJMXStats extends OffheapStats, PrettyPrintable {
                                                                 return 0;
                                                               }
 
+                                                              @Override
+                                                              public long getOffheapReclaimedSize() {
+                                                                return 0;
+                                                              }
+
                                                               @Override
                                                               public PrettyPrinter prettyPrint(PrettyPrinter out) {
                                                                 return out;
@@ -36,6 +36,11 @@ public interface OffheapStats extends Serializable {
                                                           return 0;
                                                         }
 
+                                                        @Override
+                                                        public long getOffheapReclaimedSize() {
+                                                          return 0;
+                                                        }
+
                                                       };
 
   long getOffheapMaxSize();
@@ -43,4 +48,9 @@ public interface OffheapStats extends Serializable {
   long getOffheapReservedSize();
 
   long getOffheapUsedSize();
+
+  /**
+   * @return offheap bytes given back by compacting the object storage since the server started
+   */
+  long getOffheapReclaimedSize();
 }
@@ -45,6 +45,8 @@ public interface TCServer {
 
   long getActivateTime();
 
+  Map<String, Long> getStartupTimings();
+
   boolean canShutdown();
 
   void shutdown();
@@ -26,6 +26,8 @@ import com.tc.object.dna.impl.ObjectStringSerializerImpl;
 import com.tc.objectserver.api.ObjectManager;
 import com.tc.objectserver.api.ObjectManagerLookupResults;
 import com.tc.objectserver.core.api.ManagedObject;
+import com.tc.objectserver.core.api.ManagedObjectState;
+import com.tc.objectserver.managedobject.SerializedClusterObjectState;
 import com.tc.util.BitSetObjectIDSet;
 import com.tc.util.ObjectIDSet;
 import com.tc.util.TCCollections;
@@ -35,6 +37,9 @@ import java.util.Collection;
 
 public class ServerMapRequestPrefetchObjectsContext implements ObjectManagerResultsContext {
 
+  // room for the DNA header and array encoding around a serialized value
+  private static final int                            DNA_OVERHEAD = 256;
+
   private final ClientID                              clientid;
   private final ObjectID                              mapid;
   private ObjectManagerLookupResults                  lookedUp;
@@ -97,7 +102,7 @@ public class ServerMapRequestPrefetchObjectsContext implements ObjectManagerResu
       for (ObjectID oid : new ArrayList<ObjectID>(resp.getObjectIDs())) {
         ManagedObject mo = lookedUp.getObjects().get(oid);
         if (mo != null) {
-          TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+          TCByteBufferOutputStream out = newOutputStreamFor(mo);
           mo.toDNA(out, serializer, DNAType.L1_FAULT);
           resp.replace(oid, out);
           count++;
@@ -107,6 +112,19 @@ public class ServerMapRequestPrefetchObjectsContext implements ObjectManagerResu
     return count;
   }
 
+  /**
+   * Values are sized up front so they are copied once into a single buffer rather than spread across a chain of
+   * progressively larger blocks, each of which would be allocated and then filled on the way to the wire.
+   */
+  private static TCByteBufferOutputStream newOutputStreamFor(final ManagedObject mo) {
+    final ManagedObjectState state = mo.getManagedObjectState();
+    if (state instanceof SerializedClusterObjectState) {
+      final int size = ((SerializedClusterObjectState) state).getValueLength() + DNA_OVERHEAD;
+      return new TCByteBufferOutputStream(size, size, false);
+    }
+    return new TCByteBufferOutputStream();
+  }
+
   @Override
   public ObjectIDSet getNewObjectIDs() {
     return TCCollections.EMPTY_OBJECT_ID_SET;
@@ -17,6 +17,7 @@
 package com.tc.objectserver.handler;
 
 import com.tc.async.api.AbstractEventHandler;
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
@@ -53,17 +54,19 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Applies all the changes in a transaction then releases the objects and passes the changes off to be broadcast to the
- * interested client sessions
+ * interested client sessions. When handed a batch, the transactions that are ready to commit are committed together at
+ * the end of it.
  * 
  * @author steve
  */
-public class ApplyTransactionChangeHandler extends AbstractEventHandler {
+public class ApplyTransactionChangeHandler extends AbstractEventHandler implements BatchEventHandler {
 
   private static final int                 LWM_UPDATE_INTERVAL = TCPropertiesImpl.getProperties()
                                                                    .getInt("lwm.update.intervalInMillis", 10000);
@@ -104,11 +107,23 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
 
   @Override
   public void handleEvent(final EventContext context) {
+    apply(context, true);
+  }
+
+  @Override
+  public void handleEvents(final Collection contexts) {
+    for (Iterator i = contexts.iterator(); i.hasNext();) {
+      EventContext context = (EventContext) i.next();
+      apply(context, !i.hasNext());
+    }
+  }
+
+  private void apply(final EventContext context, final boolean lastInBatch) {
 
     begin();
 
     if (context instanceof FlushApplyCommitContext) {
-      commit(((FlushApplyCommitContext) context).getObjectsToRelease(), true);
+      commit(((FlushApplyCommitContext) context).getObjectsToRelease(), true, lastInBatch);
       return;
     }
 
@@ -156,7 +171,7 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
       broadcastChangesSink.add(new BroadcastChangeContext(txn, lowWaterMark, notifiedWaiters, applyInfo));
     }
 
-    commit(atc, applyInfo);
+    commit(atc, applyInfo, lastInBatch);
   }
 
   private void begin() {
@@ -165,24 +180,24 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
     }
   }
 
-  private void commit(ApplyTransactionContext atc, ApplyTransactionInfo applyInfo) {
+  private void commit(ApplyTransactionContext atc, ApplyTransactionInfo applyInfo, boolean lastInBatch) {
     if (atc.needsApply()) {
       commit(applyInfo.getObjectsToRelease(), atc.getTxn().getNewRoots(), atc.getTxn().getServerTransactionID(),
-             applyInfo.isCommitNow());
+             applyInfo.isCommitNow(), lastInBatch);
     } else {
-      commit(applyInfo.getObjectsToRelease(), applyInfo.isCommitNow());
+      commit(applyInfo.getObjectsToRelease(), applyInfo.isCommitNow(), lastInBatch);
     }
   }
 
   private void commit(Collection<ManagedObject> objectsToRelease, Map<String, ObjectID> moreRoots,
-                      ServerTransactionID stxID, boolean done) {
-    if (localCommitContext.get().commit(objectsToRelease, moreRoots, stxID, done)) {
+                      ServerTransactionID stxID, boolean done, boolean lastInBatch) {
+    if (localCommitContext.get().commit(objectsToRelease, moreRoots, stxID, done, lastInBatch)) {
       localCommitContext.set(null);
     }
   }
 
-  private void commit(Collection<ManagedObject> objectsToRelease, boolean done) {
-    if (localCommitContext.get().commit(objectsToRelease, done)) {
+  private void commit(Collection<ManagedObject> objectsToRelease, boolean done, boolean lastInBatch) {
+    if (localCommitContext.get().commit(objectsToRelease, done, lastInBatch)) {
       localCommitContext.set(null);
     }
   }
@@ -203,10 +218,16 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
     private final Map<String, ObjectID>           newRoots         = new HashMap<String, ObjectID>();
     private final Collection<ServerTransactionID> stxIDs           = new HashSet<ServerTransactionID>();
     private final Collection<ManagedObject>       objectsToRelease = new ArrayList<ManagedObject>();
+    private boolean                               due;
 
-    boolean commit(Collection<ManagedObject> moreObjectsToRelease, boolean done) {
+    /**
+     * @param done the objects gathered so far are complete and may be committed
+     * @param lastInBatch nothing else is coming in this batch, so a commit that is due should happen now
+     */
+    boolean commit(Collection<ManagedObject> moreObjectsToRelease, boolean done, boolean lastInBatch) {
       objectsToRelease.addAll(moreObjectsToRelease);
-      if (done) {
+      due |= done;
+      if (due && lastInBatch) {
         transaction.commit();
         transactionManager.commit(objectsToRelease, newRoots, stxIDs);
         return true;
@@ -216,10 +237,10 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
     }
 
     boolean commit(Collection<ManagedObject> objectsToReleaseParam, Map<String, ObjectID> moreRoots,
-                   ServerTransactionID stxID, boolean done) {
+                   ServerTransactionID stxID, boolean done, boolean lastInBatch) {
       stxIDs.add(stxID);
       newRoots.putAll(moreRoots);
-      return commit(objectsToReleaseParam, done);
+      return commit(objectsToReleaseParam, done, lastInBatch);
     }
   }
 }
@@ -20,6 +20,7 @@ import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
+import com.tc.async.api.UnorderedEventHandler;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.ClientID;
@@ -42,7 +43,7 @@ import com.tc.stats.counter.Counter;
 
 import java.util.Collections;
 
-public class ServerMapPrefetchObjectHandler extends AbstractEventHandler {
+public class ServerMapPrefetchObjectHandler extends AbstractEventHandler implements UnorderedEventHandler {
 
   private DSOChannelManager     channelManager;
   private ClientStateManager    clientManager;
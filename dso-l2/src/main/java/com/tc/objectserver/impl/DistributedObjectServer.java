@@ -100,6 +100,7 @@ import com.tc.net.protocol.tcm.ChannelManager;
 import com.tc.net.protocol.tcm.CommunicationsManager;
 import com.tc.net.protocol.tcm.CommunicationsManagerImpl;
 import com.tc.net.protocol.tcm.HydrateHandler;
+import com.tc.net.protocol.tcm.RecyclingEventHandler;
 import com.tc.net.protocol.tcm.MessageMonitor;
 import com.tc.net.protocol.tcm.MessageMonitorImpl;
 import com.tc.net.protocol.tcm.NetworkListener;
@@ -228,6 +229,7 @@ import com.tc.objectserver.metadata.MetaDataManager;
 import com.tc.objectserver.mgmt.ObjectStatsRecorder;
 import com.tc.objectserver.persistence.ClientStatePersistor;
 import com.tc.objectserver.persistence.EvictionTransactionPersistor;
+import com.tc.objectserver.persistence.ObjectStorageCompactor;
 import com.tc.objectserver.persistence.OffheapStatsImpl;
 import com.tc.objectserver.persistence.Persistor;
 import com.tc.objectserver.persistence.StorageDataStatsImpl;
@@ -301,6 +303,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 
@@ -347,6 +350,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
   private Persistor                              persistor;
   private BackupManager                          backupManager;
   private ResourceManager                        resourceManager;
+  private ObjectStorageCompactor                 objectStorageCompactor;
   private ServerTransactionManagerImpl           transactionManager;
 
   private L2Management                           l2Management;
@@ -872,6 +876,10 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     dumpHandler.registerForDump(new CallbackDumpAdapter(resourceManager));
     channelManager.addEventListener(resourceManager);
 
+    this.objectStorageCompactor = new ObjectStorageCompactor(persistor.getManagedObjectPersistor(), resourceManager,
+                                                             persistor.getMonitoredResources());
+    this.objectStorageCompactor.start();
+
     this.serverMapEvictor = new ProgressiveEvictionManager(objectManager, persistor.getMonitoredResources(),
                                                            objectStore, clientObjectReferenceSet,
                                                            serverTransactionFactory, threadGroup, resourceManager,
@@ -903,16 +911,21 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
 
     final ObjectIDSequence objectIDSequence = persistor.getManagedObjectPersistor().getObjectIDSequence();
     final Stage oidRequest = stageManager.createStage(ServerConfigurationContext.OBJECT_ID_BATCH_REQUEST_STAGE,
-                                                      new RequestObjectIDBatchHandler(objectIDSequence), 1,
+                                                      new RecyclingEventHandler(
+                                                          new RequestObjectIDBatchHandler(objectIDSequence)), 1,
                                                       maxStageSize);
     final Stage transactionAck = stageManager.createStage(ServerConfigurationContext.TRANSACTION_ACKNOWLEDGEMENT_STAGE,
-                                                          new TransactionAcknowledgementHandler(), 1, maxStageSize);
+                                                          new RecyclingEventHandler(
+                                                              new TransactionAcknowledgementHandler()), 1,
+                                                          maxStageSize);
     final Stage clientHandshake = stageManager.createStage(ServerConfigurationContext.CLIENT_HANDSHAKE_STAGE,
                                                            createHandShakeHandler(), 1, maxStageSize);
     this.hydrateStage = stageManager.createStage(ServerConfigurationContext.HYDRATE_MESSAGE_SINK, new HydrateHandler(),
                                                  stageWorkerThreadCount, 1, maxStageSize);
     final Stage txnLwmStage = stageManager.createStage(ServerConfigurationContext.TRANSACTION_LOWWATERMARK_STAGE,
-                                                       new TransactionLowWaterMarkHandler(gtxm), 1, maxStageSize);
+                                                       new RecyclingEventHandler(
+                                                           new TransactionLowWaterMarkHandler(gtxm)), 1,
+                                                       maxStageSize);
 
     ClientConnectEventHandler clientConnectEventHandler = new ClientConnectEventHandler();
     final Stage jmxRemoteConnectStage = stageManager.createStage(ServerConfigurationContext.JMXREMOTE_CONNECT_STAGE,
@@ -1425,6 +1438,10 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
       logger.warn(e);
     }
 
+    if (this.objectStorageCompactor != null) {
+      this.objectStorageCompactor.stop();
+    }
+
     try {
       this.persistor.close();
     } catch (final Exception e) {
@@ -1528,7 +1545,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
   public OffheapStats getOffheapStats() {
     Collection<MonitoredResource> list = persistor.getMonitoredResources();
     for (MonitoredResource rsrc : list) {
-      if (rsrc.getType() == MonitoredResource.Type.OFFHEAP) { return new OffheapStatsImpl(rsrc); }
+      if (rsrc.getType() == MonitoredResource.Type.OFFHEAP) { return new OffheapStatsImpl(rsrc, objectStorageCompactor); }
     }
     return null;
   }
@@ -1537,6 +1554,10 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     return new StorageDataStatsImpl(persistor.getMonitoredResources());
   }
 
+  public StageManager getStageManager() {
+    return this.seda.getStageManager();
+  }
+
   public ReconnectConfig getL1ReconnectProperties() {
     return this.l1ReconnectConfig;
   }
@@ -1569,7 +1590,6 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     return new ClientHandshakeHandler(this.configSetupManager.dsoL2Config().serverName());
   }
 
-  // for tests only
   public CommunicationsManager getCommunicationsManager() {
     return communicationsManager;
   }
@@ -1588,6 +1608,11 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     return backupManager;
   }
 
+  public Map<String, Long> getStartupTimings() {
+    if (persistor == null) { return Collections.emptyMap(); }
+    return persistor.getStartupTimings();
+  }
+
   public ResourceManager getResourceManager() {
     return resourceManager;
   }
@@ -0,0 +1,220 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.impl;
+
+import com.tc.async.api.EventContext;
+import com.tc.async.api.Sink;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.objectserver.api.BackupManager;
+import com.tc.objectserver.persistence.restartable.BackupPoint;
+import com.tc.objectserver.persistence.restartable.RestartableStorageManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Takes hot backups of a restartable server. A backup marks the current point of the restart log, records the highest
+ * global transaction id committed up to that point and then streams the log files up to it into the backup directory
+ * on the backup stage, while transactions keep being applied to the live store. The id is -1 if no transaction has
+ * committed since the server started, the backup then holds the state the server recovered. Copying is limited to a
+ * configured rate so that a backup doesn't compete with clients for disk bandwidth.
+ * <p>
+ * A backup directory can be restored by copying its content into the restartable store directory of a stopped server.
+ */
+public class RestartableBackupManager implements BackupManager {
+  private static final TCLogger                   logger             = TCLogging
+                                                                         .getLogger(RestartableBackupManager.class);
+
+  static final String                             MANIFEST           = "backup.properties";
+  static final String                             GLOBAL_TXN_ID      = "globalTransactionID";
+  private static final long                       CHUNK_SIZE         = 1024 * 1024;
+
+  private final RestartableStorageManager         storageManager;
+  private final File                              backupPath;
+  private final Sink                              backupSink;
+  private final long                              maxBytesPerSecond;
+  private final ConcurrentMap<String, BackupStatus> statuses         = new ConcurrentHashMap<String, BackupStatus>();
+  private final Map<String, String>               failureReasons     = new ConcurrentHashMap<String, String>();
+  private final AtomicReference<String>           runningBackup      = new AtomicReference<String>();
+
+  /**
+   * @param maxBytesPerSecond the rate files are copied at, or zero to copy as fast as possible
+   */
+  public RestartableBackupManager(final RestartableStorageManager storageManager, final File backupPath,
+                                  final Sink backupSink, final long maxBytesPerSecond) {
+    this.storageManager = storageManager;
+    this.backupPath = backupPath;
+    this.backupSink = backupSink;
+    this.maxBytesPerSecond = maxBytesPerSecond;
+  }
+
+  @Override
+  public BackupStatus getBackupStatus(final String name) {
+    BackupStatus status = statuses.get(name);
+    if (status != null) { return status; }
+    // completed by an earlier run of this server
+    return new File(new File(backupPath, name), MANIFEST).exists() ? BackupStatus.COMPLETE : BackupStatus.UNKNOWN;
+  }
+
+  @Override
+  public String getBackupFailureReason(final String name) {
+    return failureReasons.get(name);
+  }
+
+  @Override
+  public Map<String, BackupStatus> getBackupStatuses() {
+    return Collections.unmodifiableMap(new HashMap<String, BackupStatus>(statuses));
+  }
+
+  @Override
+  public String getRunningBackup() {
+    return runningBackup.get();
+  }
+
+  @Override
+  public void backup(final String name) throws IOException {
+    final File target = new File(backupPath, name);
+    if (!target.getParentFile().equals(backupPath)) { throw new IOException("Invalid backup name " + name); }
+    if (target.exists()) { throw new IOException("Backup " + name + " already exists at " + target); }
+    if (!runningBackup.compareAndSet(null, name)) { throw new IOException("Backup " + runningBackup.get()
+                                                                          + " is already running"); }
+    statuses.put(name, BackupStatus.INIT);
+    backupSink.add(new BackupContext(name, target));
+  }
+
+  void runBackup(final String name, final File target) {
+    statuses.put(name, BackupStatus.RUNNING);
+    try {
+      if (!target.mkdirs()) { throw new IOException("Unable to create backup directory " + target); }
+      final BackupPoint point = storageManager.beginBackup();
+      final long globalTransactionID = point.getCommittedMark();
+      try {
+        final Throttle throttle = new Throttle(maxBytesPerSecond);
+        long bytes = 0;
+        for (File file : point.getFiles()) {
+          bytes += copy(file, new File(target, file.getName()), throttle);
+        }
+        writeManifest(name, target, globalTransactionID);
+        logger.info("Backup " + name + " up to global transaction id " + globalTransactionID + " copied " + bytes
+                    + " bytes to " + target + " in " + throttle.elapsed() + "ms");
+      } finally {
+        storageManager.endBackup();
+      }
+      statuses.put(name, BackupStatus.COMPLETE);
+    } catch (Exception e) {
+      logger.error("Backup " + name + " failed", e);
+      failureReasons.put(name, String.valueOf(e.getMessage()));
+      statuses.put(name, BackupStatus.FAILED);
+    } finally {
+      runningBackup.set(null);
+    }
+  }
+
+  private static long copy(final File source, final File target, final Throttle throttle) throws IOException,
+      InterruptedException {
+    final FileInputStream in = new FileInputStream(source);
+    try {
+      final FileOutputStream out = new FileOutputStream(target);
+      try {
+        final FileChannel from = in.getChannel();
+        final FileChannel to = out.getChannel();
+        final long size = from.size();
+        long position = 0;
+        while (position < size) {
+          final long copied = from.transferTo(position, Math.min(CHUNK_SIZE, size - position), to);
+          position += copied;
+          throttle.copied(copied);
+        }
+        out.getFD().sync();
+        return size;
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeManifest(final String name, final File target, final long globalTransactionID)
+      throws IOException {
+    final Properties manifest = new Properties();
+    manifest.setProperty("name", name);
+    manifest.setProperty(GLOBAL_TXN_ID, String.valueOf(globalTransactionID));
+    manifest.setProperty("timestamp", String.valueOf(System.currentTimeMillis()));
+    final FileOutputStream out = new FileOutputStream(new File(target, MANIFEST));
+    try {
+      manifest.store(out, "Hot backup of the restartable store");
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Sleeps whenever copying gets ahead of the configured rate.
+   */
+  static class Throttle {
+    private final long maxBytesPerSecond;
+    private final long start = System.currentTimeMillis();
+    private long       bytes;
+
+    Throttle(final long maxBytesPerSecond) {
+      this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    void copied(final long count) throws InterruptedException {
+      bytes += count;
+      if (maxBytesPerSecond <= 0) { return; }
+      final long ahead = bytes * 1000 / maxBytesPerSecond - elapsed();
+      if (ahead > 0) {
+        Thread.sleep(ahead);
+      }
+    }
+
+    long elapsed() {
+      return System.currentTimeMillis() - start;
+    }
+  }
+
+  private class BackupContext implements EventContext, Callable<Void> {
+    private final String name;
+    private final File   target;
+
+    BackupContext(final String name, final File target) {
+      this.name = name;
+      this.target = target;
+    }
+
+    @Override
+    public Void call() {
+      runBackup(name, target);
+      return null;
+    }
+  }
+}
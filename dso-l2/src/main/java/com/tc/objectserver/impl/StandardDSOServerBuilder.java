@@ -68,6 +68,7 @@ import com.tc.objectserver.core.api.DSOGlobalServerStats;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.core.impl.ServerConfigurationContextImpl;
 import com.tc.objectserver.gtx.ServerGlobalTransactionManager;
+import com.tc.objectserver.handler.BackupHandler;
 import com.tc.objectserver.handshakemanager.ServerClientHandshakeManager;
 import com.tc.objectserver.l1.api.ClientStateManager;
 import com.tc.objectserver.locks.LockManager;
@@ -78,7 +79,10 @@ import com.tc.objectserver.persistence.ClusterStatePersistor;
 import com.tc.objectserver.persistence.HeapStorageManagerFactory;
 import com.tc.objectserver.persistence.OffheapStorageManagerFactory;
 import com.tc.objectserver.persistence.Persistor;
+import com.tc.objectserver.persistence.RestartableStorageManagerFactory;
+import com.tc.objectserver.persistence.StorageManagerFactory;
 import com.tc.objectserver.persistence.offheap.DataStorageConfig;
+import com.tc.objectserver.persistence.restartable.RestartableStorageManager;
 import com.tc.objectserver.search.IndexHACoordinator;
 import com.tc.objectserver.search.IndexManager;
 import com.tc.objectserver.search.NullIndexHACoordinator;
@@ -340,17 +344,29 @@ public class StandardDSOServerBuilder implements DSOServerBuilder {
       throw new IOException();
     }
 
-    if (persistent) throw new UnsupportedOperationException("Restartability is not supported in open source servers.");
+    StorageManagerFactory storageManagerFactory;
     if (offHeapConfig.enabled()) {
-      return new Persistor(new OffheapStorageManagerFactory(offHeapConfig));
+      storageManagerFactory = new OffheapStorageManagerFactory(offHeapConfig);
     } else {
-      return new Persistor(HeapStorageManagerFactory.INSTANCE);
+      storageManagerFactory = HeapStorageManagerFactory.INSTANCE;
     }
+    if (persistent) {
+      storageManagerFactory = new RestartableStorageManagerFactory(storageManagerFactory, l2DataPath);
+    }
+    return new Persistor(storageManagerFactory);
   }
 
   @Override
   public BackupManager createBackupManager(Persistor persistor, IndexManager indexManager, File backupPath, StageManager stageManager, boolean restartable, ServerTransactionManager serverTransactionManager) {
-    return NullBackupManager.INSTANCE;
+    if (!restartable || !(persistor.getStorageManager() instanceof RestartableStorageManager)) {
+      return NullBackupManager.INSTANCE;
+    }
+    Sink backupSink = stageManager.createStage(ServerConfigurationContext.BACKUP_STAGE, new BackupHandler(), 1, -1)
+        .getSink();
+    return new RestartableBackupManager((RestartableStorageManager) persistor.getStorageManager(), backupPath,
+                                        backupSink,
+                                        TCPropertiesImpl.getProperties()
+                                            .getLong(TCPropertiesConsts.L2_RESTARTABLE_BACKUP_MAX_BYTES_PER_SECOND));
   }
 
   @Override
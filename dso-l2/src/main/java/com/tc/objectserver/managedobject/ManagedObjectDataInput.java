@@ -0,0 +1,80 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.managedobject;
+
+import com.tc.object.ObjectID;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+
+/**
+ * Reads the layout written by {@link ManagedObjectDataOutput} straight off a byte array.
+ */
+class ManagedObjectDataInput extends DataInputStream implements ObjectInput {
+
+  ManagedObjectDataInput(final byte[] data) {
+    super(new ByteArrayInputStream(data));
+  }
+
+  @Override
+  public Object readObject() throws ClassNotFoundException, IOException {
+    final byte tag = readByte();
+    switch (tag) {
+      case ManagedObjectDataOutput.NULL:
+        return null;
+      case ManagedObjectDataOutput.OBJECT_ID:
+        return new ObjectID(readLong());
+      case ManagedObjectDataOutput.STRING:
+        return new String(readBytes(), ManagedObjectDataOutput.UTF8);
+      case ManagedObjectDataOutput.LONG:
+        return readLong();
+      case ManagedObjectDataOutput.INTEGER:
+        return readInt();
+      case ManagedObjectDataOutput.SHORT:
+        return readShort();
+      case ManagedObjectDataOutput.BYTE:
+        return readByte();
+      case ManagedObjectDataOutput.BOOLEAN:
+        return readBoolean();
+      case ManagedObjectDataOutput.CHARACTER:
+        return readChar();
+      case ManagedObjectDataOutput.DOUBLE:
+        return readDouble();
+      case ManagedObjectDataOutput.FLOAT:
+        return readFloat();
+      case ManagedObjectDataOutput.SERIALIZED:
+        final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes()));
+        try {
+          return ois.readObject();
+        } finally {
+          ois.close();
+        }
+      default:
+        throw new StreamCorruptedException("Unknown object tag " + tag);
+    }
+  }
+
+  private byte[] readBytes() throws IOException {
+    final byte[] bytes = new byte[readInt()];
+    readFully(bytes);
+    return bytes;
+  }
+}
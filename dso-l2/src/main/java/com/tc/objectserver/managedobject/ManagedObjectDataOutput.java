@@ -0,0 +1,136 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.managedobject;
+
+import com.tc.object.ObjectID;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * {@link ObjectOutput} writing the compact binary managed object layout into a reusable in-memory buffer.
+ * <p>
+ * Primitive writes are plain {@link DataOutputStream} encodings. {@link #writeObject(Object)} tags the common literal
+ * types with a single byte and only falls back to java serialization for anything else, so the stream header and
+ * block-data framing of {@link ObjectOutputStream} are gone from the common path.
+ */
+class ManagedObjectDataOutput extends DataOutputStream implements ObjectOutput {
+
+  static final Charset UTF8               = Charset.forName("UTF-8");
+
+  static final byte    NULL               = 0;
+  static final byte    OBJECT_ID          = 1;
+  static final byte    STRING             = 2;
+  static final byte    LONG               = 3;
+  static final byte    INTEGER            = 4;
+  static final byte    SHORT              = 5;
+  static final byte    BYTE               = 6;
+  static final byte    BOOLEAN            = 7;
+  static final byte    CHARACTER          = 8;
+  static final byte    DOUBLE             = 9;
+  static final byte    FLOAT              = 10;
+  static final byte    SERIALIZED         = 11;
+
+  private static final int INITIAL_CAPACITY = 512;
+  // Buffers grown past this by an unusually large object are dropped rather than kept around per thread
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  ManagedObjectDataOutput() {
+    super(new Buffer(INITIAL_CAPACITY));
+  }
+
+  @Override
+  public void writeObject(final Object obj) throws IOException {
+    if (obj == null) {
+      writeByte(NULL);
+    } else if (obj instanceof ObjectID) {
+      writeByte(OBJECT_ID);
+      writeLong(((ObjectID) obj).toLong());
+    } else if (obj instanceof String) {
+      final byte[] bytes = ((String) obj).getBytes(UTF8);
+      writeByte(STRING);
+      writeInt(bytes.length);
+      write(bytes);
+    } else if (obj instanceof Long) {
+      writeByte(LONG);
+      writeLong((Long) obj);
+    } else if (obj instanceof Integer) {
+      writeByte(INTEGER);
+      writeInt((Integer) obj);
+    } else if (obj instanceof Short) {
+      writeByte(SHORT);
+      writeShort((Short) obj);
+    } else if (obj instanceof Byte) {
+      writeByte(BYTE);
+      writeByte((Byte) obj);
+    } else if (obj instanceof Boolean) {
+      writeByte(BOOLEAN);
+      writeBoolean((Boolean) obj);
+    } else if (obj instanceof Character) {
+      writeByte(CHARACTER);
+      writeChar((Character) obj);
+    } else if (obj instanceof Double) {
+      writeByte(DOUBLE);
+      writeDouble((Double) obj);
+    } else if (obj instanceof Float) {
+      writeByte(FLOAT);
+      writeFloat((Float) obj);
+    } else {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      try {
+        oos.writeObject(obj);
+      } finally {
+        oos.close();
+      }
+      writeByte(SERIALIZED);
+      writeInt(bytes.size());
+      bytes.writeTo(this);
+    }
+  }
+
+  byte[] toByteArray() {
+    return ((Buffer) out).toByteArray();
+  }
+
+  /**
+   * Discards the written bytes so the buffer can be used for the next object.
+   */
+  void reset() {
+    final Buffer buffer = (Buffer) out;
+    if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+      out = new Buffer(INITIAL_CAPACITY);
+    } else {
+      buffer.reset();
+    }
+    written = 0;
+  }
+
+  private static final class Buffer extends ByteArrayOutputStream {
+    Buffer(final int size) {
+      super(size);
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+  }
+}
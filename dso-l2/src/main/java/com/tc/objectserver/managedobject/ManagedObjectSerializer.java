@@ -22,11 +22,58 @@ import com.tc.objectserver.core.api.ManagedObject;
 import com.tc.objectserver.core.api.ManagedObjectState;
 import com.tc.objectserver.persistence.ManagedObjectPersistor;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class ManagedObjectSerializer implements Serializer {
+  /**
+   * Leading byte of the compact binary layout. Objects persisted before it existed were written through an
+   * {@link ObjectOutputStream} and start with {@link ObjectStreamConstants#STREAM_MAGIC} instead.
+   */
+  static final byte BINARY_FORMAT_V1 = 1;
+
+  /**
+   * Leading byte of a {@link #BINARY_FORMAT_V1} record whose state has been deflated by {@link #compress(byte[])}. The
+   * header up to and including the state type is kept as is, followed by the inflated length of the rest.
+   */
+  static final byte COMPRESSED_FORMAT_V1 = 2;
+
+  // format byte, version and object id come before the state type
+  private static final int STATE_TYPE_OFFSET = 1 + 8 + 8;
+  private static final int COMPRESSED_HEADER = STATE_TYPE_OFFSET + 1 + 4;
+
+  private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+    @Override
+    protected Deflater initialValue() {
+      return new Deflater(Deflater.BEST_SPEED);
+    }
+  };
+
+  private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+    @Override
+    protected Inflater initialValue() {
+      return new Inflater();
+    }
+  };
+
+  private static final ThreadLocal<ManagedObjectDataOutput> OUTPUT = new ThreadLocal<ManagedObjectDataOutput>() {
+    @Override
+    protected ManagedObjectDataOutput initialValue() {
+      return new ManagedObjectDataOutput();
+    }
+  };
+
   private final ManagedObjectStateSerializer serializer;
   private final ManagedObjectPersistor persistor;
 
@@ -57,6 +104,106 @@ public class ManagedObjectSerializer implements Serializer {
     return rv;
   }
 
+  /**
+   * Serializes the given object in the compact binary layout using a buffer reused across calls on this thread.
+   */
+  public byte[] serialize(final ManagedObject mo) throws IOException {
+    final ManagedObjectDataOutput out = OUTPUT.get();
+    try {
+      out.writeByte(BINARY_FORMAT_V1);
+      serializeTo(mo, out);
+      return out.toByteArray();
+    } finally {
+      out.reset();
+    }
+  }
+
+  /**
+   * Reads an object written by {@link #serialize(ManagedObject)}, or one written through an {@link ObjectOutputStream}
+   * by an older server.
+   */
+  public ManagedObject deserialize(final byte[] data) throws IOException {
+    final ObjectInput in;
+    if (isCompressed(data)) {
+      return deserialize(decompress(data));
+    } else if (isObjectStream(data)) {
+      in = new ObjectInputStream(new ByteArrayInputStream(data));
+    } else {
+      in = new ManagedObjectDataInput(data);
+      final byte format = in.readByte();
+      if (format != BINARY_FORMAT_V1) { throw new StreamCorruptedException("Unknown managed object format " + format); }
+    }
+    return (ManagedObject) deserializeFrom(in);
+  }
+
+  /**
+   * @return the state type recorded in data written by {@link #serialize(ManagedObject)}, or -1 if the data is in the
+   *         older {@link ObjectOutputStream} layout and has to be deserialized to find out
+   */
+  public static byte stateTypeOf(final byte[] data) {
+    if (data.length <= STATE_TYPE_OFFSET) { return -1; }
+    if (data[0] != BINARY_FORMAT_V1 && data[0] != COMPRESSED_FORMAT_V1) { return -1; }
+    return data[STATE_TYPE_OFFSET];
+  }
+
+  public static boolean isCompressed(final byte[] data) {
+    return data.length >= COMPRESSED_HEADER && data[0] == COMPRESSED_FORMAT_V1;
+  }
+
+  /**
+   * Deflates the state of data written by {@link #serialize(ManagedObject)}. The result is read back by
+   * {@link #deserialize(byte[])} like any other record.
+   *
+   * @return the compressed record, or null if the data is not in the binary layout or would shrink by less than an
+   *         eighth
+   */
+  public static byte[] compress(final byte[] data) {
+    if (data.length <= STATE_TYPE_OFFSET || data[0] != BINARY_FORMAT_V1) { return null; }
+    final int limit = data.length - data.length / 8;
+    final byte[] out = new byte[limit];
+    final Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    deflater.setInput(data, STATE_TYPE_OFFSET, data.length - STATE_TYPE_OFFSET);
+    deflater.finish();
+    int length = COMPRESSED_HEADER;
+    while (!deflater.finished()) {
+      if (length >= limit) { return null; }
+      length += deflater.deflate(out, length, limit - length);
+    }
+    System.arraycopy(data, 0, out, 0, STATE_TYPE_OFFSET + 1);
+    out[0] = COMPRESSED_FORMAT_V1;
+    ByteBuffer.wrap(out, STATE_TYPE_OFFSET + 1, 4).putInt(data.length - STATE_TYPE_OFFSET);
+    return Arrays.copyOf(out, length);
+  }
+
+  private static byte[] decompress(final byte[] data) throws IOException {
+    final byte[] out = new byte[STATE_TYPE_OFFSET + ByteBuffer.wrap(data, STATE_TYPE_OFFSET + 1, 4).getInt()];
+    System.arraycopy(data, 0, out, 0, STATE_TYPE_OFFSET);
+    out[0] = BINARY_FORMAT_V1;
+    final Inflater inflater = INFLATER.get();
+    inflater.reset();
+    inflater.setInput(data, COMPRESSED_HEADER, data.length - COMPRESSED_HEADER);
+    try {
+      int length = STATE_TYPE_OFFSET;
+      while (length < out.length && !inflater.finished()) {
+        final int inflated = inflater.inflate(out, length, out.length - length);
+        if (inflated == 0 && inflater.needsInput()) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length != out.length) { throw new StreamCorruptedException("Truncated compressed managed object"); }
+    } catch (DataFormatException e) {
+      throw new StreamCorruptedException("Corrupt compressed managed object: " + e.getMessage());
+    }
+    return out;
+  }
+
+  private static boolean isObjectStream(final byte[] data) {
+    return data.length >= 2 && data[0] == (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8)
+           && data[1] == (byte) ObjectStreamConstants.STREAM_MAGIC;
+  }
+
   @Override
   public byte getSerializerID() {
     return MANAGED_OBJECT;
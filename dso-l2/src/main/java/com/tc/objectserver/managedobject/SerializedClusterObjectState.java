@@ -139,6 +139,13 @@ public class SerializedClusterObjectState extends AbstractManagedObjectState {
     }
   }
 
+  /**
+   * @return the length of the serialized value, or 0 if none has been set
+   */
+  public int getValueLength() {
+    return this.value == null ? 0 : this.value.length;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
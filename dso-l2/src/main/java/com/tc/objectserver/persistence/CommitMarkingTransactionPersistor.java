@@ -0,0 +1,55 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.object.gtx.GlobalTransactionID;
+import com.tc.objectserver.gtx.GlobalTransactionDescriptor;
+import com.tc.objectserver.persistence.restartable.RestartableStorageManager;
+
+import java.util.Collection;
+import java.util.SortedSet;
+
+/**
+ * Marks the storage transaction that commits a global transaction with its id, so that a backup of the restart log
+ * can tell which global transactions it holds.
+ */
+class CommitMarkingTransactionPersistor implements TransactionPersistor {
+  private final TransactionPersistor      delegate;
+  private final RestartableStorageManager storageManager;
+
+  CommitMarkingTransactionPersistor(final TransactionPersistor delegate,
+                                    final RestartableStorageManager storageManager) {
+    this.delegate = delegate;
+    this.storageManager = storageManager;
+  }
+
+  @Override
+  public Collection<GlobalTransactionDescriptor> loadAllGlobalTransactionDescriptors() {
+    return delegate.loadAllGlobalTransactionDescriptors();
+  }
+
+  @Override
+  public void saveGlobalTransactionDescriptor(final GlobalTransactionDescriptor gtx) {
+    delegate.saveGlobalTransactionDescriptor(gtx);
+    storageManager.markCommitted(gtx.getGlobalTransactionID().toLong());
+  }
+
+  @Override
+  public void deleteAllGlobalTransactionDescriptors(final SortedSet<GlobalTransactionID> globalTransactionIDs) {
+    delegate.deleteAllGlobalTransactionDescriptors(globalTransactionIDs);
+  }
+}
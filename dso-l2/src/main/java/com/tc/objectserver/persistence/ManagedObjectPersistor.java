@@ -43,7 +43,7 @@ public class ManagedObjectPersistor  {
 
 
   private final KeyValueStorage<String, ObjectID> rootMap;
-  private final KeyValueStorage<ObjectID, ManagedObject> objectMap;
+  private final ObjectMap objectMap;
   private final ObjectIDSequence objectIDSequence;
 
   private final ObjectIDSetMaintainer oidSetMaintainer;
@@ -51,7 +51,7 @@ public class ManagedObjectPersistor  {
   public ManagedObjectPersistor(StorageManager storageManager, SequenceManager sequenceManager, final ObjectIDSetMaintainer oidSetMaintainer) {
     this.rootMap = storageManager.getKeyValueStorage(ROOT_DB, String.class, ObjectID.class);
     this.oidSetMaintainer = oidSetMaintainer;
-    this.objectMap = new ObjectMap(this, storageManager);
+    this.objectMap = new ObjectMap(this, storageManager, oidSetMaintainer);
     this.objectIDSequence = new ObjectIDSequenceImpl(sequenceManager.getSequence(OBJECT_ID_SEQUENCE));
   }
 
@@ -94,8 +94,9 @@ public class ManagedObjectPersistor  {
   }
 
   public void saveAllObjects(Transaction tx, Collection<ManagedObject> managed) {
+    objectMap.putAll(managed);
     for (ManagedObject managedObject : managed) {
-      saveObject(tx, managedObject);
+      managedObject.setIsDirty(false);
     }
   }
 
@@ -103,12 +104,36 @@ public class ManagedObjectPersistor  {
     objectMap.removeAll(ids);
   }
 
+  /**
+   * Rewrites the stored copies of the given objects in place, see {@link ObjectStorageCompactor}.
+   */
+  public int relocateObjects(Collection<ObjectID> ids) {
+    return objectMap.relocate(ids);
+  }
+
+  /**
+   * @return the leaf objects that have been idle since the previous call
+   */
+  public ObjectIDSet snapshotColdObjectIDs() {
+    return objectMap.coldObjectIDs();
+  }
+
+  /**
+   * Compresses the stored copies of the given leaf objects, see {@link ObjectStorageCompactor}.
+   *
+   * @return the number of bytes saved
+   */
+  public long compressObjects(Collection<ObjectID> ids) {
+    return objectMap.compress(ids);
+  }
+
   public Map<String, ObjectID> loadRootNamesToIDs() {
     return asJdkMap(rootMap);
   }
 
   private <K, V> Map<K, V> asJdkMap(KeyValueStorage<K, V> map) {
-    Map<K, V> m = new HashMap<K, V>();
+    // sized up front, large root maps otherwise rehash several times while being copied
+    Map<K, V> m = new HashMap<K, V>((int) Math.min(Integer.MAX_VALUE, map.size() * 4 / 3 + 1));
     for (K k : map.keySet()) {
       m.put(k, map.get(k));
     }
@@ -29,7 +29,11 @@ import com.tc.util.ExpandingBitSetObjectIDSet;
 import com.tc.util.ObjectIDSet;
 import com.tc.util.TCCollections;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author tim
@@ -39,21 +43,38 @@ public class ObjectIDSetMaintainer implements KeyValueStorageMutationListener<Lo
     BITSET_BASED_SET, EXPANDING_BITSET_BASED_SET
   }
 
+  /**
+   * Which object storage an id lives in, as far as the mutations seen so far tell.
+   */
+  static enum StorageType {
+    LEAF, NODE, UNKNOWN
+  }
+
   private static final TCLogger logger = TCLogging.getLogger(ObjectIDSetMaintainer.class);
 
   private final ObjectIDSet evictableObjectIDSet = new BitSetObjectIDSet();
   private final ObjectIDSet noReferencesObjectIDSet;
   private final ObjectIDSet referencesObjectIDSet = new BitSetObjectIDSet();
 
+  // faults consult the sets on every lookup, so readers share the lock and only storage mutations exclude them
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Lock readLock = lock.readLock();
+  private final Lock writeLock = lock.writeLock();
+
   public ObjectIDSetMaintainer() {
     noReferencesObjectIDSet = create(TCCollections.EMPTY_OBJECT_ID_SET);
     logger.info("Using ObjectIDSetType " + getObjectIDSetType());
   }
 
-  public synchronized ObjectIDSet objectIDSnapshot() {
-    ObjectIDSet oids = create(noReferencesObjectIDSet);
-    oids.addAll(referencesObjectIDSet);
-    return oids;
+  public ObjectIDSet objectIDSnapshot() {
+    readLock.lock();
+    try {
+      ObjectIDSet oids = create(noReferencesObjectIDSet);
+      oids.addAll(referencesObjectIDSet);
+      return oids;
+    } finally {
+      readLock.unlock();
+    }
   }
 
   private static ObjectIDSetType getObjectIDSetType() {
@@ -75,33 +96,100 @@ public class ObjectIDSetMaintainer implements KeyValueStorageMutationListener<Lo
     throw new UnsupportedOperationException("Unsupported ObjectIDSet type " + getObjectIDSetType());
   }
 
-  public synchronized ObjectIDSet evictableObjectIDSetSnapshot() {
-    return new BitSetObjectIDSet(evictableObjectIDSet);
+  /**
+   * @return the ids of the objects without references, which are the ones kept in the leaf object storage
+   */
+  ObjectIDSet noReferencesObjectIDSnapshot() {
+    readLock.lock();
+    try {
+      return create(noReferencesObjectIDSet);
+    } finally {
+      readLock.unlock();
+    }
   }
 
-  public synchronized boolean hasNoReferences(ObjectID id) {
-    return noReferencesObjectIDSet.contains(id);
+  public ObjectIDSet evictableObjectIDSetSnapshot() {
+    readLock.lock();
+    try {
+      return new BitSetObjectIDSet(evictableObjectIDSet);
+    } finally {
+      readLock.unlock();
+    }
   }
 
-  @Override
-  public synchronized void added(Retriever<? extends Long> key, Retriever<? extends byte[]> value, byte metadata) {
-    ObjectID k = new ObjectID(key.retrieve());
-    if (PersistentCollectionsUtil.isEvictableMapType(metadata)) {
-      evictableObjectIDSet.add(k);
+  public boolean hasNoReferences(ObjectID id) {
+    readLock.lock();
+    try {
+      return noReferencesObjectIDSet.contains(id);
+    } finally {
+      readLock.unlock();
     }
-    if (PersistentCollectionsUtil.isNoReferenceObjectType(metadata)) {
-      noReferencesObjectIDSet.add(k);
-    } else {
-      referencesObjectIDSet.add(k);
+  }
+
+  /**
+   * Tells which object storage holds the given id, so that a lookup only has to probe that one.
+   */
+  StorageType storageTypeOf(ObjectID id) {
+    readLock.lock();
+    try {
+      if (noReferencesObjectIDSet.contains(id)) { return StorageType.LEAF; }
+      if (referencesObjectIDSet.contains(id)) { return StorageType.NODE; }
+      return StorageType.UNKNOWN;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Sorts the given ids by {@link #storageTypeOf(ObjectID)}, taking this maintainer's lock once for the whole batch.
+   */
+  public void splitByStorageType(final Collection<ObjectID> ids, final Collection<Long> leaves,
+                                 final Collection<Long> nodes, final Collection<Long> unknown) {
+    readLock.lock();
+    try {
+      for (ObjectID id : ids) {
+        if (noReferencesObjectIDSet.contains(id)) {
+          leaves.add(id.toLong());
+        } else if (referencesObjectIDSet.contains(id)) {
+          nodes.add(id.toLong());
+        } else {
+          unknown.add(id.toLong());
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public void added(Retriever<? extends Long> key, Retriever<? extends byte[]> value, byte metadata) {
+    writeLock.lock();
+    try {
+      ObjectID k = new ObjectID(key.retrieve());
+      if (PersistentCollectionsUtil.isEvictableMapType(metadata)) {
+        evictableObjectIDSet.add(k);
+      }
+      if (PersistentCollectionsUtil.isNoReferenceObjectType(metadata)) {
+        noReferencesObjectIDSet.add(k);
+      } else {
+        referencesObjectIDSet.add(k);
+      }
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
-  public synchronized void removed(Retriever<? extends Long> key) {
-    ObjectID oid = new ObjectID(key.retrieve());
-    evictableObjectIDSet.remove(oid);
-    if (!noReferencesObjectIDSet.remove(oid)) {
-      referencesObjectIDSet.remove(oid);
+  public void removed(Retriever<? extends Long> key) {
+    writeLock.lock();
+    try {
+      ObjectID oid = new ObjectID(key.retrieve());
+      evictableObjectIDSet.remove(oid);
+      if (!noReferencesObjectIDSet.remove(oid)) {
+        referencesObjectIDSet.remove(oid);
+      }
+    } finally {
+      writeLock.unlock();
     }
   }
 }
@@ -27,17 +27,19 @@ import com.tc.objectserver.core.api.ManagedObject;
 import com.tc.objectserver.managedobject.ManagedObjectSerializer;
 import com.tc.objectserver.managedobject.ManagedObjectStateSerializer;
 import com.tc.objectserver.managedobject.SerializedClusterObjectState;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.ObjectIDSet;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author tim
@@ -45,15 +47,30 @@ import java.util.Set;
 class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
   private static final String NODE_OBJECT_DB = "node_object_db";
   private static final String LEAF_OBJECT_DB = "leaf_object_db";
+  private static final int RECENCY_STRIPES = 16;
 
   private final KeyValueStorage<Long, byte[]> nodeObjects;
   private final KeyValueStorage<Long, byte[]> leafObjects;
+  private final StorageManager storageManager;
   private final ManagedObjectSerializer serializer;
+  private final ObjectIDSetMaintainer oidSetMaintainer;
+  // Writes share the read lock, relocation takes the write lock so it never puts back a stale copy of an object
+  private final ReadWriteLock relocationLock = new ReentrantReadWriteLock();
+  private final boolean coldCompression;
+  // striped so that faults on different objects rarely contend
+  private final RecencyStripe[] recency = new RecencyStripe[RECENCY_STRIPES];
 
-  ObjectMap(ManagedObjectPersistor persistor, StorageManager storageManager) {
+  ObjectMap(ManagedObjectPersistor persistor, StorageManager storageManager, ObjectIDSetMaintainer oidSetMaintainer) {
     this.nodeObjects = storageManager.getKeyValueStorage(NODE_OBJECT_DB, Long.class, byte[].class);
     this.leafObjects = storageManager.getKeyValueStorage(LEAF_OBJECT_DB, Long.class, byte[].class);
+    this.storageManager = storageManager;
+    this.oidSetMaintainer = oidSetMaintainer;
     this.serializer = new ManagedObjectSerializer(new ManagedObjectStateSerializer(), persistor);
+    this.coldCompression = TCPropertiesImpl.getProperties()
+        .getBoolean(TCPropertiesConsts.L2_OFFHEAP_COLD_COMPRESSION_ENABLED, false);
+    for (int i = 0; i < RECENCY_STRIPES; i++) {
+      recency[i] = new RecencyStripe();
+    }
   }
 
   public static void addConfigTo(Map<String, KeyValueStorageConfig<?, ?>> configMap, KeyValueStorageMutationListener<Long, byte[]> listener,
@@ -86,26 +103,81 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
 
   @Override
   public void put(final ObjectID key, final ManagedObject value, byte metadata) {
-    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    final byte[] data = serialize(value);
+    relocationLock.readLock().lock();
     try {
-      ObjectOutput oo = new ObjectOutputStream(byteArrayOutputStream);
-      try {
-        serializer.serializeTo(value, oo);
-      } finally {
-        oo.close();
+      if ( isLeaf(value) ) {
+          written(key);
+          leafObjects.put(key.toLong(), data, metadata);
+      } else {
+          nodeObjects.put(key.toLong(), data, metadata);
       }
+    } finally {
+      relocationLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stores all the given objects, keyed by their own ids with their state type as metadata. Everything is serialized
+   * before the first write, and the writes are then issued storage by storage.
+   */
+  void putAll(final Collection<ManagedObject> values) {
+    final List<ManagedObject> leaves = new ArrayList<ManagedObject>();
+    final List<byte[]> leafData = new ArrayList<byte[]>();
+    final List<ManagedObject> nodes = new ArrayList<ManagedObject>(values.size());
+    final List<byte[]> nodeData = new ArrayList<byte[]>(values.size());
+    for (ManagedObject value : values) {
+      if (isLeaf(value)) {
+        leaves.add(value);
+        leafData.add(serialize(value));
+      } else {
+        nodes.add(value);
+        nodeData.add(serialize(value));
+      }
+    }
+    relocationLock.readLock().lock();
+    try {
+      for (ManagedObject leaf : leaves) {
+        written(leaf.getID());
+      }
+      putAll(leafObjects, leaves, leafData);
+      putAll(nodeObjects, nodes, nodeData);
+    } finally {
+      relocationLock.readLock().unlock();
+    }
+  }
+
+  private static void putAll(final KeyValueStorage<Long, byte[]> storage, final List<ManagedObject> values,
+                             final List<byte[]> data) {
+    for (int i = 0; i < values.size(); i++) {
+      final ManagedObject value = values.get(i);
+      storage.put(value.getID().toLong(), data.get(i), value.getManagedObjectState().getType());
+    }
+  }
+
+  private byte[] serialize(final ManagedObject value) {
+    try {
+      return serializer.serialize(value);
     } catch (IOException e) {
       throw new AssertionError(e);
     }
-    if ( value.getManagedObjectState() instanceof SerializedClusterObjectState  ) {
-        leafObjects.put(key.toLong(), byteArrayOutputStream.toByteArray(), metadata);
-    } else {
-        nodeObjects.put(key.toLong(), byteArrayOutputStream.toByteArray(), metadata);
   }
+
+  private static boolean isLeaf(final ManagedObject value) {
+    return value.getManagedObjectState() instanceof SerializedClusterObjectState;
   }
 
   @Override
   public ManagedObject get(final ObjectID key) {
+    final KeyValueStorage<Long, byte[]> storage = storageFor(key);
+    if (storage != null) {
+      final byte[] data = storage.get(key.toLong());
+      if (data != null && storage == leafObjects) {
+        used(key);
+      }
+      return data == null ? null : deserialize(key, data, storage);
+    }
+
     boolean leaf = true;
     byte[] data = leafObjects.get(key.toLong());
     
@@ -116,16 +188,33 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
     if ( data == null ) {
       return null;
     }
+    if (leaf) {
+      used(key);
+    }
+    return deserialize(key, data, leaf ? leafObjects : nodeObjects);
+  }
+
+  /**
+   * @return the storage the {@link ObjectIDSetMaintainer} has seen the object stored in, or null if it hasn't seen it
+   *         and both have to be probed
+   */
+  private KeyValueStorage<Long, byte[]> storageFor(final ObjectID key) {
+    switch (oidSetMaintainer.storageTypeOf(key)) {
+      case LEAF:
+        return leafObjects;
+      case NODE:
+        return nodeObjects;
+      default:
+        return null;
+    }
+  }
+
+  private ManagedObject deserialize(final ObjectID key, final byte[] data, final KeyValueStorage<Long, byte[]> storage) {
     try {
-      ObjectInput oi = new ObjectInputStream(new ByteArrayInputStream(data));
-      return (ManagedObject)serializer.deserializeFrom(oi);
+      return serializer.deserialize(data);
     } catch (ObjectNotFoundException e) {
       // Clean up the backing map if the object winds up missing (see MNK-5031)
-      if ( leaf ) {
-        leafObjects.remove(key.toLong());
-      } else {
-        nodeObjects.remove(key.toLong());
-      }
+      storage.remove(key.toLong());
       return null;
     } catch (IOException e) {
       throw new AssertionError(e);
@@ -134,21 +223,52 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
 
     @Override
     public boolean remove(final ObjectID key) {
-        if ( !leafObjects.remove(key.toLong()) ) {
-            return nodeObjects.remove(key.toLong());
-    }
-        return true;
+        relocationLock.readLock().lock();
+        try {
+            final KeyValueStorage<Long, byte[]> storage = storageFor(key);
+            if (storage != null) {
+                return storage.remove(key.toLong());
+            }
+            if ( !leafObjects.remove(key.toLong()) ) {
+                return nodeObjects.remove(key.toLong());
+            }
+            return true;
+        } finally {
+            relocationLock.readLock().unlock();
+        }
     }
 
+    /**
+     * Removes each object from the storage the {@link ObjectIDSetMaintainer} places it in, and like
+     * {@link #remove(ObjectID)} from both storages if it hasn't seen the object.
+     */
     @Override
     public void removeAll(final Collection<ObjectID> keys) {
-        for (ObjectID key : keys) {
-            remove(key);
+        final List<Long> leaves = new ArrayList<Long>();
+        final List<Long> nodes = new ArrayList<Long>(keys.size());
+        final List<Long> unknown = new ArrayList<Long>();
+        oidSetMaintainer.splitByStorageType(keys, leaves, nodes, unknown);
+        leaves.addAll(unknown);
+        nodes.addAll(unknown);
+        relocationLock.readLock().lock();
+        try {
+            if (!leaves.isEmpty()) {
+                leafObjects.removeAll(leaves);
+            }
+            if (!nodes.isEmpty()) {
+                nodeObjects.removeAll(nodes);
+            }
+        } finally {
+            relocationLock.readLock().unlock();
         }
     }
 
     @Override
     public boolean containsKey(final ObjectID key) {
+        final KeyValueStorage<Long, byte[]> storage = storageFor(key);
+        if (storage != null) {
+            return storage.containsKey(key.toLong());
+        }
         if ( !leafObjects.containsKey(key.toLong()) ) {
             return nodeObjects.containsKey(key.toLong());
     }
@@ -157,7 +277,163 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
 
     @Override
     public void clear() {
-        leafObjects.clear();
-        nodeObjects.clear();
+        relocationLock.readLock().lock();
+        try {
+            leafObjects.clear();
+            nodeObjects.clear();
+        } finally {
+            relocationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the given objects back into the storage they already live in so the allocator can move them into the
+     * free space at the front of the store and release the pages left empty behind them. Objects in the older
+     * serialized layout are rewritten in the current one on the way. Writes to the map wait while a batch is moved.
+     * The batch is written as a single storage transaction, committed before the writes are let through again so
+     * that a restartable store never logs it after a newer copy of one of its objects.
+     *
+     * @return the number of objects rewritten
+     */
+    int relocate(final Collection<ObjectID> keys) {
+        int relocated = 0;
+        relocationLock.writeLock().lock();
+        storageManager.begin();
+        try {
+            for (ObjectID key : keys) {
+                final KeyValueStorage<Long, byte[]> storage = storageFor(key);
+                if (storage == null) {
+                    continue;
+                }
+                final byte[] data = storage.get(key.toLong());
+                if (data == null) {
+                    continue;
+                }
+                final byte type = ManagedObjectSerializer.stateTypeOf(data);
+                if (type >= 0) {
+                    storage.put(key.toLong(), data, type);
+                } else {
+                    final ManagedObject mo = deserialize(key, data, storage);
+                    if (mo == null) {
+                        continue;
+                    }
+                    storage.put(key.toLong(), serialize(mo), mo.getManagedObjectState().getType());
+                }
+                relocated++;
+            }
+        } finally {
+            commitAndUnlock();
+        }
+        return relocated;
+    }
+
+    private RecencyStripe recencyOf(final ObjectID key) {
+        // whole ranges of 64 ids share a stripe, which keeps each stripe's bit sets as dense as a single one would be
+        return recency[(int) ((key.toLong() >>> 6) & (RECENCY_STRIPES - 1))];
+    }
+
+    private void used(final ObjectID key) {
+        if (coldCompression) {
+            recencyOf(key).used(key);
+        }
+    }
+
+    // the caller holds the relocation read lock, so a compress() pass never runs between this and the write itself
+    private void written(final ObjectID key) {
+        if (coldCompression) {
+            recencyOf(key).written(key);
+        }
+    }
+
+    /**
+     * @return the leaf objects that have not been read or written since the previous call and that {@link #compress}
+     *         has not already been through, none if cold compression is disabled
+     */
+    ObjectIDSet coldObjectIDs() {
+        if (!coldCompression) {
+            return new BitSetObjectIDSet();
+        }
+        final ObjectIDSet cold = oidSetMaintainer.noReferencesObjectIDSnapshot();
+        for (RecencyStripe stripe : recency) {
+            stripe.removeWarmOrCompressed(cold);
+        }
+        return cold;
+    }
+
+    /**
+     * Replaces the stored copies of the given leaf objects with compressed ones. They are inflated again whenever they
+     * are read, and stored uncompressed the next time they are written. Objects that are already compressed or that
+     * don't compress well are left alone, and left out of {@link #coldObjectIDs()} until they are written again.
+     *
+     * @return the number of bytes saved
+     */
+    long compress(final Collection<ObjectID> keys) {
+        long saved = 0;
+        relocationLock.writeLock().lock();
+        storageManager.begin();
+        try {
+            for (ObjectID key : keys) {
+                final byte[] data = leafObjects.get(key.toLong());
+                if (data == null) {
+                    continue;
+                }
+                final byte[] compressed = ManagedObjectSerializer.compress(data);
+                if (compressed != null) {
+                    leafObjects.put(key.toLong(), compressed, ManagedObjectSerializer.stateTypeOf(data));
+                    saved += data.length - compressed.length;
+                }
+                if (coldCompression) {
+                    recencyOf(key).compressed(key);
+                }
+            }
+        } finally {
+            commitAndUnlock();
+        }
+        return saved;
+    }
+
+    private void commitAndUnlock() {
+        try {
+            storageManager.commit();
+        } finally {
+            relocationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The leaf objects of one stripe read or written since the last call to {@link ObjectMap#coldObjectIDs()}, and
+     * those {@link ObjectMap#compress(Collection)} has been through since they were last written.
+     */
+    private static final class RecencyStripe {
+        private ObjectIDSet used = new BitSetObjectIDSet();
+        private final ObjectIDSet compressed = new BitSetObjectIDSet();
+
+        synchronized void used(final ObjectID key) {
+            used.add(key);
+        }
+
+        synchronized void written(final ObjectID key) {
+            used.add(key);
+            compressed.remove(key);
+        }
+
+        synchronized void compressed(final ObjectID key) {
+            compressed.add(key);
+        }
+
+        /**
+         * Takes this stripe's used and compressed objects out of the given set of leaf objects, and starts the next
+         * period. Compressed objects that are no longer among the leaves are forgotten.
+         */
+        void removeWarmOrCompressed(final ObjectIDSet leaves) {
+            final ObjectIDSet recentlyUsed;
+            synchronized (this) {
+                recentlyUsed = used;
+                used = new BitSetObjectIDSet();
+                compressed.retainAll(leaves);
+                leaves.removeAll(compressed);
+            }
+            leaves.removeAll(recentlyUsed);
+        }
     }
 }
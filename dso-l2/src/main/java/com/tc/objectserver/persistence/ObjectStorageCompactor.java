@@ -0,0 +1,239 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.corestorage.monitoring.MonitoredResource;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.object.ObjectID;
+import com.tc.objectserver.api.ResourceManager;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives back offheap left fragmented by object churn. Every interval the ObjectDB's {@link MonitoredResource.Type#DATA}
+ * resource is checked, and once too much of what it has reserved is no longer in use every live object is rewritten in
+ * batches through {@link ManagedObjectPersistor#relocateObjects(Collection)}, letting the allocator pack them into the
+ * free space and release the pages emptied behind them.
+ * <p>
+ * When cold compression is enabled the leaf objects that have gone unused for the configured idle time are also
+ * compressed in place through {@link ManagedObjectPersistor#compressObjects(Collection)}, so that offheap holds more of
+ * them before eviction has to start.
+ * <p>
+ * A pass backs off while the {@link ResourceManager} is throttling clients and gives up as soon as it restricts them,
+ * since the rewrites then compete with eviction for the same memory.
+ */
+public class ObjectStorageCompactor {
+  private static final TCLogger             logger               = TCLogging.getLogger(ObjectStorageCompactor.class);
+
+  private static final long                 THROTTLED_PAUSE      = 100;
+
+  private final ManagedObjectPersistor      persistor;
+  private final ResourceManager             resourceManager;
+  private final MonitoredResource           data;
+  private final MonitoredResource           offheap;
+  private final long                        interval;
+  private final double                      fragmentationRatio;
+  private final int                         batchSize;
+  private final long                        coldIdleTime;
+  private final AtomicLong                  reclaimed            = new AtomicLong();
+  private final AtomicLong                  compressed           = new AtomicLong();
+  private final ScheduledExecutorService    executor;
+
+  public ObjectStorageCompactor(final ManagedObjectPersistor persistor, final ResourceManager resourceManager,
+                                final Collection<MonitoredResource> resources) {
+    this(persistor, resourceManager, resources,
+         TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_OFFHEAP_COMPACTION_ENABLED, false) ?
+             TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L2_OFFHEAP_COMPACTION_INTERVAL, 60000) : 0,
+         TCPropertiesImpl.getProperties().getFloat(TCPropertiesConsts.L2_OFFHEAP_COMPACTION_FRAGMENTATION_RATIO),
+         TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_OFFHEAP_COMPACTION_BATCH_SIZE, 1000),
+         TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_OFFHEAP_COLD_COMPRESSION_ENABLED, false) ?
+             TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L2_OFFHEAP_COLD_COMPRESSION_IDLE_TIME, 600000) : 0);
+  }
+
+  /**
+   * @param interval time between fragmentation checks, or zero to never compact
+   * @param coldIdleTime time a leaf object has to go unused to get compressed, or zero to never compress
+   */
+  ObjectStorageCompactor(final ManagedObjectPersistor persistor, final ResourceManager resourceManager,
+                         final Collection<MonitoredResource> resources, final long interval,
+                         final double fragmentationRatio, final int batchSize, final long coldIdleTime) {
+    this.persistor = persistor;
+    this.resourceManager = resourceManager;
+    this.data = findResource(resources, MonitoredResource.Type.DATA);
+    this.offheap = findResource(resources, MonitoredResource.Type.OFFHEAP);
+    this.interval = interval;
+    this.fragmentationRatio = fragmentationRatio;
+    this.batchSize = batchSize;
+    this.coldIdleTime = coldIdleTime;
+    this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Offheap Object Compactor");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  private static MonitoredResource findResource(final Collection<MonitoredResource> resources,
+                                                final MonitoredResource.Type type) {
+    for (MonitoredResource rsrc : resources) {
+      if (rsrc.getType() == type) { return rsrc; }
+    }
+    return null;
+  }
+
+  public void start() {
+    if (coldIdleTime > 0) {
+      executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            compressColdObjects();
+          } catch (Throwable t) {
+            logger.error("Offheap cold object compression pass failed", t);
+          }
+        }
+      }, coldIdleTime, coldIdleTime, TimeUnit.MILLISECONDS);
+    }
+    if (interval <= 0) { return; }
+    if (data == null) {
+      logger.info("No ObjectDB data resource is monitored, offheap compaction is disabled");
+      return;
+    }
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          compactIfFragmented();
+        } catch (Throwable t) {
+          logger.error("Offheap compaction pass failed", t);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return the total number of offheap bytes given back by compaction since the server started
+   */
+  public long getReclaimedSize() {
+    return reclaimed.get();
+  }
+
+  /**
+   * @return the total number of bytes saved by compressing cold objects since the server started, not counting that
+   *         objects are stored uncompressed again once they are next written
+   */
+  public long getCompressedSize() {
+    return compressed.get();
+  }
+
+  boolean isFragmented() {
+    final long reserved = data.getReserved();
+    if (reserved <= 0) { return false; }
+    return (double) (reserved - data.getVital()) / reserved > fragmentationRatio;
+  }
+
+  void compactIfFragmented() throws InterruptedException {
+    if (resourceManager.getState() == ResourceManager.State.RESTRICTED || !isFragmented()) { return; }
+    final MonitoredResource measured = offheap == null ? data : offheap;
+    final long before = measured.getReserved();
+    final int relocated = compact();
+    final long freed = before - measured.getReserved();
+    if (freed > 0) {
+      reclaimed.addAndGet(freed);
+    }
+    logger.info("Offheap compaction relocated " + relocated + " objects and released " + Math.max(freed, 0)
+                + " bytes");
+  }
+
+  /**
+   * Relocates every live object a batch at a time.
+   *
+   * @return the number of objects relocated, which is short of the live count if the pass was abandoned
+   */
+  int compact() throws InterruptedException {
+    int relocated = 0;
+    final List<ObjectID> batch = new ArrayList<ObjectID>(batchSize);
+    for (ObjectID id : persistor.snapshotObjectIDs()) {
+      batch.add(id);
+      if (batch.size() >= batchSize) {
+        if (!waitForCapacity()) { return relocated; }
+        relocated += persistor.relocateObjects(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty() && waitForCapacity()) {
+      relocated += persistor.relocateObjects(batch);
+    }
+    return relocated;
+  }
+
+  /**
+   * Compresses the leaf objects left unused since the previous pass a batch at a time. Unlike compaction this keeps
+   * going while the server is short of memory, which is when the space it saves is needed most.
+   *
+   * @return the number of bytes saved
+   */
+  long compressColdObjects() {
+    long saved = 0;
+    final List<ObjectID> batch = new ArrayList<ObjectID>(batchSize);
+    for (ObjectID id : persistor.snapshotColdObjectIDs()) {
+      batch.add(id);
+      if (batch.size() >= batchSize) {
+        saved += persistor.compressObjects(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      saved += persistor.compressObjects(batch);
+    }
+    compressed.addAndGet(saved);
+    if (saved > 0) {
+      logger.info("Offheap cold object compression saved " + saved + " bytes");
+    }
+    return saved;
+  }
+
+  private boolean waitForCapacity() throws InterruptedException {
+    switch (resourceManager.getState()) {
+      case RESTRICTED:
+        logger.info("Abandoning offheap compaction while the server is restricted");
+        return false;
+      case THROTTLED:
+        Thread.sleep(THROTTLED_PAUSE);
+        return true;
+      default:
+        return true;
+    }
+  }
+}
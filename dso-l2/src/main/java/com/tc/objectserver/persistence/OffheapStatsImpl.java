@@ -34,6 +34,7 @@ public class OffheapStatsImpl implements OffheapStats, PrettyPrintable {
   private static final long REFRESH_INTERVAL = 10000;
 
   private final MonitoredResource monitoredResource;
+  private final ObjectStorageCompactor compactor;
   private final ExecutorService executorService = Executors.newCachedThreadPool();
   private final AtomicBoolean refreshing = new AtomicBoolean();
 
@@ -43,7 +44,12 @@ public class OffheapStatsImpl implements OffheapStats, PrettyPrintable {
 
 
   public OffheapStatsImpl(final MonitoredResource monitoredResource) {
+    this(monitoredResource, null);
+  }
+
+  public OffheapStatsImpl(final MonitoredResource monitoredResource, final ObjectStorageCompactor compactor) {
     this.monitoredResource = monitoredResource;
+    this.compactor = compactor;
   }
 
   @Override
@@ -74,6 +80,15 @@ public class OffheapStatsImpl implements OffheapStats, PrettyPrintable {
     }
   }
 
+  @Override
+  public long getOffheapReclaimedSize() {
+    if (compactor != null) {
+      return compactor.getReclaimedSize();
+    } else {
+      return 0L;
+    }
+  }
+
   private void refreshUsedSizeIfNecessary() {
     if (!refreshing.get() && NANOSECONDS.toMillis(System.nanoTime() - lastRefreshTime) > REFRESH_INTERVAL) {
       if (refreshing.compareAndSet(false, true)) {
@@ -115,6 +130,18 @@ public class OffheapStatsImpl implements OffheapStats, PrettyPrintable {
     } catch (Exception e) {
       out.println("OffHeap Reserved: " + getOffheapReservedSize());
     }
+    try {
+      out.println("OffHeap Reclaimed: " + Conversion.memoryBytesAsSize(getOffheapReclaimedSize()));
+    } catch (Exception e) {
+      out.println("OffHeap Reclaimed: " + getOffheapReclaimedSize());
+    }
+    if (compactor != null) {
+      try {
+        out.println("OffHeap Saved By Cold Compression: " + Conversion.memoryBytesAsSize(compactor.getCompressedSize()));
+      } catch (Exception e) {
+        out.println("OffHeap Saved By Cold Compression: " + compactor.getCompressedSize());
+      }
+    }
     out.flush();
     return out;
   }
@@ -27,7 +27,7 @@ import com.tc.object.ObjectID;
  * @author tim
  */
 public class PersistentObjectFactory {
-  private static final KeyValueStorageConfig<Object, Object> MAP_CONFIG = ImmutableKeyValueStorageConfig.builder(Object.class, Object.class)
+  static final KeyValueStorageConfig<Object, Object> MAP_CONFIG = ImmutableKeyValueStorageConfig.builder(Object.class, Object.class)
       .keyTransformer(LiteralSerializer.INSTANCE)
       .valueTransformer(LiteralSerializer.INSTANCE)
       .concurrency(1).build();
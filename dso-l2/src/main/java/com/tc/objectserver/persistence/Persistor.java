@@ -20,6 +20,9 @@ import org.terracotta.corestorage.KeyValueStorageConfig;
 import org.terracotta.corestorage.StorageManager;
 import org.terracotta.corestorage.monitoring.MonitoredResource;
 
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.objectserver.persistence.restartable.RestartableStorageManager;
 import com.tc.properties.TCPropertiesConsts;
 import com.tc.text.PrettyPrintable;
 import com.tc.text.PrettyPrinter;
@@ -28,13 +31,16 @@ import com.tc.util.sequence.MutableSequence;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * @author tim
  */
 public class Persistor implements PrettyPrintable {
+  private static final TCLogger logger = TCLogging.getLogger(Persistor.class);
   private static final String GLOBAL_TRANSACTION_ID_SEQUENCE = "global_transaction_id_sequence";
 
   private final StorageManager storageManager;
@@ -52,6 +58,7 @@ public class Persistor implements PrettyPrintable {
   private SequenceManager sequenceManager;
   private InlineGCPersistor inlineGCPersistor;
   private final ObjectIDSetMaintainer objectIDSetMaintainer;
+  private final Map<String, Long> startupTimings = new LinkedHashMap<String, Long>();
 
   private EvictionTransactionPersistor evictionTransactionPersistor;
 
@@ -88,24 +95,49 @@ public class Persistor implements PrettyPrintable {
   }
 
   public void start() {
+    long phaseStart = System.currentTimeMillis();
     try {
       storageManager.start().get();
     } catch (Exception e) {
       throw new AssertionError(e);
     }
+    // recovering the storage also rebuilds the object id sets through the mutation listener
+    phaseStart = endPhase("storage", phaseStart);
 
     sequenceManager = new SequenceManager(storageManager);
     transactionPersistor = createTransactionPersistor(storageManager);
+    if (storageManager instanceof RestartableStorageManager) {
+      transactionPersistor = new CommitMarkingTransactionPersistor(transactionPersistor,
+                                                                   (RestartableStorageManager) storageManager);
+    }
+    gidSequence = sequenceManager.getSequence(GLOBAL_TRANSACTION_ID_SEQUENCE);
+    phaseStart = endPhase("sequences", phaseStart);
+
     clientStatePersistor = new ClientStatePersistor(sequenceManager, storageManager);
-    managedObjectPersistor = new ManagedObjectPersistor(storageManager, sequenceManager, objectIDSetMaintainer);
+    phaseStart = endPhase("clientStates", phaseStart);
 
-    gidSequence = sequenceManager.getSequence(GLOBAL_TRANSACTION_ID_SEQUENCE);
+    managedObjectPersistor = new ManagedObjectPersistor(storageManager, sequenceManager, objectIDSetMaintainer);
     evictionTransactionPersistor = createEvictionTransactionPersistor(storageManager);
     inlineGCPersistor = createInlineGCPersistor(storageManager);
+    endPhase("objects", phaseStart);
 
+    logger.info("Loaded persistent state, phase timings in ms: " + startupTimings);
     started = true;
   }
 
+  private synchronized long endPhase(String phase, long phaseStart) {
+    long now = System.currentTimeMillis();
+    startupTimings.put(phase, now - phaseStart);
+    return now;
+  }
+
+  /**
+   * @return the time in milliseconds spent in each phase of {@link #start()}, in phase order
+   */
+  public synchronized Map<String, Long> getStartupTimings() {
+    return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(startupTimings));
+  }
+
   protected TransactionPersistor createTransactionPersistor(StorageManager storageManagerParam) {
     return new NullTransactionPersistor();
   }
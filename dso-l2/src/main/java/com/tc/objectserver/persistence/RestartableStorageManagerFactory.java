@@ -0,0 +1,84 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.corestorage.ImmutableKeyValueStorageConfig;
+import org.terracotta.corestorage.KeyValueStorageConfig;
+import org.terracotta.corestorage.StorageManager;
+import org.terracotta.corestorage.TransformerLookup;
+
+import com.tc.objectserver.persistence.restartable.RestartableStorageManager;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Makes the storage created by another {@link StorageManagerFactory} restartable, by logging all mutations to the
+ * server data directory and replaying them when the {@link StorageManager} is started.
+ */
+public class RestartableStorageManagerFactory implements StorageManagerFactory {
+  private static final String         RESTART_LOG_DIRECTORY = "restartable-store";
+
+  private final StorageManagerFactory delegate;
+  private final File                  directory;
+
+  public RestartableStorageManagerFactory(final StorageManagerFactory delegate, final File dataPath) {
+    this.delegate = delegate;
+    this.directory = new File(dataPath, RESTART_LOG_DIRECTORY);
+  }
+
+  @Override
+  public StorageManager createStorageManager(final Map<String, KeyValueStorageConfig<?, ?>> configMap,
+                                             final TransformerLookup transformerLookup) throws IOException {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    return new RestartableStorageManager(delegate.createStorageManager(configMap, transformerLookup),
+                                         delegate.wrapMapConfig(PersistentObjectFactory.MAP_CONFIG), directory,
+                                         props.getBoolean(TCPropertiesConsts.L2_RESTARTABLE_LOG_FSYNC),
+                                         props.getLong(TCPropertiesConsts.L2_RESTARTABLE_LOG_COMPACTION_MIN_BYTES),
+                                         props.getFloat(TCPropertiesConsts.L2_RESTARTABLE_LOG_COMPACTION_RATIO),
+                                         recoveryThreads(props));
+  }
+
+  private static int recoveryThreads(final TCProperties props) {
+    int threads = props.getInt(TCPropertiesConsts.L2_RESTARTABLE_RECOVERY_THREADS);
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  @Override
+  public <K, V> KeyValueStorageConfig<K, V> wrapObjectDBConfig(final KeyValueStorageConfig<K, V> baseConfig, final Type nt) {
+    return delegate.wrapObjectDBConfig(baseConfig, nt);
+  }
+
+  @Override
+  public <K, V> KeyValueStorageConfig<K, V> wrapObjectDBConfig(final ImmutableKeyValueStorageConfig.Builder<K, V> builder, final Type nt) {
+    return delegate.wrapObjectDBConfig(builder, nt);
+  }
+
+  @Override
+  public <K, V> KeyValueStorageConfig<K, V> wrapMapConfig(final KeyValueStorageConfig<K, V> baseConfig) {
+    return delegate.wrapMapConfig(baseConfig);
+  }
+
+  @Override
+  public <K, V> KeyValueStorageConfig<K, V> wrapMapConfig(final ImmutableKeyValueStorageConfig.Builder<K, V> builder) {
+    return delegate.wrapMapConfig(builder);
+  }
+}
@@ -0,0 +1,48 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The content of a backup taken by {@link RestartableStorageManager#beginBackup()}.
+ */
+public class BackupPoint {
+  private final List<File> files;
+  private final long       committedMark;
+
+  BackupPoint(final List<File> files, final long committedMark) {
+    this.files = files;
+    this.committedMark = committedMark;
+  }
+
+  /**
+   * @return the files to copy, in the order recovery replays them
+   */
+  public List<File> getFiles() {
+    return files;
+  }
+
+  /**
+   * @return the highest mark passed to {@link RestartableStorageManager#markCommitted(long)} by a transaction held in
+   *         the files, or -1 if none has committed since the storage manager was started
+   */
+  public long getCommittedMark() {
+    return committedMark;
+  }
+}
@@ -0,0 +1,159 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a restart log file written by {@link LogWriter}. The file is memory mapped in windows so that files larger
+ * than the addressable size of a single buffer can be replayed without copying them onto the heap.
+ */
+class LogReader {
+  private static final long WINDOW_SIZE = 256 * 1024 * 1024;
+
+  private final File                            file;
+  private final Map<Integer, StorageDescriptor> defined = new HashMap<Integer, StorageDescriptor>();
+
+  LogReader(final File file) {
+    this.file = file;
+  }
+
+  /**
+   * Replays every intact frame of the file into the given visitor.
+   * 
+   * @return the offset just past the last intact frame, which is the file length unless the tail of the file is torn
+   */
+  long read(final LogRecordVisitor visitor) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size < LogWriter.FILE_HEADER) { return 0; }
+      MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, LogWriter.FILE_HEADER);
+      if (header.getInt() != LogWriter.MAGIC) { throw new IOException(file + " is not a restart log file"); }
+      int version = header.getInt();
+      if (version != LogWriter.VERSION) { throw new IOException("Unsupported restart log version " + version + " in "
+                                                                + file); }
+
+      CRC32 crc = new CRC32();
+      long position = LogWriter.FILE_HEADER;
+      long windowStart = position;
+      MappedByteBuffer window = null;
+      while (position + LogWriter.FRAME_HEADER <= size) {
+        if (window == null || position + LogWriter.FRAME_HEADER > windowStart + window.capacity()) {
+          windowStart = position;
+          window = channel.map(MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+        }
+        int offset = (int) (position - windowStart);
+        int length = window.getInt(offset);
+        int checksum = window.getInt(offset + 4);
+        long end = position + LogWriter.FRAME_HEADER + length;
+        if (length < 0 || end > size) {
+          break;
+        }
+        if (end > windowStart + window.capacity()) {
+          windowStart = position;
+          window = channel.map(MapMode.READ_ONLY, windowStart,
+                               Math.min(Math.max(WINDOW_SIZE, LogWriter.FRAME_HEADER + (long) length), size
+                                                                                                     - windowStart));
+          offset = 0;
+        }
+        ByteBuffer frame = window.duplicate();
+        frame.limit(offset + LogWriter.FRAME_HEADER + length).position(offset + LogWriter.FRAME_HEADER);
+        frame = frame.slice();
+        crc.reset();
+        crc.update(frame.duplicate());
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        readFrame(frame, visitor);
+        position = end;
+      }
+      return position;
+    } finally {
+      raf.close();
+    }
+  }
+
+  private void readFrame(final ByteBuffer frame, final LogRecordVisitor visitor) {
+    while (frame.hasRemaining()) {
+      byte op = frame.get();
+      switch (op) {
+        case LogWriter.DEFINE:
+          int id = frame.getInt();
+          String alias = readString(frame);
+          String keyClass = readString(frame);
+          String valueClass = readString(frame);
+          boolean dynamic = frame.get() != 0;
+          defined.put(id, StorageDescriptor.forNames(alias, keyClass, valueClass, dynamic));
+          break;
+        case LogWriter.CREATE:
+          visitor.create(descriptor(frame.getInt()));
+          break;
+        case LogWriter.DESTROY:
+          visitor.destroy(descriptor(frame.getInt()));
+          break;
+        case LogWriter.PUT: {
+          StorageDescriptor descriptor = descriptor(frame.getInt());
+          byte metadata = frame.get();
+          ByteBuffer key = readSlice(frame);
+          ByteBuffer value = readSlice(frame);
+          visitor.put(descriptor, key, value, metadata);
+          break;
+        }
+        case LogWriter.REMOVE: {
+          StorageDescriptor descriptor = descriptor(frame.getInt());
+          visitor.remove(descriptor, readSlice(frame));
+          break;
+        }
+        case LogWriter.CLEAR:
+          visitor.clear(descriptor(frame.getInt()));
+          break;
+        default:
+          throw new IllegalStateException("Unknown record type " + op + " in " + file);
+      }
+    }
+  }
+
+  private StorageDescriptor descriptor(final int id) {
+    StorageDescriptor descriptor = defined.get(id);
+    if (descriptor == null) { throw new IllegalStateException("Undefined storage id " + id + " in " + file); }
+    return descriptor;
+  }
+
+  private static ByteBuffer readSlice(final ByteBuffer frame) {
+    int length = frame.getInt();
+    ByteBuffer slice = frame.duplicate();
+    slice.limit(slice.position() + length);
+    frame.position(frame.position() + length);
+    return slice.slice();
+  }
+
+  private static String readString(final ByteBuffer frame) {
+    ByteBuffer bytes = readSlice(frame);
+    return LogWriter.UTF8.decode(bytes).toString();
+  }
+}
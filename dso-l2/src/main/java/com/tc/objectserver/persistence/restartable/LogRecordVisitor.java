@@ -0,0 +1,36 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback for the records read back from a restart log file. Key and value buffers are only valid for the duration
+ * of the call.
+ */
+interface LogRecordVisitor {
+
+  void create(StorageDescriptor descriptor);
+
+  void destroy(StorageDescriptor descriptor);
+
+  void put(StorageDescriptor descriptor, ByteBuffer key, ByteBuffer value, byte metadata);
+
+  void remove(StorageDescriptor descriptor, ByteBuffer key);
+
+  void clear(StorageDescriptor descriptor);
+}
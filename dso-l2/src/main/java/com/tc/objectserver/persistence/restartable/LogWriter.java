@@ -0,0 +1,179 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writes records to a single restart log file. Records are accumulated in a buffer and written out as a checksummed
+ * frame on {@link #flush(boolean)}, and only then, so a frame holds exactly what the caller added since the last one.
+ * <p>
+ * Storages are referred to by a small integer that is defined once per file, which keeps the per-record overhead
+ * independent of the alias length. This class is not thread safe.
+ */
+class LogWriter {
+  static final int     MAGIC           = 0x54435253;
+  static final int     VERSION         = 1;
+  static final int     FILE_HEADER     = 8;
+  static final int     FRAME_HEADER    = 8;
+
+  static final byte    DEFINE          = 0;
+  static final byte    CREATE          = 1;
+  static final byte    DESTROY         = 2;
+  static final byte    PUT             = 3;
+  static final byte    REMOVE          = 4;
+  static final byte    CLEAR           = 5;
+
+  static final Charset UTF8            = Charset.forName("UTF-8");
+
+  private static final int     INITIAL_BUFFER  = 64 * 1024;
+  private static final int     MAX_BUFFER      = 1024 * 1024;
+
+  private final File                 file;
+  private final FileChannel          channel;
+  private final Map<String, Integer> defined = new HashMap<String, Integer>();
+  private final CRC32                crc     = new CRC32();
+  private ByteBuffer                 pending = ByteBuffer.allocate(INITIAL_BUFFER);
+  private long                       size;
+
+  LogWriter(final File file) throws IOException {
+    this.file = file;
+    this.channel = new FileOutputStream(file).getChannel();
+    ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+    header.putInt(MAGIC).putInt(VERSION).flip();
+    writeFully(header);
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  long size() {
+    return size + pending.position();
+  }
+
+  boolean hasPending() {
+    return pending.position() > 0;
+  }
+
+  void create(final StorageDescriptor descriptor) throws IOException {
+    int id = idFor(descriptor);
+    ensureCapacity(1 + 4).put(CREATE).putInt(id);
+  }
+
+  void destroy(final StorageDescriptor descriptor) throws IOException {
+    int id = idFor(descriptor);
+    ensureCapacity(1 + 4).put(DESTROY).putInt(id);
+  }
+
+  void put(final StorageDescriptor descriptor, final byte[] key, final byte[] value, final byte metadata)
+      throws IOException {
+    int id = idFor(descriptor);
+    ensureCapacity(1 + 4 + 1 + 4 + key.length + 4 + value.length).put(PUT).putInt(id).put(metadata)
+        .putInt(key.length).put(key).putInt(value.length).put(value);
+  }
+
+  void put(final StorageDescriptor descriptor, final ByteBuffer key, final ByteBuffer value, final byte metadata)
+      throws IOException {
+    int id = idFor(descriptor);
+    ensureCapacity(1 + 4 + 1 + 4 + key.remaining() + 4 + value.remaining()).put(PUT).putInt(id).put(metadata)
+        .putInt(key.remaining()).put(key.duplicate()).putInt(value.remaining()).put(value.duplicate());
+  }
+
+  void remove(final StorageDescriptor descriptor, final byte[] key) throws IOException {
+    int id = idFor(descriptor);
+    ensureCapacity(1 + 4 + 4 + key.length).put(REMOVE).putInt(id).putInt(key.length).put(key);
+  }
+
+  void clear(final StorageDescriptor descriptor) throws IOException {
+    int id = idFor(descriptor);
+    ensureCapacity(1 + 4).put(CLEAR).putInt(id);
+  }
+
+  /**
+   * Writes all pending records out as a single frame.
+   * 
+   * @param force whether to also force the file contents to the storage device
+   */
+  void flush(final boolean force) throws IOException {
+    if (hasPending()) {
+      pending.flip();
+      crc.reset();
+      crc.update(pending.array(), 0, pending.limit());
+      ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+      header.putInt(pending.limit()).putInt((int) crc.getValue()).flip();
+      writeFully(header);
+      writeFully(pending);
+      pending.clear();
+      if (pending.capacity() > MAX_BUFFER) {
+        // don't hang on to a buffer that grew for a single large transaction
+        pending = ByteBuffer.allocate(INITIAL_BUFFER);
+      }
+    }
+    if (force) {
+      channel.force(false);
+    }
+  }
+
+  void close() throws IOException {
+    flush(false);
+    channel.close();
+  }
+
+  private int idFor(final StorageDescriptor descriptor) {
+    Integer id = defined.get(descriptor.getAlias());
+    if (id == null) {
+      id = defined.size();
+      defined.put(descriptor.getAlias(), id);
+      byte[] alias = descriptor.getAlias().getBytes(UTF8);
+      byte[] keyClass = descriptor.getKeyClass().getName().getBytes(UTF8);
+      byte[] valueClass = descriptor.getValueClass().getName().getBytes(UTF8);
+      ensureCapacity(1 + 4 + 4 + alias.length + 4 + keyClass.length + 4 + valueClass.length + 1).put(DEFINE)
+          .putInt(id).putInt(alias.length).put(alias).putInt(keyClass.length).put(keyClass).putInt(valueClass.length)
+          .put(valueClass).put(descriptor.isDynamic() ? (byte) 1 : (byte) 0);
+    }
+    return id;
+  }
+
+  private ByteBuffer ensureCapacity(final int bytes) {
+    if (pending.remaining() < bytes) {
+      int capacity = pending.capacity();
+      while (capacity - pending.position() < bytes) {
+        capacity *= 2;
+      }
+      ByteBuffer grown = ByteBuffer.allocate(capacity);
+      pending.flip();
+      grown.put(pending);
+      pending = grown;
+    }
+    return pending;
+  }
+
+  private void writeFully(final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      size += channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import com.tc.util.concurrent.NamedThreadFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Spreads the put and remove records of a restart log replay over a number of threads. All records for a given key
+ * are applied by the same thread, in log order. Records that affect a whole storage wait for every record read before
+ * them to be applied, and are then passed to the target on the reading thread.
+ */
+final class ParallelLogRecordVisitor implements LogRecordVisitor {
+  private static final int                      BATCH_SIZE     = 1024;
+  private static final int                      QUEUED_BATCHES = 4;
+  private static final ThreadFactory            THREAD_FACTORY = new NamedThreadFactory("Restart log replay");
+
+  private final LogRecordVisitor                target;
+  private final Partition[]                     partitions;
+  private final Set<String>                     known          = new HashSet<String>();
+  private final AtomicReference<Throwable>      failure        = new AtomicReference<Throwable>();
+
+  ParallelLogRecordVisitor(final LogRecordVisitor target, final int threads) {
+    this.target = target;
+    this.partitions = new Partition[threads];
+    for (int i = 0; i < threads; i++) {
+      partitions[i] = new Partition();
+    }
+  }
+
+  @Override
+  public void create(final StorageDescriptor descriptor) {
+    target.create(descriptor);
+    known.add(descriptor.getAlias());
+  }
+
+  @Override
+  public void destroy(final StorageDescriptor descriptor) {
+    drain();
+    target.destroy(descriptor);
+    known.remove(descriptor.getAlias());
+  }
+
+  @Override
+  public void put(final StorageDescriptor descriptor, final ByteBuffer key, final ByteBuffer value,
+                  final byte metadata) {
+    ensureCreated(descriptor);
+    final ByteBuffer keyCopy = copy(key);
+    final ByteBuffer valueCopy = copy(value);
+    partitionFor(descriptor, keyCopy).add(new Runnable() {
+      @Override
+      public void run() {
+        target.put(descriptor, keyCopy, valueCopy, metadata);
+      }
+    });
+  }
+
+  @Override
+  public void remove(final StorageDescriptor descriptor, final ByteBuffer key) {
+    ensureCreated(descriptor);
+    final ByteBuffer keyCopy = copy(key);
+    partitionFor(descriptor, keyCopy).add(new Runnable() {
+      @Override
+      public void run() {
+        target.remove(descriptor, keyCopy);
+      }
+    });
+  }
+
+  @Override
+  public void clear(final StorageDescriptor descriptor) {
+    drain();
+    target.clear(descriptor);
+  }
+
+  /**
+   * Waits for every record handed to this visitor so far to be applied.
+   * 
+   * @throws IllegalStateException if applying any of them failed
+   */
+  void drain() {
+    for (Partition partition : partitions) {
+      partition.flush();
+    }
+    for (Partition partition : partitions) {
+      partition.await();
+    }
+    checkFailure();
+  }
+
+  void shutdown() {
+    for (Partition partition : partitions) {
+      partition.executor.shutdownNow();
+    }
+  }
+
+  // storages are looked up or recreated on this thread, so that the workers never race to create the same one
+  private void ensureCreated(final StorageDescriptor descriptor) {
+    if (known.add(descriptor.getAlias())) {
+      target.create(descriptor);
+    }
+  }
+
+  private Partition partitionFor(final StorageDescriptor descriptor, final ByteBuffer key) {
+    int hash = descriptor.getAlias().hashCode() * 31 + key.hashCode();
+    hash ^= hash >>> 16;
+    return partitions[(hash & Integer.MAX_VALUE) % partitions.length];
+  }
+
+  private void checkFailure() {
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) { throw (RuntimeException) t; }
+    if (t instanceof Error) { throw (Error) t; }
+    if (t != null) { throw new IllegalStateException("Restart log replay failed", t); }
+  }
+
+  private static ByteBuffer copy(final ByteBuffer buffer) {
+    ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+    copy.put(buffer.duplicate());
+    copy.flip();
+    return copy;
+  }
+
+  private final class Partition {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private final Semaphore       queued   = new Semaphore(QUEUED_BATCHES);
+    private List<Runnable>        batch    = new ArrayList<Runnable>(BATCH_SIZE);
+
+    void add(final Runnable record) {
+      batch.add(record);
+      if (batch.size() == BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (batch.isEmpty()) { return; }
+      final List<Runnable> records = batch;
+      batch = new ArrayList<Runnable>(BATCH_SIZE);
+      checkFailure();
+      queued.acquireUninterruptibly();
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (failure.get() == null) {
+              for (Runnable record : records) {
+                record.run();
+              }
+            }
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          } finally {
+            queued.release();
+          }
+        }
+      });
+    }
+
+    void await() {
+      try {
+        // the executor runs batches in submission order, so this completes after all of them
+        executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            //
+          }
+        }).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while replaying the restart log", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,538 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Append-only log of the mutations applied to a {@link RestartableStorageManager}.
+ * <p>
+ * The log is a sequence of generations. Every generation has a log file with the records appended while it was
+ * current, and may have a snapshot file holding the live records of all older generations. Recovery replays the
+ * newest snapshot followed by the log files of that generation and the later ones, so its cost depends on the size of
+ * the live data plus the records appended since the last compaction.
+ * <p>
+ * Records of a transaction are buffered by the thread running it and written out as one frame when its outermost
+ * transaction commits, so recovery sees either all of a transaction or none of it. Mutations made outside of a
+ * transaction are written out immediately, each as a frame of its own.
+ * <p>
+ * Frames go into the log in commit order. Callers that change the same key from different threads have to order
+ * those changes across commits, as the object manager does by keeping objects checked out until their transaction has
+ * committed.
+ * <p>
+ * A transaction can carry a mark, such as the id of the global transaction it applies. The log keeps the highest mark
+ * of the transactions it has appended, so that a backup knows which of them its files hold.
+ */
+class RestartLog {
+  private static final TCLogger logger          = TCLogging.getLogger(RestartLog.class);
+
+  private static final String   LOG_SUFFIX      = ".log";
+  private static final String   SNAPSHOT_SUFFIX = ".snapshot";
+  private static final String   TEMP_SUFFIX     = ".tmp";
+
+  static final long             NO_MARK         = -1;
+
+  private final File               directory;
+  private final boolean            fsync;
+  private final long               compactionMinBytes;
+  private final double             compactionRatio;
+  private final ThreadLocal<Transaction> transaction = new ThreadLocal<Transaction>() {
+                                                       @Override
+                                                       protected Transaction initialValue() {
+                                                         return new Transaction();
+                                                       }
+                                                     };
+
+  private LogWriter                current;
+  private long                     currentGeneration;
+  private long                     snapshotGeneration;
+  private long                     snapshotBytes;
+  private long                     closedLogBytes;
+  private boolean                  compacting;
+  private int                      backups;
+  private long                     supersededGeneration;
+  private long                     committedMark   = NO_MARK;
+
+  RestartLog(final File directory, final boolean fsync, final long compactionMinBytes, final double compactionRatio) {
+    this.directory = directory;
+    this.fsync = fsync;
+    this.compactionMinBytes = compactionMinBytes;
+    this.compactionRatio = compactionRatio;
+  }
+
+  /**
+   * Replays the persisted state into the visitor and opens a fresh log file for appending.
+   */
+  synchronized void recover(final LogRecordVisitor visitor) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) { throw new IOException("Unable to create restart log directory "
+                                                                                 + directory); }
+    deleteFiles(TEMP_SUFFIX, Long.MAX_VALUE);
+
+    SortedMap<Long, File> snapshots = listFiles(SNAPSHOT_SUFFIX);
+    SortedMap<Long, File> logs = listFiles(LOG_SUFFIX);
+    snapshotGeneration = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+    long start = System.currentTimeMillis();
+
+    if (!snapshots.isEmpty()) {
+      File snapshot = snapshots.get(snapshotGeneration);
+      if (new LogReader(snapshot).read(visitor) != snapshot.length()) { throw new IllegalStateException("Restart snapshot "
+                                                                                                        + snapshot
+                                                                                                        + " is corrupt"); }
+      snapshotBytes = snapshot.length();
+    }
+    List<File> tail = new ArrayList<File>(logs.tailMap(snapshotGeneration).values());
+    for (int i = 0; i < tail.size(); i++) {
+      File log = tail.get(i);
+      long valid = new LogReader(log).read(visitor);
+      if (valid < log.length()) {
+        if (i != tail.size() - 1) { throw new IllegalStateException("Restart log " + log + " is corrupt at offset "
+                                                                    + valid); }
+        logger.warn("Truncating torn tail of restart log " + log + " at offset " + valid);
+        truncate(log, valid);
+      }
+      closedLogBytes += Math.max(valid, LogWriter.FILE_HEADER);
+    }
+    logger.info("Recovered restart log from " + directory + " (snapshot " + snapshotBytes + " bytes, log "
+                + closedLogBytes + " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+
+    long last = Math.max(snapshotGeneration, logs.isEmpty() ? 0 : logs.lastKey());
+    currentGeneration = last + 1;
+    current = new LogWriter(file(currentGeneration, LOG_SUFFIX));
+  }
+
+  void begin() {
+    transaction.get().depth++;
+  }
+
+  void commit() throws IOException {
+    Transaction tx = transaction.get();
+    if (tx.depth > 0 && --tx.depth == 0 && (!tx.records.isEmpty() || tx.mark != NO_MARK)) {
+      try {
+        append(tx.records, tx.mark);
+      } finally {
+        tx.records.clear();
+        tx.mark = NO_MARK;
+      }
+    }
+  }
+
+  /**
+   * Attaches the mark to the transaction open on the calling thread, or applies it straight away outside of one.
+   */
+  void mark(final long mark) throws IOException {
+    Transaction tx = transaction.get();
+    if (tx.depth > 0) {
+      tx.mark = Math.max(tx.mark, mark);
+    } else {
+      append(Collections.<Record> emptyList(), mark);
+    }
+  }
+
+  void create(final StorageDescriptor descriptor) throws IOException {
+    add(new Record(LogWriter.CREATE, descriptor, null, null, (byte) 0));
+  }
+
+  void destroy(final StorageDescriptor descriptor) throws IOException {
+    add(new Record(LogWriter.DESTROY, descriptor, null, null, (byte) 0));
+  }
+
+  void put(final StorageDescriptor descriptor, final byte[] key, final byte[] value, final byte metadata)
+      throws IOException {
+    add(new Record(LogWriter.PUT, descriptor, key, value, metadata));
+  }
+
+  void remove(final StorageDescriptor descriptor, final byte[] key) throws IOException {
+    add(new Record(LogWriter.REMOVE, descriptor, key, null, (byte) 0));
+  }
+
+  void clear(final StorageDescriptor descriptor) throws IOException {
+    add(new Record(LogWriter.CLEAR, descriptor, null, null, (byte) 0));
+  }
+
+  private void add(final Record record) throws IOException {
+    Transaction tx = transaction.get();
+    if (tx.depth > 0) {
+      tx.records.add(record);
+    } else {
+      append(Collections.singletonList(record), NO_MARK);
+    }
+  }
+
+  /**
+   * Writes the given records out as a single frame and raises the committed mark once they are in the log.
+   */
+  private synchronized void append(final List<Record> records, final long mark) throws IOException {
+    if (!records.isEmpty()) {
+      for (Record record : records) {
+        record.writeTo(current);
+      }
+      current.flush(fsync);
+    }
+    committedMark = Math.max(committedMark, mark);
+  }
+
+  /**
+   * @return true if the records appended since the last snapshot warrant a compaction, in which case the caller is
+   *         expected to call {@link #compact()}
+   */
+  synchronized boolean needsCompaction() {
+    if (compacting || current == null) { return false; }
+    long logBytes = closedLogBytes + current.size();
+    return logBytes > compactionMinBytes && logBytes > compactionRatio * snapshotBytes;
+  }
+
+  /**
+   * Writes a new snapshot holding the live records of all generations up to the current one and deletes the files it
+   * supersedes. Appends continue concurrently into a new generation.
+   * <p>
+   * Which records are live is decided from the compacted files alone: the last put of every key survives unless a
+   * later remove, clear or destroy in those files undid it. The in-memory storages can't be used for this, they
+   * already hold the changes of transactions that have not committed to the log yet.
+   */
+  void compact() throws IOException {
+    final List<File> sources = new ArrayList<File>();
+    final long generation;
+    synchronized (this) {
+      if (compacting) { return; }
+      compacting = true;
+      if (snapshotGeneration > 0) {
+        sources.add(file(snapshotGeneration, SNAPSHOT_SUFFIX));
+      }
+      sources.addAll(listFiles(LOG_SUFFIX).tailMap(snapshotGeneration).values());
+      // transactions still in flight hold their records until they commit, which appends them to the new file
+      current.flush(true);
+      current.close();
+      generation = ++currentGeneration;
+      current = new LogWriter(file(generation, LOG_SUFFIX));
+      closedLogBytes = 0;
+    }
+
+    try {
+      long start = System.currentTimeMillis();
+      File temp = file(generation, SNAPSHOT_SUFFIX + TEMP_SUFFIX);
+      final LogWriter snapshot = new LogWriter(temp);
+      long sourceBytes = 0;
+      try {
+        // a first pass finds the last record of every key, so that no values have to be held in memory
+        LatestRecords latest = new LatestRecords();
+        for (File source : sources) {
+          sourceBytes += source.length();
+          new LogReader(source).read(latest);
+        }
+        LogRecordVisitor filter = new CompactingVisitor(latest, snapshot);
+        for (File source : sources) {
+          new LogReader(source).read(filter);
+        }
+        snapshot.flush(true);
+      } finally {
+        snapshot.close();
+      }
+      File target = file(generation, SNAPSHOT_SUFFIX);
+      Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+      synchronized (this) {
+        snapshotGeneration = generation;
+        snapshotBytes = target.length();
+        if (backups == 0) {
+          deleteFiles(SNAPSHOT_SUFFIX, generation);
+          deleteFiles(LOG_SUFFIX, generation);
+        } else {
+          // a backup may still be copying the superseded files, they go when the last one ends
+          supersededGeneration = generation;
+        }
+      }
+      logger.info("Compacted " + sourceBytes + " bytes of restart log into a " + target.length()
+                  + " byte snapshot in " + (System.currentTimeMillis() - start) + "ms");
+    } finally {
+      synchronized (this) {
+        compacting = false;
+      }
+    }
+  }
+
+  /**
+   * Closes the current generation and returns the files that recovery would replay at this point, along with the
+   * highest mark committed into them. Appends continue into a new generation, and the returned files are not modified
+   * or deleted until {@link #endBackup()}.
+   */
+  synchronized BackupPoint beginBackup() throws IOException {
+    List<File> files = new ArrayList<File>();
+    if (snapshotGeneration > 0) {
+      files.add(file(snapshotGeneration, SNAPSHOT_SUFFIX));
+    }
+    // transactions still in flight are left out, just as they would be on a crash at this point
+    current.flush(true);
+    current.close();
+    closedLogBytes += current.size();
+    files.addAll(listFiles(LOG_SUFFIX).tailMap(snapshotGeneration).values());
+    current = new LogWriter(file(++currentGeneration, LOG_SUFFIX));
+    backups++;
+    return new BackupPoint(files, committedMark);
+  }
+
+  synchronized void endBackup() {
+    if (--backups == 0 && supersededGeneration > 0) {
+      deleteFiles(SNAPSHOT_SUFFIX, supersededGeneration);
+      deleteFiles(LOG_SUFFIX, supersededGeneration);
+      supersededGeneration = 0;
+    }
+  }
+
+  synchronized void close() throws IOException {
+    if (current != null) {
+      current.flush(true);
+      current.close();
+      current = null;
+    }
+  }
+
+  private File file(final long generation, final String suffix) {
+    return new File(directory, String.format("%019d", generation) + suffix);
+  }
+
+  private SortedMap<Long, File> listFiles(final String suffix) {
+    SortedMap<Long, File> files = new TreeMap<Long, File>();
+    File[] list = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.endsWith(suffix);
+      }
+    });
+    for (File f : list == null ? new File[0] : list) {
+      String name = f.getName();
+      try {
+        files.put(Long.parseLong(name.substring(0, name.length() - suffix.length())), f);
+      } catch (NumberFormatException e) {
+        logger.warn("Ignoring unexpected file " + f + " in restart log directory");
+      }
+    }
+    return Collections.unmodifiableSortedMap(files);
+  }
+
+  private void deleteFiles(final String suffix, final long belowGeneration) {
+    for (File f : listFiles(suffix).headMap(belowGeneration).values()) {
+      if (!f.delete()) {
+        logger.warn("Unable to delete obsolete restart log file " + f);
+      }
+    }
+  }
+
+  private static void truncate(final File file, final long length) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(length);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static class Transaction {
+    private final List<Record> records = new ArrayList<Record>();
+    private int                depth;
+    private long               mark    = NO_MARK;
+  }
+
+  private static class Record {
+    private final byte              op;
+    private final StorageDescriptor descriptor;
+    private final byte[]            key;
+    private final byte[]            value;
+    private final byte              metadata;
+
+    Record(final byte op, final StorageDescriptor descriptor, final byte[] key, final byte[] value, final byte metadata) {
+      this.op = op;
+      this.descriptor = descriptor;
+      this.key = key;
+      this.value = value;
+      this.metadata = metadata;
+    }
+
+    void writeTo(final LogWriter writer) throws IOException {
+      switch (op) {
+        case LogWriter.CREATE:
+          writer.create(descriptor);
+          break;
+        case LogWriter.DESTROY:
+          writer.destroy(descriptor);
+          break;
+        case LogWriter.PUT:
+          writer.put(descriptor, key, value, metadata);
+          break;
+        case LogWriter.REMOVE:
+          writer.remove(descriptor, key);
+          break;
+        case LogWriter.CLEAR:
+          writer.clear(descriptor);
+          break;
+        default:
+          throw new IllegalStateException("Unknown record type " + op);
+      }
+    }
+  }
+
+  /**
+   * The records of a storage that are still live at the end of the compacted files, identified by their position in
+   * the sequence of records read.
+   */
+  private static class LiveRecords {
+    private final long                  created;
+    private final Map<ByteBuffer, Long> keys = new HashMap<ByteBuffer, Long>();
+
+    LiveRecords(final long created) {
+      this.created = created;
+    }
+  }
+
+  private static class LatestRecords implements LogRecordVisitor {
+    private final Map<String, LiveRecords> storages = new HashMap<String, LiveRecords>();
+    private long                           sequence;
+
+    LiveRecords get(final StorageDescriptor descriptor) {
+      return storages.get(descriptor.getAlias());
+    }
+
+    @Override
+    public void create(final StorageDescriptor descriptor) {
+      long created = sequence++;
+      if (!storages.containsKey(descriptor.getAlias())) {
+        storages.put(descriptor.getAlias(), new LiveRecords(created));
+      }
+    }
+
+    @Override
+    public void destroy(final StorageDescriptor descriptor) {
+      sequence++;
+      storages.remove(descriptor.getAlias());
+    }
+
+    @Override
+    public void put(final StorageDescriptor descriptor, final ByteBuffer key, final ByteBuffer value,
+                    final byte metadata) {
+      long position = sequence++;
+      LiveRecords records = storages.get(descriptor.getAlias());
+      if (records == null) {
+        // storages configured up front are used without ever being created in the log
+        records = new LiveRecords(-1);
+        storages.put(descriptor.getAlias(), records);
+      }
+      byte[] copy = new byte[key.remaining()];
+      key.duplicate().get(copy);
+      records.keys.put(ByteBuffer.wrap(copy), position);
+    }
+
+    @Override
+    public void remove(final StorageDescriptor descriptor, final ByteBuffer key) {
+      sequence++;
+      LiveRecords records = storages.get(descriptor.getAlias());
+      if (records != null) {
+        records.keys.remove(key);
+      }
+    }
+
+    @Override
+    public void clear(final StorageDescriptor descriptor) {
+      sequence++;
+      LiveRecords records = storages.get(descriptor.getAlias());
+      if (records != null) {
+        records.keys.clear();
+      }
+    }
+  }
+
+  /**
+   * Copies the records found by {@link LatestRecords} into the snapshot, reading the same files in the same order.
+   */
+  private static class CompactingVisitor implements LogRecordVisitor {
+    private final LatestRecords latest;
+    private final LogWriter     snapshot;
+    private long                sequence;
+
+    CompactingVisitor(final LatestRecords latest, final LogWriter snapshot) {
+      this.latest = latest;
+      this.snapshot = snapshot;
+    }
+
+    @Override
+    public void create(final StorageDescriptor descriptor) {
+      long position = sequence++;
+      LiveRecords records = latest.get(descriptor);
+      if (records != null && records.created == position) {
+        try {
+          snapshot.create(descriptor);
+        } catch (IOException e) {
+          throw new CompactionFailedException(e);
+        }
+      }
+    }
+
+    @Override
+    public void put(final StorageDescriptor descriptor, final ByteBuffer key, final ByteBuffer value,
+                    final byte metadata) {
+      long position = sequence++;
+      LiveRecords records = latest.get(descriptor);
+      if (records == null) { return; }
+      Long last = records.keys.get(key);
+      if (last != null && last.longValue() == position) {
+        try {
+          snapshot.put(descriptor, key, value, metadata);
+        } catch (IOException e) {
+          throw new CompactionFailedException(e);
+        }
+      }
+    }
+
+    @Override
+    public void destroy(final StorageDescriptor descriptor) {
+      // superseded records are dropped, so the destroy has nothing left to undo
+      sequence++;
+    }
+
+    @Override
+    public void remove(final StorageDescriptor descriptor, final ByteBuffer key) {
+      // as for destroy
+      sequence++;
+    }
+
+    @Override
+    public void clear(final StorageDescriptor descriptor) {
+      // as for destroy
+      sequence++;
+    }
+  }
+
+  static class CompactionFailedException extends RuntimeException {
+    CompactionFailedException(final IOException cause) {
+      super(cause);
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import org.terracotta.corestorage.KeyValueStorage;
+
+import com.tc.exception.TCRuntimeException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link KeyValueStorage} that records every mutation of its delegate in the {@link RestartLog}.
+ * <p>
+ * A mutation and its log record are made under the same stripe lock, so that the records of any one key are logged
+ * in the order in which they were applied.
+ */
+class RestartableKeyValueStorage<K, V> implements KeyValueStorage<K, V> {
+  private static final int             STRIPES = 64;
+
+  private final StorageDescriptor      descriptor;
+  private final KeyValueStorage<K, V>  delegate;
+  private final RestartLog             log;
+  private final ReentrantLock[]        locks   = new ReentrantLock[STRIPES];
+
+  RestartableKeyValueStorage(final StorageDescriptor descriptor, final KeyValueStorage<K, V> delegate,
+                             final RestartLog log) {
+    this.descriptor = descriptor;
+    this.delegate = delegate;
+    this.log = log;
+    for (int i = 0; i < STRIPES; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  StorageDescriptor getDescriptor() {
+    return descriptor;
+  }
+
+  KeyValueStorage<K, V> getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return delegate.keySet();
+  }
+
+  @Override
+  public Collection<V> values() {
+    return delegate.values();
+  }
+
+  @Override
+  public long size() {
+    return delegate.size();
+  }
+
+  @Override
+  public void put(final K key, final V value) {
+    byte[] k = descriptor.encodeKey(key);
+    byte[] v = descriptor.encodeValue(value);
+    ReentrantLock lock = lockFor(key);
+    lock.lock();
+    try {
+      delegate.put(key, value);
+      log.put(descriptor, k, v, (byte) 0);
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(final K key, final V value, final byte metadata) {
+    byte[] k = descriptor.encodeKey(key);
+    byte[] v = descriptor.encodeValue(value);
+    ReentrantLock lock = lockFor(key);
+    lock.lock();
+    try {
+      delegate.put(key, value, metadata);
+      log.put(descriptor, k, v, metadata);
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V get(final K key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  public boolean remove(final K key) {
+    ReentrantLock lock = lockFor(key);
+    lock.lock();
+    try {
+      if (delegate.remove(key)) {
+        log.remove(descriptor, descriptor.encodeKey(key));
+        return true;
+      }
+      return false;
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the keys stripe by stripe, taking each stripe lock once, and logs the whole batch as a single commit when
+   * called outside a transaction.
+   */
+  @Override
+  public void removeAll(final Collection<K> keys) {
+    final List<List<K>> byStripe = new ArrayList<List<K>>(STRIPES);
+    for (int i = 0; i < STRIPES; i++) {
+      byStripe.add(null);
+    }
+    for (K key : keys) {
+      final int stripe = stripeFor(key);
+      List<K> stripeKeys = byStripe.get(stripe);
+      if (stripeKeys == null) {
+        stripeKeys = new ArrayList<K>();
+        byStripe.set(stripe, stripeKeys);
+      }
+      stripeKeys.add(key);
+    }
+
+    log.begin();
+    try {
+      for (int i = 0; i < STRIPES; i++) {
+        final List<K> stripeKeys = byStripe.get(i);
+        if (stripeKeys == null) {
+          continue;
+        }
+        locks[i].lock();
+        try {
+          for (K key : stripeKeys) {
+            if (delegate.remove(key)) {
+              log.remove(descriptor, descriptor.encodeKey(key));
+            }
+          }
+        } finally {
+          locks[i].unlock();
+        }
+      }
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    } finally {
+      commit();
+    }
+  }
+
+  private void commit() {
+    try {
+      log.commit();
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    }
+  }
+
+  @Override
+  public boolean containsKey(final K key) {
+    return delegate.containsKey(key);
+  }
+
+  @Override
+  public void clear() {
+    for (ReentrantLock lock : locks) {
+      lock.lock();
+    }
+    try {
+      delegate.clear();
+      log.clear(descriptor);
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    } finally {
+      for (ReentrantLock lock : locks) {
+        lock.unlock();
+      }
+    }
+  }
+
+  private ReentrantLock lockFor(final Object key) {
+    return locks[stripeFor(key)];
+  }
+
+  private static int stripeFor(final Object key) {
+    int h = key.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return h & (STRIPES - 1);
+  }
+
+  @Override
+  public String toString() {
+    return "RestartableKeyValueStorage[" + descriptor.getAlias() + "]";
+  }
+}
@@ -0,0 +1,123 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import com.tc.exception.TCRuntimeException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The {@link org.terracotta.corestorage.StorageManager#getProperties() storage properties}. They are read before the
+ * storage manager is started and change rarely, so they are kept in their own file, rewritten in full on every
+ * change, rather than in the {@link RestartLog}.
+ */
+class RestartableProperties extends AbstractMap<String, String> {
+  private final Map<String, String> delegate;
+  private final File                file;
+
+  RestartableProperties(final Map<String, String> delegate, final File file) {
+    this.delegate = delegate;
+    this.file = file;
+    try {
+      load();
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    }
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return Collections.unmodifiableMap(delegate).entrySet();
+  }
+
+  @Override
+  public String get(final Object key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return delegate.containsKey(key);
+  }
+
+  @Override
+  public synchronized String put(final String key, final String value) {
+    String old = delegate.put(key, value);
+    store();
+    return old;
+  }
+
+  @Override
+  public synchronized String remove(final Object key) {
+    String old = delegate.remove(key);
+    if (old != null) {
+      store();
+    }
+    return old;
+  }
+
+  @Override
+  public synchronized void clear() {
+    delegate.clear();
+    store();
+  }
+
+  private void load() throws IOException {
+    File dir = file.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) { throw new IOException("Unable to create directory " + dir); }
+    if (file.exists()) {
+      Properties props = new Properties();
+      FileInputStream in = new FileInputStream(file);
+      try {
+        props.load(in);
+      } finally {
+        in.close();
+      }
+      for (String name : props.stringPropertyNames()) {
+        delegate.put(name, props.getProperty(name));
+      }
+    }
+  }
+
+  private void store() {
+    Properties props = new Properties();
+    props.putAll(delegate);
+    File temp = new File(file.getPath() + ".tmp");
+    try {
+      FileOutputStream out = new FileOutputStream(temp);
+      try {
+        props.store(out, null);
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    }
+  }
+}
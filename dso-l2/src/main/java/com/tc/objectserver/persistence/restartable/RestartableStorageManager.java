@@ -0,0 +1,298 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import org.terracotta.corestorage.KeyValueStorage;
+import org.terracotta.corestorage.KeyValueStorageConfig;
+import org.terracotta.corestorage.StorageManager;
+import org.terracotta.corestorage.monitoring.MonitoredResource;
+
+import com.tc.exception.TCRuntimeException;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.util.concurrent.NamedThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link StorageManager} that makes the contents of an in-memory storage manager survive a restart. Every mutation
+ * is recorded in a {@link RestartLog} in the data directory, and the log is replayed into the delegate when the
+ * storage manager is started.
+ */
+public class RestartableStorageManager implements StorageManager {
+  private static final TCLogger                                        logger          = TCLogging
+                                                                                           .getLogger(RestartableStorageManager.class);
+  private static final String                                          PROPERTIES_FILE = "storage.properties";
+
+  private final StorageManager                                         delegate;
+  private final KeyValueStorageConfig<Object, Object>                  dynamicConfig;
+  private final RestartLog                                             log;
+  private final RestartableProperties                                  properties;
+  private final File                                                   propertiesFile;
+  private final ConcurrentMap<String, RestartableKeyValueStorage<?, ?>> storages        = new ConcurrentHashMap<String, RestartableKeyValueStorage<?, ?>>();
+  private final ExecutorService                                        compactor;
+  private final int                                                    recoveryThreads;
+
+  /**
+   * @param delegate the storage manager holding the live data
+   * @param dynamicConfig the configuration of the storages created through {@link #createKeyValueStorage}, used to
+   *        recreate them on recovery
+   * @param directory the directory holding the restart log
+   * @param recoveryThreads the number of threads the log is replayed into the delegate with on start
+   */
+  public RestartableStorageManager(final StorageManager delegate,
+                                   final KeyValueStorageConfig<Object, Object> dynamicConfig, final File directory,
+                                   final boolean fsync, final long compactionMinBytes, final double compactionRatio,
+                                   final int recoveryThreads) {
+    this.delegate = delegate;
+    this.dynamicConfig = dynamicConfig;
+    this.log = new RestartLog(directory, fsync, compactionMinBytes, compactionRatio);
+    this.propertiesFile = new File(directory, PROPERTIES_FILE);
+    this.properties = new RestartableProperties(delegate.getProperties(), propertiesFile);
+    this.compactor = Executors.newSingleThreadExecutor(new NamedThreadFactory("Restart log compactor"));
+    this.recoveryThreads = recoveryThreads;
+  }
+
+  @Override
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  @Override
+  public <K, V> KeyValueStorage<K, V> getKeyValueStorage(final String alias, final Class<K> keyClass,
+                                                         final Class<V> valueClass) {
+    RestartableKeyValueStorage<?, ?> storage = storages.get(alias);
+    if (storage == null) {
+      KeyValueStorage<K, V> kvs = delegate.getKeyValueStorage(alias, keyClass, valueClass);
+      if (kvs == null) { return null; }
+      storage = register(new StorageDescriptor(alias, keyClass, valueClass, false), kvs);
+    }
+    return (KeyValueStorage<K, V>) storage;
+  }
+
+  @Override
+  public <K, V> KeyValueStorage<K, V> createKeyValueStorage(final String alias, final KeyValueStorageConfig<K, V> config) {
+    KeyValueStorage<K, V> kvs = delegate.createKeyValueStorage(alias, config);
+    StorageDescriptor descriptor = new StorageDescriptor(alias, Object.class, Object.class, true);
+    try {
+      log.create(descriptor);
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    }
+    return (KeyValueStorage<K, V>) register(descriptor, kvs);
+  }
+
+  @Override
+  public void destroyKeyValueStorage(final String alias) {
+    RestartableKeyValueStorage<?, ?> storage = storages.remove(alias);
+    delegate.destroyKeyValueStorage(alias);
+    if (storage != null) {
+      try {
+        log.destroy(storage.getDescriptor());
+      } catch (IOException e) {
+        throw new TCRuntimeException(e);
+      }
+    }
+  }
+
+  @Override
+  public void begin() {
+    delegate.begin();
+    log.begin();
+  }
+
+  @Override
+  public void commit() {
+    delegate.commit();
+    try {
+      log.commit();
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    }
+    scheduleCompactionIfNeeded();
+  }
+
+  @Override
+  public Future<?> start() {
+    FutureTask<Void> startup = new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        delegate.start().get();
+        recover();
+        return null;
+      }
+    });
+    startup.run();
+    return startup;
+  }
+
+  private void recover() throws IOException {
+    if (recoveryThreads <= 1) {
+      log.recover(new RecoveryVisitor());
+      return;
+    }
+    ParallelLogRecordVisitor visitor = new ParallelLogRecordVisitor(new RecoveryVisitor(), recoveryThreads);
+    try {
+      log.recover(visitor);
+      visitor.drain();
+    } finally {
+      visitor.shutdown();
+    }
+  }
+
+  @Override
+  public void close() {
+    compactor.shutdown();
+    try {
+      if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.warn("Timed out waiting for the restart log compaction to finish");
+      }
+      log.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      logger.error("Failed to close the restart log", e);
+    } finally {
+      delegate.close();
+    }
+  }
+
+  /**
+   * Tags the transaction open on the calling thread with a mark, see {@link BackupPoint#getCommittedMark()}.
+   */
+  public void markCommitted(final long mark) {
+    try {
+      log.mark(mark);
+    } catch (IOException e) {
+      throw new TCRuntimeException(e);
+    }
+  }
+
+  /**
+   * Marks the current point of the restart log as the content of a backup, without holding up further mutations.
+   * Copying the returned files into an empty directory gives a directory this storage manager can be restarted from.
+   * They stay in place until {@link #endBackup()} is called.
+   */
+  public BackupPoint beginBackup() throws IOException {
+    BackupPoint point = log.beginBackup();
+    if (propertiesFile.exists()) {
+      point.getFiles().add(propertiesFile);
+    }
+    return point;
+  }
+
+  public void endBackup() {
+    log.endBackup();
+  }
+
+  @Override
+  public Collection<MonitoredResource> getMonitoredResources() {
+    return delegate.getMonitoredResources();
+  }
+
+  private <K, V> RestartableKeyValueStorage<K, V> register(final StorageDescriptor descriptor,
+                                                           final KeyValueStorage<K, V> kvs) {
+    RestartableKeyValueStorage<K, V> storage = new RestartableKeyValueStorage<K, V>(descriptor, kvs, log);
+    RestartableKeyValueStorage<?, ?> racer = storages.putIfAbsent(descriptor.getAlias(), storage);
+    return racer == null ? storage : (RestartableKeyValueStorage<K, V>) racer;
+  }
+
+  private void scheduleCompactionIfNeeded() {
+    if (log.needsCompaction() && !compactor.isShutdown()) {
+      compactor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            compact();
+          } catch (Exception e) {
+            logger.error("Restart log compaction failed, the log will keep growing until the next attempt", e);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Replaces the restart log files written so far with a snapshot of their live records, see
+   * {@link RestartLog#compact()}.
+   */
+  void compact() throws IOException {
+    log.compact();
+  }
+
+  private KeyValueStorage<Object, Object> delegateFor(final StorageDescriptor descriptor) {
+    RestartableKeyValueStorage<?, ?> storage = storages.get(descriptor.getAlias());
+    if (storage == null) {
+      KeyValueStorage<?, ?> kvs = delegate.getKeyValueStorage(descriptor.getAlias(), descriptor.getKeyClass(),
+                                                              descriptor.getValueClass());
+      if (kvs == null) {
+        if (!descriptor.isDynamic()) { throw new IllegalStateException("Restart log references unknown storage "
+                                                                       + descriptor); }
+        kvs = delegate.createKeyValueStorage(descriptor.getAlias(), dynamicConfig);
+      }
+      storage = register(descriptor, kvs);
+    }
+    return (KeyValueStorage<Object, Object>) storage.getDelegate();
+  }
+
+  /**
+   * Applies the recovered records directly to the delegate, so that nothing is logged a second time. Puts and removes
+   * may be applied from several threads at once, see {@link ParallelLogRecordVisitor}.
+   */
+  private class RecoveryVisitor implements LogRecordVisitor {
+    @Override
+    public void create(final StorageDescriptor descriptor) {
+      delegateFor(descriptor);
+    }
+
+    @Override
+    public void destroy(final StorageDescriptor descriptor) {
+      if (storages.remove(descriptor.getAlias()) != null) {
+        delegate.destroyKeyValueStorage(descriptor.getAlias());
+      }
+    }
+
+    @Override
+    public void put(final StorageDescriptor descriptor, final ByteBuffer key, final ByteBuffer value,
+                    final byte metadata) {
+      delegateFor(descriptor).put(descriptor.decodeKey(key), descriptor.decodeValue(value), metadata);
+    }
+
+    @Override
+    public void remove(final StorageDescriptor descriptor, final ByteBuffer key) {
+      delegateFor(descriptor).remove(descriptor.decodeKey(key));
+    }
+
+    @Override
+    public void clear(final StorageDescriptor descriptor) {
+      delegateFor(descriptor).clear();
+    }
+
+  }
+}
@@ -0,0 +1,93 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Identifies a key-value storage in the restart log, together with the codecs used for its keys and values.
+ * Dynamic storages are the ones created at runtime through
+ * {@link org.terracotta.corestorage.StorageManager#createKeyValueStorage}, and have to be recreated on recovery.
+ */
+final class StorageDescriptor {
+  private final String     alias;
+  private final Class<?>   keyClass;
+  private final Class<?>   valueClass;
+  private final boolean    dynamic;
+  private final ValueCodec keyCodec;
+  private final ValueCodec valueCodec;
+
+  StorageDescriptor(final String alias, final Class<?> keyClass, final Class<?> valueClass, final boolean dynamic) {
+    this.alias = alias;
+    this.keyClass = keyClass;
+    this.valueClass = valueClass;
+    this.dynamic = dynamic;
+    this.keyCodec = ValueCodec.forClass(keyClass);
+    this.valueCodec = ValueCodec.forClass(valueClass);
+  }
+
+  static StorageDescriptor forNames(final String alias, final String keyClass, final String valueClass,
+                                    final boolean dynamic) {
+    try {
+      return new StorageDescriptor(alias, loadClass(keyClass), loadClass(valueClass), dynamic);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Restart log references unknown class for storage " + alias, e);
+    }
+  }
+
+  private static Class<?> loadClass(final String name) throws ClassNotFoundException {
+    return Class.forName(name, false, StorageDescriptor.class.getClassLoader());
+  }
+
+  String getAlias() {
+    return alias;
+  }
+
+  Class<?> getKeyClass() {
+    return keyClass;
+  }
+
+  Class<?> getValueClass() {
+    return valueClass;
+  }
+
+  boolean isDynamic() {
+    return dynamic;
+  }
+
+  byte[] encodeKey(final Object key) {
+    return keyCodec.encode(key);
+  }
+
+  byte[] encodeValue(final Object value) {
+    return valueCodec.encode(value);
+  }
+
+  Object decodeKey(final ByteBuffer key) {
+    return keyCodec.decode(key.duplicate());
+  }
+
+  Object decodeValue(final ByteBuffer value) {
+    return valueCodec.decode(value.duplicate());
+  }
+
+  @Override
+  public String toString() {
+    return "StorageDescriptor[" + alias + ", " + keyClass.getName() + " -> " + valueClass.getName()
+           + (dynamic ? ", dynamic]" : "]");
+  }
+}
@@ -0,0 +1,101 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import com.tc.objectserver.persistence.LiteralSerializer;
+import com.tc.util.AbstractIdentifier;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes keys and values of a {@link org.terracotta.corestorage.KeyValueStorage} for the restart log. The codec is
+ * chosen from the declared class of the storage so that records do not need to carry any type information.
+ */
+abstract class ValueCodec {
+
+  static final ValueCodec BYTES = new ValueCodec() {
+    @Override
+    byte[] encode(final Object o) {
+      return (byte[]) o;
+    }
+
+    @Override
+    Object decode(final ByteBuffer buffer) {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+  };
+
+  static final ValueCodec LITERAL = new ValueCodec() {
+    @Override
+    byte[] encode(final Object o) {
+      ByteBuffer buffer = LiteralSerializer.INSTANCE.transform(o);
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+
+    @Override
+    Object decode(final ByteBuffer buffer) {
+      return LiteralSerializer.INSTANCE.recover(buffer);
+    }
+  };
+
+  abstract byte[] encode(Object o);
+
+  abstract Object decode(ByteBuffer buffer);
+
+  static ValueCodec forClass(final Class<?> c) {
+    if (c == byte[].class) {
+      return BYTES;
+    } else if (AbstractIdentifier.class.isAssignableFrom(c)) {
+      return new IdentifierCodec(c);
+    } else {
+      return LITERAL;
+    }
+  }
+
+  private static class IdentifierCodec extends ValueCodec {
+    private final Constructor<?> constructor;
+
+    IdentifierCodec(final Class<?> c) {
+      try {
+        this.constructor = c.getConstructor(long.class);
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException("Identifier type " + c.getName() + " has no (long) constructor", e);
+      }
+    }
+
+    @Override
+    byte[] encode(final Object o) {
+      ByteBuffer buffer = ByteBuffer.allocate(LiteralSerializer.LONG_SIZE);
+      buffer.putLong(((AbstractIdentifier) o).toLong());
+      return buffer.array();
+    }
+
+    @Override
+    Object decode(final ByteBuffer buffer) {
+      try {
+        return constructor.newInstance(buffer.getLong());
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+}
@@ -18,11 +18,13 @@ package com.tc.stats;
 
 import org.apache.commons.collections.set.ListOrderedSet;
 
+import com.tc.async.api.StageManager;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.management.RemoteManagement;
 import com.tc.management.beans.L2MBeanNames;
 import com.tc.net.NodeID;
+import com.tc.net.core.TCConnectionManager;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.transport.ConnectionPolicy;
 import com.tc.object.ObjectID;
@@ -103,11 +105,13 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
   private final IndexManager                           indexManager;
   private final ConnectionPolicy                       connectionPolicy;
   private final RemoteManagement                       remoteManagement;
+  private final StageManager                           stageManager;
+  private final TCConnectionManager                    connectionManager;
 
   public DSO(final ServerManagementContext managementContext, final ServerConfigurationContext configContext,
              final MBeanServer mbeanServer, final GCStatsEventPublisher gcStatsPublisher,
              TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider, OffheapStats offheapStats,
-             StorageDataStats storageStats)
+             StorageDataStats storageStats, StageManager stageManager, TCConnectionManager connectionManager)
       throws NotCompliantMBeanException {
     super(DSOMBean.class);
     try {
@@ -128,6 +132,8 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     this.operatorEventHistoryProvider = operatorEventHistoryProvider;
     this.offheapStats = offheapStats;
     this.storageStats = storageStats;
+    this.stageManager = stageManager;
+    this.connectionManager = connectionManager;
     this.connectionPolicy = managementContext.getConnectionPolicy();
     this.remoteManagement = managementContext.getRemoteManagement();
 
@@ -817,6 +823,11 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     return offheapStats.getOffheapUsedSize();
   }
 
+  @Override
+  public long getOffheapReclaimedSize() {
+    return offheapStats.getOffheapReclaimedSize();
+  }
+
   @Override
   public int getActiveLicensedClientCount() {
     return connectionPolicy.getNumberOfActiveConnections();
@@ -842,6 +853,16 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     return storageStats.getStorageStats();
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencies() {
+    return stageManager.getLatencyStats();
+  }
+
+  @Override
+  public Map<String, Long> getConnectionStats() {
+    return connectionManager.getConnectionStats();
+  }
+
   @Override
   public RemoteManagement getRemoteManagement() {
     return remoteManagement;
@@ -87,6 +87,18 @@ public interface DSOMBean extends DSOStats, OffheapStats, StorageDataStats, DGCM
 
   int getLiveObjectCount();
 
+  /**
+   * @return queue wait and service time percentiles in microseconds per SEDA stage and stage worker, empty unless stage
+   *         latency monitoring is enabled
+   */
+  Map<String, Map<String, Long>> getStageLatencies();
+
+  /**
+   * @return write coalescing and wire framing figures over the client connections, see
+   *         {@link com.tc.net.core.TCConnectionManager#getConnectionStats()}
+   */
+  Map<String, Long> getConnectionStats();
+
   boolean isResident(NodeID node, ObjectID oid);
 
   Map<ObjectName, Exception> setAttribute(Set<ObjectName> onSet, String attrName, Object attrValue);
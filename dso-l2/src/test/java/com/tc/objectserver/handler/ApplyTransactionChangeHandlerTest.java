@@ -20,12 +20,15 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
@@ -56,6 +59,7 @@ import com.tc.objectserver.impl.ObjectInstanceMonitorImpl;
 import com.tc.objectserver.locks.LockManager;
 import com.tc.objectserver.locks.NotifiedWaiters;
 import com.tc.objectserver.locks.ServerLock;
+import com.tc.objectserver.managedobject.ApplyTransactionInfo;
 import com.tc.objectserver.tx.ServerTransaction;
 import com.tc.objectserver.tx.ServerTransactionImpl;
 import com.tc.objectserver.tx.ServerTransactionManager;
@@ -64,10 +68,12 @@ import com.tc.objectserver.tx.TxnObjectGrouping;
 import com.tc.util.SequenceID;
 import com.tc.util.concurrent.Runners;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import org.mockito.ArgumentMatcher;
@@ -80,6 +86,9 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
   private ArgumentCaptor<NotifiedWaiters> notifiedWaitersArgumentCaptor;
   private ServerEventBuffer               serverEventBuffer;
   private ClientChannelMonitor            clientChannelMonitor;
+  private Transaction                     persistenceTransaction;
+  private ServerTransactionManager        transactionManager;
+  private TransactionalObjectManager      txnObjectManager;
 
   @Override
   public void setUp() throws Exception {
@@ -88,7 +97,7 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
     this.clientChannelMonitor = mock(ClientChannelMonitor.class);
     this.notifiedWaitersArgumentCaptor = ArgumentCaptor.forClass(NotifiedWaiters.class);
     TransactionProvider persistenceTransactionProvider = mock(TransactionProvider.class);
-    Transaction persistenceTransaction = mock(Transaction.class);
+    this.persistenceTransaction = mock(Transaction.class);
     when(persistenceTransactionProvider.newTransaction()).thenReturn(persistenceTransaction);
 
     this.handler = new ApplyTransactionChangeHandler(new ObjectInstanceMonitorImpl(),
@@ -100,8 +109,10 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
     Stage broadcastStage = mock(Stage.class);
     when(broadcastStage.getSink()).thenReturn(broadcastSink);
     TestServerConfigurationContext context = new TestServerConfigurationContext();
-    context.transactionManager = mock(ServerTransactionManager.class);
-    context.txnObjectManager = mock(TransactionalObjectManager.class);
+    this.transactionManager = mock(ServerTransactionManager.class);
+    this.txnObjectManager = mock(TransactionalObjectManager.class);
+    context.transactionManager = this.transactionManager;
+    context.txnObjectManager = this.txnObjectManager;
     context.addStage(ServerConfigurationContext.BROADCAST_CHANGES_STAGE, broadcastStage);
     context.addStage(ServerConfigurationContext.COMMIT_CHANGES_STAGE, mock(Stage.class));
     context.garbageCollectionManager = mock(GarbageCollectionManager.class);
@@ -124,6 +135,36 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
     verifyNotifies(tx);
   }
 
+  public void testBatchIsCommittedOnce() throws Exception {
+    commitEveryTransaction();
+    ServerTransaction tx = createServerTransaction();
+    TxnObjectGrouping grouping = new TxnObjectGrouping(tx.getServerTransactionID());
+    this.handler.handleEvents(Arrays.asList(new ApplyTransactionContext(tx, grouping, true, Collections.EMPTY_SET),
+                                            new ApplyTransactionContext(tx, grouping, true, Collections.EMPTY_SET)));
+    verify(persistenceTransaction, times(1)).commit();
+    verify(transactionManager, times(1)).commit(any(Collection.class), any(Map.class),
+                                                any(Collection.class));
+  }
+
+  public void testSingleEventsAreCommittedEachTime() throws Exception {
+    commitEveryTransaction();
+    ServerTransaction tx = createServerTransaction();
+    TxnObjectGrouping grouping = new TxnObjectGrouping(tx.getServerTransactionID());
+    this.handler.handleEvent(new ApplyTransactionContext(tx, grouping, true, Collections.EMPTY_SET));
+    this.handler.handleEvent(new ApplyTransactionContext(tx, grouping, true, Collections.EMPTY_SET));
+    verify(persistenceTransaction, times(2)).commit();
+  }
+
+  private void commitEveryTransaction() {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((ApplyTransactionInfo) invocation.getArguments()[0]).setCommitNow(true);
+        return null;
+      }
+    }).when(txnObjectManager).applyTransactionComplete(any(ApplyTransactionInfo.class));
+  }
+
   private void verifyNotifies(ServerTransaction tx) {
     verify(lockManager, times(tx.getNumApplicationTxn())).notify(any(LockID.class), any(ClientID.class), any(ThreadID.class),
         any(ServerLock.NotifyAction.class), any(NotifiedWaiters.class));
@@ -0,0 +1,126 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.impl;
+
+import org.terracotta.corestorage.ImmutableKeyValueStorageConfig;
+import org.terracotta.corestorage.KeyValueStorage;
+import org.terracotta.corestorage.KeyValueStorageConfig;
+import org.terracotta.corestorage.heap.HeapStorageManager;
+
+import com.tc.async.api.Sink;
+import com.tc.objectserver.api.BackupManager.BackupStatus;
+import com.tc.objectserver.persistence.restartable.RestartableStorageManager;
+import com.tc.test.TCTestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+
+public class RestartableBackupManagerTest extends TCTestCase {
+  private static final KeyValueStorageConfig<Object, Object> DYNAMIC_CONFIG = ImmutableKeyValueStorageConfig
+                                                                                .builder(Object.class, Object.class)
+                                                                                .build();
+
+  private File                      directory;
+  private File                      backupPath;
+  private RestartableStorageManager manager;
+  private RestartableBackupManager  backupManager;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    directory = new File(getTempDirectory(), "restart-log");
+    backupPath = new File(getTempDirectory(), "backups");
+    manager = start(directory);
+    backupManager = new RestartableBackupManager(manager, backupPath, mock(Sink.class), 0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    manager.close();
+    super.tearDown();
+  }
+
+  public void testBackupHoldsCommittedTransactions() throws Exception {
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    for (long gid = 1; gid <= 5; gid++) {
+      manager.begin();
+      objects.put(gid, new byte[] { 1 });
+      manager.markCommitted(gid);
+      manager.commit();
+    }
+    manager.getProperties().put("state", "ACTIVE");
+    Set<String> expected = new HashSet<String>(Arrays.asList(directory.list()));
+    expected.add(RestartableBackupManager.MANIFEST);
+
+    // applied but not yet committed when the backup is taken, so neither its data nor its id belong to the backup
+    manager.begin();
+    objects.put(6L, new byte[] { 1 });
+    manager.markCommitted(6);
+    backupManager.runBackup("backup", new File(backupPath, "backup"));
+    manager.commit();
+
+    assertEquals(BackupStatus.COMPLETE, backupManager.getBackupStatus("backup"));
+    File target = new File(backupPath, "backup");
+    assertEquals(expected, new HashSet<String>(Arrays.asList(target.list())));
+    assertEquals("5", readManifest(target).getProperty(RestartableBackupManager.GLOBAL_TXN_ID));
+
+    RestartableStorageManager restored = start(target);
+    try {
+      assertEquals("ACTIVE", restored.getProperties().get("state"));
+      KeyValueStorage<Long, byte[]> restoredObjects = restored.getKeyValueStorage("objects", Long.class, byte[].class);
+      assertEquals(5, restoredObjects.size());
+      assertNull(restoredObjects.get(6L));
+    } finally {
+      restored.close();
+    }
+  }
+
+  public void testNothingCommittedSinceStart() throws Exception {
+    backupManager.runBackup("empty", new File(backupPath, "empty"));
+    assertEquals(BackupStatus.COMPLETE, backupManager.getBackupStatus("empty"));
+    assertEquals("-1", readManifest(new File(backupPath, "empty")).getProperty(RestartableBackupManager.GLOBAL_TXN_ID));
+  }
+
+  private static Properties readManifest(final File target) throws Exception {
+    Properties manifest = new Properties();
+    FileInputStream in = new FileInputStream(new File(target, RestartableBackupManager.MANIFEST));
+    try {
+      manifest.load(in);
+    } finally {
+      in.close();
+    }
+    return manifest;
+  }
+
+  private static RestartableStorageManager start(final File dir) throws Exception {
+    Map<String, KeyValueStorageConfig<?, ?>> configs = new HashMap<String, KeyValueStorageConfig<?, ?>>();
+    configs.put("objects", ImmutableKeyValueStorageConfig.builder(Long.class, byte[].class).build());
+    RestartableStorageManager storageManager = new RestartableStorageManager(new HeapStorageManager(configs),
+                                                                             DYNAMIC_CONFIG, dir, false,
+                                                                             Long.MAX_VALUE, 0.0, 1);
+    storageManager.start().get();
+    return storageManager;
+  }
+}
@@ -0,0 +1,131 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.managedobject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.terracotta.corestorage.KeyValueStorage;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.core.api.ManagedObject;
+import com.tc.objectserver.persistence.HeapStorageManagerFactory;
+import com.tc.objectserver.persistence.Persistor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ObjectOutputStream} framing previously used by ObjectMap with the binary layout of
+ * {@link ManagedObjectSerializer#serialize(ManagedObject)} for a server map.
+ * <p>
+ * Map entries live in the map's own key/value storage, so the entry count mostly shows that the size of the managed
+ * object record (and the cost of the codec) does not grow with the map. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=<this class>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ManagedObjectSerializationBenchmark {
+
+  @Param({ "10000", "100000", "1000000" })
+  private int                     entries;
+
+  private Persistor               persistor;
+  private ManagedObjectSerializer serializer;
+  private ManagedObject           managedObject;
+  private byte[]                  objectStreamBytes;
+  private byte[]                  binaryBytes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    ManagedObjectStateFactory.disableSingleton(true);
+    persistor = new Persistor(HeapStorageManagerFactory.INSTANCE);
+    persistor.start();
+    ManagedObjectStateFactory.createInstance(new NullManagedObjectChangeListenerProvider(), persistor);
+
+    final ObjectID id = new ObjectID(1);
+    final ConcurrentDistributedServerMapManagedObjectState state = new ConcurrentDistributedServerMapManagedObjectState(
+        0, id, persistor.getPersistentObjectFactory());
+    final KeyValueStorage<Object, Object> map = persistor.getPersistentObjectFactory().getKeyValueStorage(id, false);
+    for (int i = 0; i < entries; i++) {
+      map.put("key-" + i, new CDSMValue(new ObjectID(1000L + i), i, i, 0, 0, i));
+    }
+
+    final ManagedObjectImpl mo = new ManagedObjectImpl(id, persistor.getManagedObjectPersistor());
+    mo.setDeserializedState(1, state);
+    managedObject = mo;
+    serializer = new ManagedObjectSerializer(new ManagedObjectStateSerializer(), persistor.getManagedObjectPersistor());
+    objectStreamBytes = objectStreamSerialize();
+    binaryBytes = binarySerialize();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    persistor.close();
+    ManagedObjectStateFactory.disableSingleton(false);
+  }
+
+  @Benchmark
+  public byte[] objectStreamSerialize() throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+    try {
+      serializer.serializeTo(managedObject, out);
+    } finally {
+      out.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] binarySerialize() throws Exception {
+    return serializer.serialize(managedObject);
+  }
+
+  @Benchmark
+  public Object objectStreamDeserialize() throws Exception {
+    return serializer.deserializeFrom(new ObjectInputStream(new ByteArrayInputStream(objectStreamBytes)));
+  }
+
+  @Benchmark
+  public Object binaryDeserialize() throws Exception {
+    return serializer.deserialize(binaryBytes);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(ManagedObjectSerializationBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -16,6 +16,8 @@
  */
 package com.tc.objectserver.managedobject;
 
+import org.terracotta.corestorage.KeyValueStorage;
+
 import com.tc.io.serializer.TCObjectInputStream;
 import com.tc.io.serializer.TCObjectOutputStream;
 import com.tc.object.LogicalOperation;
@@ -31,6 +33,8 @@ import com.tc.objectserver.persistence.Persistor;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -38,23 +42,23 @@ public class ManagedObjectSerializerTest extends TestCase {
 
   private ObjectID                     id;
   private ManagedObjectStateSerializer stateSerializer;
+  private Persistor                    persistor;
+  private ManagedObjectSerializer      mos;
 
-  public void test() throws Exception {
+  @Override
+  protected void setUp() throws Exception {
     ManagedObjectStateFactory.disableSingleton(true);
-    Persistor persistor = new Persistor(HeapStorageManagerFactory.INSTANCE);
+    this.persistor = new Persistor(HeapStorageManagerFactory.INSTANCE);
     persistor.start();
-    
+
     ManagedObjectStateFactory.createInstance(new NullManagedObjectChangeListenerProvider(), persistor);
     this.stateSerializer = new ManagedObjectStateSerializer();
     this.id = new ObjectID(1);
+    this.mos = new ManagedObjectSerializer(this.stateSerializer, persistor.getManagedObjectPersistor());
+  }
 
-    final ManagedObjectSerializer mos = new ManagedObjectSerializer(this.stateSerializer, persistor.getManagedObjectPersistor());
-    final ManagedObjectImpl mo = new ManagedObjectImpl(this.id, persistor.getManagedObjectPersistor());
-    assertTrue(mo.isDirty());
-    assertTrue(mo.isNew());
-    final TestDNA dna = newDNA(1);
-    final ObjectInstanceMonitor imo = new ObjectInstanceMonitorImpl();
-    mo.apply(dna, new TransactionID(1), new ApplyTransactionInfo(), imo, false);
+  public void test() throws Exception {
+    final ManagedObjectImpl mo = newManagedObject();
 
     final ByteArrayOutputStream baout = new ByteArrayOutputStream();
     final TCObjectOutputStream out = new TCObjectOutputStream(baout);
@@ -69,6 +73,78 @@ public class ManagedObjectSerializerTest extends TestCase {
     assertTrue(mo.isEqual(mo2));
   }
 
+  public void testBinaryFormat() throws Exception {
+    final ManagedObjectImpl mo = newManagedObject();
+
+    final byte[] data = mos.serialize(mo);
+    assertEquals(ManagedObjectSerializer.BINARY_FORMAT_V1, data[0]);
+    final ManagedObject mo2 = mos.deserialize(data);
+
+    assertFalse(mo2.isDirty());
+    mo.setIsDirty(false);
+    assertNotSame(mo, mo2);
+    assertTrue(mo.isEqual(mo2));
+    // the reused buffer must not leak bytes from one object into the next
+    assertTrue(Arrays.equals(data, mos.serialize(mo)));
+  }
+
+  public void testReadsObjectStreamFormat() throws Exception {
+    final ManagedObjectImpl mo = newManagedObject();
+
+    final ByteArrayOutputStream baout = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(baout);
+    mos.serializeTo(mo, out);
+    out.close();
+    final ManagedObject mo2 = mos.deserialize(baout.toByteArray());
+
+    mo.setIsDirty(false);
+    assertTrue(mo.isEqual(mo2));
+  }
+
+  public void testCompressedFormat() throws Exception {
+    final ManagedObjectImpl mo = new ManagedObjectImpl(this.id, persistor.getManagedObjectPersistor());
+    mo.apply(newDNA(50), new TransactionID(1), new ApplyTransactionInfo(), new ObjectInstanceMonitorImpl(), false);
+
+    final byte[] data = mos.serialize(mo);
+    final byte[] compressed = ManagedObjectSerializer.compress(data);
+    assertNotNull(compressed);
+    assertTrue(compressed.length < data.length / 2);
+    assertTrue(ManagedObjectSerializer.isCompressed(compressed));
+    assertEquals(ManagedObjectSerializer.stateTypeOf(data), ManagedObjectSerializer.stateTypeOf(compressed));
+    assertNull(ManagedObjectSerializer.compress(compressed));
+
+    mo.setIsDirty(false);
+    assertTrue(mo.isEqual(mos.deserialize(compressed)));
+  }
+
+  public void testServerMapRecordDoesNotGrowWithEntries() throws Exception {
+    final ObjectID mapId = new ObjectID(2);
+    final ConcurrentDistributedServerMapManagedObjectState state = new ConcurrentDistributedServerMapManagedObjectState(
+        0, mapId, persistor.getPersistentObjectFactory());
+    final ManagedObjectImpl mo = new ManagedObjectImpl(mapId, persistor.getManagedObjectPersistor());
+    mo.setDeserializedState(1, state);
+    final int emptySize = mos.serialize(mo).length;
+
+    // entries are kept one per key in the map's own storage, not in the managed object record
+    final KeyValueStorage<Object, Object> entries = persistor.getPersistentObjectFactory().getKeyValueStorage(mapId, false);
+    for (int i = 0; i < 1000; i++) {
+      entries.put("key" + i, new CDSMValue(new ObjectID(1000 + i)));
+    }
+    assertEquals(emptySize, mos.serialize(mo).length);
+    assertEquals(1000, ((ConcurrentDistributedServerMapManagedObjectState) mos.deserialize(mos.serialize(mo))
+        .getManagedObjectState()).getSize());
+  }
+
+  private ManagedObjectImpl newManagedObject() throws Exception {
+    final ManagedObjectImpl mo = new ManagedObjectImpl(this.id, persistor.getManagedObjectPersistor());
+    assertTrue(mo.isDirty());
+    assertTrue(mo.isNew());
+    final TestDNA dna = newDNA(1);
+    final ObjectInstanceMonitor imo = new ObjectInstanceMonitorImpl();
+    mo.apply(dna, new TransactionID(1), new ApplyTransactionInfo(), imo, false);
+    return mo;
+  }
+
   private TestDNA newDNA(final int fieldSetCount) {
     final TestDNACursor cursor = new TestDNACursor();
     cursor.addArrayAction(new Object[] { new ObjectID(5000) });
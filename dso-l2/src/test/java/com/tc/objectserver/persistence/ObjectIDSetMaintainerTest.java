@@ -0,0 +1,79 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.corestorage.Retriever;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.core.api.ManagedObjectState;
+import com.tc.objectserver.managedobject.ManagedObjectStateStaticConfig;
+import com.tc.objectserver.persistence.ObjectIDSetMaintainer.StorageType;
+import com.tc.test.TCTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ObjectIDSetMaintainerTest extends TCTestCase {
+  private static final byte LEAF = ManagedObjectStateStaticConfig.SERIALIZED_CLUSTER_OBJECT.getStateObjectType();
+  private static final byte NODE = ManagedObjectState.MAP_TYPE;
+
+  private ObjectIDSetMaintainer maintainer;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    maintainer = new ObjectIDSetMaintainer();
+  }
+
+  public void testStorageTypeFollowsMutations() throws Exception {
+    maintainer.added(retriever(1L), retriever(new byte[0]), LEAF);
+    maintainer.added(retriever(2L), retriever(new byte[0]), NODE);
+
+    assertEquals(StorageType.LEAF, maintainer.storageTypeOf(new ObjectID(1)));
+    assertEquals(StorageType.NODE, maintainer.storageTypeOf(new ObjectID(2)));
+    assertEquals(StorageType.UNKNOWN, maintainer.storageTypeOf(new ObjectID(3)));
+
+    maintainer.removed(retriever(1L));
+    maintainer.removed(retriever(2L));
+    assertEquals(StorageType.UNKNOWN, maintainer.storageTypeOf(new ObjectID(1)));
+    assertEquals(StorageType.UNKNOWN, maintainer.storageTypeOf(new ObjectID(2)));
+  }
+
+  public void testSplitByStorageType() throws Exception {
+    maintainer.added(retriever(1L), retriever(new byte[0]), LEAF);
+    maintainer.added(retriever(2L), retriever(new byte[0]), NODE);
+
+    List<Long> leaves = new ArrayList<Long>();
+    List<Long> nodes = new ArrayList<Long>();
+    List<Long> unknown = new ArrayList<Long>();
+    maintainer.splitByStorageType(Arrays.asList(new ObjectID(1), new ObjectID(2), new ObjectID(3)), leaves, nodes,
+                                  unknown);
+    assertEquals(Arrays.asList(1L), leaves);
+    assertEquals(Arrays.asList(2L), nodes);
+    assertEquals(Arrays.asList(3L), unknown);
+  }
+
+  private static <T> Retriever<T> retriever(final T value) {
+    return new Retriever<T>() {
+      @Override
+      public T retrieve() {
+        return value;
+      }
+    };
+  }
+}
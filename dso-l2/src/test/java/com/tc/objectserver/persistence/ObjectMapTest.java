@@ -0,0 +1,203 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.terracotta.corestorage.KeyValueStorage;
+import org.terracotta.corestorage.StorageManager;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.core.api.ManagedObject;
+import com.tc.objectserver.core.api.ManagedObjectState;
+import com.tc.objectserver.managedobject.SerializedClusterObjectState;
+import com.tc.objectserver.persistence.ObjectIDSetMaintainer.StorageType;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.test.TCTestCase;
+import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.ObjectIDSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ObjectMapTest extends TCTestCase {
+  private StorageManager                storageManager;
+  private KeyValueStorage<Long, byte[]> nodeObjects;
+  private KeyValueStorage<Long, byte[]> leafObjects;
+  private ObjectIDSetMaintainer         maintainer;
+  private ObjectMap                     objectMap;
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void setUp() throws Exception {
+    super.setUp();
+    storageManager = mock(StorageManager.class);
+    nodeObjects = mock(KeyValueStorage.class);
+    leafObjects = mock(KeyValueStorage.class);
+    when(storageManager.getKeyValueStorage("node_object_db", Long.class, byte[].class)).thenReturn(nodeObjects);
+    when(storageManager.getKeyValueStorage("leaf_object_db", Long.class, byte[].class)).thenReturn(leafObjects);
+    maintainer = mock(ObjectIDSetMaintainer.class);
+    objectMap = new ObjectMap(mock(ManagedObjectPersistor.class), storageManager, maintainer);
+  }
+
+  public void testRelocationBatchIsOneTransaction() throws Exception {
+    when(maintainer.storageTypeOf(new ObjectID(1))).thenReturn(StorageType.NODE);
+    when(maintainer.storageTypeOf(new ObjectID(2))).thenReturn(StorageType.NODE);
+    final byte[] first = binaryRecord(ManagedObjectState.MAP_TYPE);
+    final byte[] second = binaryRecord(ManagedObjectState.MAP_TYPE);
+    when(nodeObjects.get(1L)).thenReturn(first);
+    when(nodeObjects.get(2L)).thenReturn(second);
+
+    assertEquals(2, objectMap.relocate(Arrays.asList(new ObjectID(1), new ObjectID(2))));
+
+    InOrder inOrder = inOrder(storageManager, nodeObjects);
+    inOrder.verify(storageManager).begin();
+    inOrder.verify(nodeObjects).put(1L, first, ManagedObjectState.MAP_TYPE);
+    inOrder.verify(nodeObjects).put(2L, second, ManagedObjectState.MAP_TYPE);
+    inOrder.verify(storageManager).commit();
+  }
+
+  public void testRemoveAllProbesUnknownIdsInBothStorages() throws Exception {
+    doAnswer(new Answer<Void>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Void answer(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        ((Collection<Long>) args[1]).add(1L);
+        ((Collection<Long>) args[2]).add(2L);
+        ((Collection<Long>) args[3]).add(3L);
+        return null;
+      }
+    }).when(maintainer).splitByStorageType(any(Collection.class), any(Collection.class), any(Collection.class),
+                                           any(Collection.class));
+
+    objectMap.removeAll(Arrays.asList(new ObjectID(1), new ObjectID(2), new ObjectID(3)));
+
+    verify(leafObjects).removeAll(Arrays.asList(1L, 3L));
+    verify(nodeObjects).removeAll(Arrays.asList(2L, 3L));
+  }
+
+  public void testRemoveAllSkipsStoragesWithNothingToRemove() throws Exception {
+    doAnswer(new Answer<Void>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Void answer(InvocationOnMock invocation) {
+        ((Collection<Long>) invocation.getArguments()[2]).add(2L);
+        return null;
+      }
+    }).when(maintainer).splitByStorageType(any(Collection.class), any(Collection.class), any(Collection.class),
+                                           any(Collection.class));
+
+    objectMap.removeAll(Arrays.asList(new ObjectID(2)));
+
+    verify(nodeObjects).removeAll(Arrays.asList(2L));
+    verify(leafObjects, never()).removeAll(any(Collection.class));
+  }
+
+  public void testPutAllWritesEachObjectToItsStorage() throws Exception {
+    final ManagedObject leaf = managedObject(1, mock(SerializedClusterObjectState.class),
+                                             ManagedObjectState.TDC_SERIALIZED_ENTRY);
+    final ManagedObject node = managedObject(2, mock(ManagedObjectState.class), ManagedObjectState.MAP_TYPE);
+    final List<ManagedObject> batch = Arrays.asList(node, leaf);
+
+    objectMap.putAll(batch);
+
+    verify(leafObjects).put(eq(1L), any(byte[].class), eq(ManagedObjectState.TDC_SERIALIZED_ENTRY));
+    verify(nodeObjects).put(eq(2L), any(byte[].class), eq(ManagedObjectState.MAP_TYPE));
+    verify(leafObjects, never()).put(eq(2L), any(byte[].class), anyByte());
+    verify(nodeObjects, never()).put(eq(1L), any(byte[].class), anyByte());
+    // the batch never reads anything back
+    verify(leafObjects, never()).get(anyLong());
+    verify(nodeObjects, never()).get(anyLong());
+  }
+
+  public void testColdCompressionSkipsCompressedLeavesUntilWritten() throws Exception {
+    TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.L2_OFFHEAP_COLD_COMPRESSION_ENABLED, "true");
+    try {
+      objectMap = new ObjectMap(mock(ManagedObjectPersistor.class), storageManager, maintainer);
+    } finally {
+      TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.L2_OFFHEAP_COLD_COMPRESSION_ENABLED, "false");
+    }
+    when(maintainer.noReferencesObjectIDSnapshot()).thenAnswer(new Answer<ObjectIDSet>() {
+      @Override
+      public ObjectIDSet answer(InvocationOnMock invocation) {
+        return new BitSetObjectIDSet(Arrays.asList(new ObjectID(1), new ObjectID(2), new ObjectID(1000)));
+      }
+    });
+    when(leafObjects.get(1L)).thenReturn(binaryRecord(ManagedObjectState.TDC_SERIALIZED_ENTRY));
+    when(leafObjects.get(2L)).thenReturn(binaryRecord(ManagedObjectState.TDC_SERIALIZED_ENTRY));
+
+    ObjectIDSet cold = objectMap.coldObjectIDs();
+    assertEquals(3, cold.size());
+    objectMap.compress(Arrays.asList(new ObjectID(1), new ObjectID(2)));
+    verify(leafObjects).put(eq(1L), any(byte[].class), eq(ManagedObjectState.TDC_SERIALIZED_ENTRY));
+
+    // only the object compress() never looked at is still offered
+    cold = objectMap.coldObjectIDs();
+    assertEquals(1, cold.size());
+    assertTrue(cold.contains(new ObjectID(1000)));
+
+    // a write stores the object uncompressed again, so once it has gone cold it is offered again
+    objectMap.put(new ObjectID(2), managedObject(2, mock(SerializedClusterObjectState.class),
+                                                 ManagedObjectState.TDC_SERIALIZED_ENTRY));
+    assertFalse(objectMap.coldObjectIDs().contains(new ObjectID(2)));
+    cold = objectMap.coldObjectIDs();
+    assertEquals(2, cold.size());
+    assertTrue(cold.contains(new ObjectID(2)));
+    assertFalse(cold.contains(new ObjectID(1)));
+  }
+
+  public void testColdCompressionDisabled() throws Exception {
+    assertTrue(objectMap.coldObjectIDs().isEmpty());
+    objectMap.put(new ObjectID(2), managedObject(2, mock(SerializedClusterObjectState.class),
+                                                 ManagedObjectState.TDC_SERIALIZED_ENTRY));
+    verify(maintainer, never()).noReferencesObjectIDSnapshot();
+  }
+
+  private static ManagedObject managedObject(final long id, final ManagedObjectState state, final byte type) {
+    when(state.getType()).thenReturn(type);
+    final ManagedObject mo = mock(ManagedObject.class);
+    when(mo.getID()).thenReturn(new ObjectID(id));
+    when(mo.getManagedObjectState()).thenReturn(state);
+    return mo;
+  }
+
+  /**
+   * @return a record in the binary layout, whose header is the format byte, version and object id ahead of the state
+   *         type
+   */
+  private static byte[] binaryRecord(final byte type) {
+    final byte[] data = new byte[64];
+    data[0] = 1;
+    data[17] = type;
+    return data;
+  }
+}
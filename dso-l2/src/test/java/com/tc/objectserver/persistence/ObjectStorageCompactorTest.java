@@ -0,0 +1,102 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.corestorage.monitoring.MonitoredResource;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.api.ResourceManager;
+import com.tc.test.TCTestCase;
+import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.ObjectIDSet;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ObjectStorageCompactorTest extends TCTestCase {
+  private ManagedObjectPersistor persistor;
+  private ResourceManager        resourceManager;
+  private MonitoredResource      data;
+  private ObjectIDSet            ids;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    persistor = mock(ManagedObjectPersistor.class);
+    resourceManager = mock(ResourceManager.class);
+    data = mock(MonitoredResource.class);
+    when(data.getType()).thenReturn(MonitoredResource.Type.DATA);
+
+    ids = new BitSetObjectIDSet();
+    for (int i = 0; i < 5; i++) {
+      ids.add(new ObjectID(i));
+    }
+    when(persistor.snapshotObjectIDs()).thenReturn(ids);
+    when(persistor.relocateObjects(anyCollection())).thenReturn(2);
+    when(resourceManager.getState()).thenReturn(ResourceManager.State.NORMAL);
+  }
+
+  private ObjectStorageCompactor newCompactor() {
+    Collection<MonitoredResource> resources = Collections.singletonList(data);
+    return new ObjectStorageCompactor(persistor, resourceManager, resources, 1000, 0.3, 2, 1000);
+  }
+
+  public void testFragmentationThreshold() throws Exception {
+    ObjectStorageCompactor compactor = newCompactor();
+    when(data.getReserved()).thenReturn(100L);
+    when(data.getVital()).thenReturn(80L);
+    assertFalse(compactor.isFragmented());
+    when(data.getVital()).thenReturn(50L);
+    assertTrue(compactor.isFragmented());
+  }
+
+  public void testRelocatesInBatches() throws Exception {
+    newCompactor().compact();
+    verify(persistor, times(3)).relocateObjects(anyCollection());
+  }
+
+  public void testSkippedWhileRestricted() throws Exception {
+    when(resourceManager.getState()).thenReturn(ResourceManager.State.RESTRICTED);
+    when(data.getReserved()).thenReturn(100L);
+    when(data.getVital()).thenReturn(10L);
+    newCompactor().compactIfFragmented();
+    verify(persistor, never()).relocateObjects(anyCollection());
+  }
+
+  public void testCompressesColdObjectsInBatches() throws Exception {
+    when(persistor.snapshotColdObjectIDs()).thenReturn(ids);
+    when(persistor.compressObjects(anyCollection())).thenReturn(100L);
+    ObjectStorageCompactor compactor = newCompactor();
+    assertEquals(300L, compactor.compressColdObjects());
+    assertEquals(300L, compactor.getCompressedSize());
+  }
+
+  public void testReclaimedSizeAccumulates() throws Exception {
+    when(data.getReserved()).thenReturn(100L, 100L, 60L);
+    when(data.getVital()).thenReturn(10L);
+    ObjectStorageCompactor compactor = newCompactor();
+    compactor.compactIfFragmented();
+    assertEquals(40L, compactor.getReclaimedSize());
+  }
+}
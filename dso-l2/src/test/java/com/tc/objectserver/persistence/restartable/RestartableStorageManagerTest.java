@@ -0,0 +1,348 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence.restartable;
+
+import org.terracotta.corestorage.ImmutableKeyValueStorageConfig;
+import org.terracotta.corestorage.KeyValueStorage;
+import org.terracotta.corestorage.KeyValueStorageConfig;
+import org.terracotta.corestorage.StorageManager;
+import org.terracotta.corestorage.heap.HeapStorageManager;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.persistence.ObjectIDTransformer;
+import com.tc.test.TCTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RestartableStorageManagerTest extends TCTestCase {
+  private static final KeyValueStorageConfig<Object, Object> DYNAMIC_CONFIG = ImmutableKeyValueStorageConfig
+                                                                                .builder(Object.class, Object.class)
+                                                                                .build();
+
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    directory = new File(getTempDirectory(), "restart-log");
+  }
+
+  public void testRecoversAfterRestart() throws Exception {
+    StorageManager manager = start(Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    KeyValueStorage<String, ObjectID> roots = manager.getKeyValueStorage("roots", String.class, ObjectID.class);
+
+    manager.begin();
+    for (long i = 0; i < 100; i++) {
+      objects.put(i, new byte[] { (byte) i }, (byte) 1);
+    }
+    roots.put("root", new ObjectID(42));
+    manager.commit();
+    objects.remove(7L);
+    objects.put(8L, new byte[] { 1, 2, 3 });
+
+    KeyValueStorage<Object, Object> map = manager.createKeyValueStorage("map", DYNAMIC_CONFIG);
+    map.put("key", new ObjectID(1));
+    manager.createKeyValueStorage("destroyed", DYNAMIC_CONFIG).put("foo", "bar");
+    manager.destroyKeyValueStorage("destroyed");
+    manager.getProperties().put("state", "ACTIVE");
+    manager.close();
+
+    manager = start(Long.MAX_VALUE);
+    assertEquals("ACTIVE", manager.getProperties().get("state"));
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(99, objects.size());
+    assertNull(objects.get(7L));
+    assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, objects.get(8L)));
+    assertTrue(Arrays.equals(new byte[] { 9 }, objects.get(9L)));
+    assertEquals(new ObjectID(42), manager.getKeyValueStorage("roots", String.class, ObjectID.class).get("root"));
+    assertEquals(new ObjectID(1), manager.getKeyValueStorage("map", Object.class, Object.class).get("key"));
+    assertNull(manager.getKeyValueStorage("destroyed", Object.class, Object.class));
+    manager.close();
+  }
+
+  public void testCompactionKeepsOnlyLiveData() throws Exception {
+    StorageManager manager = start(0);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    for (int round = 0; round < 10; round++) {
+      manager.begin();
+      for (long i = 0; i < 50; i++) {
+        objects.put(i, new byte[] { (byte) round, (byte) i });
+      }
+      objects.remove((long) round);
+      manager.commit();
+    }
+    manager.close();
+    assertEquals(1, listFiles(".snapshot").length);
+
+    manager = start(Long.MAX_VALUE);
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(49, objects.size());
+    assertNull(objects.get(9L));
+    assertTrue(Arrays.equals(new byte[] { 9, 3 }, objects.get(3L)));
+    manager.close();
+  }
+
+  public void testCompactionKeepsCommittedDataOfOpenTransaction() throws Exception {
+    RestartableStorageManager manager = (RestartableStorageManager) start(Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    objects.put(1L, new byte[] { 1 });
+    objects.put(2L, new byte[] { 2 });
+
+    manager.begin();
+    objects.put(1L, new byte[] { 9 });
+    objects.remove(2L);
+    objects.put(3L, new byte[] { 3 });
+    manager.compact();
+    assertEquals(1, listFiles(".snapshot").length);
+    assertEquals(1, listFiles(".log").length);
+
+    // what a crash before the commit would leave behind
+    File crashed = new File(getTempDirectory(), "crashed");
+    assertTrue(crashed.mkdirs());
+    for (File file : directory.listFiles()) {
+      Files.copy(file.toPath(), new File(crashed, file.getName()).toPath());
+    }
+    manager.commit();
+    manager.close();
+
+    StorageManager recovered = start(crashed, Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> recoveredObjects = recovered.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(2, recoveredObjects.size());
+    assertTrue(Arrays.equals(new byte[] { 1 }, recoveredObjects.get(1L)));
+    assertTrue(Arrays.equals(new byte[] { 2 }, recoveredObjects.get(2L)));
+    assertNull(recoveredObjects.get(3L));
+    recovered.close();
+
+    recovered = start(Long.MAX_VALUE);
+    recoveredObjects = recovered.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(2, recoveredObjects.size());
+    assertTrue(Arrays.equals(new byte[] { 9 }, recoveredObjects.get(1L)));
+    assertNull(recoveredObjects.get(2L));
+    assertTrue(Arrays.equals(new byte[] { 3 }, recoveredObjects.get(3L)));
+    recovered.close();
+  }
+
+  public void testCompactionDropsDestroyedAndClearedStorages() throws Exception {
+    RestartableStorageManager manager = (RestartableStorageManager) start(Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    objects.put(1L, new byte[] { 1 });
+    objects.clear();
+    objects.put(2L, new byte[] { 2 });
+    manager.createKeyValueStorage("map", DYNAMIC_CONFIG).put("old", "value");
+    manager.destroyKeyValueStorage("map");
+    manager.createKeyValueStorage("map", DYNAMIC_CONFIG).put("new", "value");
+    manager.compact();
+    manager.close();
+
+    manager = (RestartableStorageManager) start(Long.MAX_VALUE);
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(1, objects.size());
+    assertTrue(Arrays.equals(new byte[] { 2 }, objects.get(2L)));
+    KeyValueStorage<Object, Object> map = manager.getKeyValueStorage("map", Object.class, Object.class);
+    assertEquals(1, map.size());
+    assertEquals("value", map.get("new"));
+    manager.close();
+  }
+
+  public void testRemoveAllIsRecovered() throws Exception {
+    StorageManager manager = start(Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    List<Long> removed = new ArrayList<Long>();
+    for (long i = 0; i < 1000; i++) {
+      objects.put(i, new byte[] { (byte) i });
+      if (i % 3 == 0) {
+        removed.add(i);
+      }
+    }
+    removed.add(5000L);
+    objects.removeAll(removed);
+    assertEquals(666, objects.size());
+    manager.close();
+
+    manager = start(Long.MAX_VALUE);
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(666, objects.size());
+    assertNull(objects.get(3L));
+    assertTrue(Arrays.equals(new byte[] { 4 }, objects.get(4L)));
+    manager.close();
+  }
+
+  public void testTornTailIsDiscarded() throws Exception {
+    StorageManager manager = start(Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    objects.put(1L, new byte[] { 1 });
+    manager.close();
+
+    File[] logs = listFiles(".log");
+    FileOutputStream out = new FileOutputStream(logs[logs.length - 1], true);
+    out.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+    out.close();
+
+    manager = start(Long.MAX_VALUE);
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    objects.put(2L, new byte[] { 2 });
+    manager.close();
+
+    manager = start(Long.MAX_VALUE);
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(2, objects.size());
+    manager.close();
+  }
+
+  public void testBackupIsPointInTime() throws Exception {
+    RestartableStorageManager manager = (RestartableStorageManager) start(0);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    for (long i = 0; i < 100; i++) {
+      objects.put(i, new byte[] { 1 });
+    }
+    manager.getProperties().put("state", "ACTIVE");
+
+    List<File> files = manager.beginBackup().getFiles();
+    for (long i = 0; i < 100; i++) {
+      objects.put(i, new byte[] { 2 });
+    }
+    objects.put(100L, new byte[] { 2 });
+    File backup = new File(getTempDirectory(), "backup");
+    assertTrue(backup.mkdirs());
+    for (File file : files) {
+      Files.copy(file.toPath(), new File(backup, file.getName()).toPath());
+    }
+    manager.endBackup();
+    manager.close();
+
+    manager = (RestartableStorageManager) start(backup, Long.MAX_VALUE);
+    assertEquals("ACTIVE", manager.getProperties().get("state"));
+    objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(100, objects.size());
+    assertTrue(Arrays.equals(new byte[] { 1 }, objects.get(99L)));
+    manager.close();
+  }
+
+  public void testOpenTransactionIsWrittenAtomically() throws Exception {
+    final StorageManager manager = start(Long.MAX_VALUE);
+    final KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+
+    manager.begin();
+    // large enough to have needed more than one frame
+    for (long i = 0; i < 64; i++) {
+      objects.put(i, new byte[64 * 1024]);
+    }
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        objects.put(1000L, new byte[] { 1 });
+      }
+    };
+    other.start();
+    other.join();
+
+    // what a crash at this point would leave behind
+    File crashed = new File(getTempDirectory(), "crashed");
+    assertTrue(crashed.mkdirs());
+    for (File file : directory.listFiles()) {
+      Files.copy(file.toPath(), new File(crashed, file.getName()).toPath());
+    }
+    manager.commit();
+    manager.close();
+
+    StorageManager recovered = start(crashed, Long.MAX_VALUE);
+    KeyValueStorage<Long, byte[]> recoveredObjects = recovered.getKeyValueStorage("objects", Long.class, byte[].class);
+    assertEquals(1, recoveredObjects.size());
+    assertTrue(Arrays.equals(new byte[] { 1 }, recoveredObjects.get(1000L)));
+    recovered.close();
+
+    recovered = start(Long.MAX_VALUE);
+    assertEquals(65, recovered.getKeyValueStorage("objects", Long.class, byte[].class).size());
+    recovered.close();
+  }
+
+  public void testParallelRecoveryKeepsLogOrder() throws Exception {
+    StorageManager manager = start(directory, Long.MAX_VALUE, 1);
+    KeyValueStorage<Long, byte[]> objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+    KeyValueStorage<Object, Object> map = manager.createKeyValueStorage("map", DYNAMIC_CONFIG);
+    for (byte round = 0; round < 4; round++) {
+      if (round == 2) {
+        objects.clear();
+        manager.destroyKeyValueStorage("map");
+        map = manager.createKeyValueStorage("map", DYNAMIC_CONFIG);
+      }
+      for (long i = 0; i < 10000; i++) {
+        objects.put(i, new byte[] { round });
+        map.put(i, "value" + round);
+      }
+      for (long i = round; i < 10000; i += 7) {
+        objects.remove(i);
+      }
+    }
+    manager.close();
+
+    for (int threads : new int[] { 8, 1 }) {
+      manager = start(directory, Long.MAX_VALUE, threads);
+      objects = manager.getKeyValueStorage("objects", Long.class, byte[].class);
+      map = manager.getKeyValueStorage("map", Object.class, Object.class);
+      assertEquals(10000, map.size());
+      assertEquals("value3", map.get(9999L));
+      for (long i = 0; i < 10000; i++) {
+        if (i % 7 == 3) {
+          assertNull(objects.get(i));
+        } else {
+          assertTrue(Arrays.equals(new byte[] { 3 }, objects.get(i)));
+        }
+      }
+      manager.close();
+    }
+  }
+
+  private StorageManager start(long compactionMinBytes) throws Exception {
+    return start(directory, compactionMinBytes);
+  }
+
+  private StorageManager start(File dir, long compactionMinBytes) throws Exception {
+    return start(dir, compactionMinBytes, 4);
+  }
+
+  private StorageManager start(File dir, long compactionMinBytes, int recoveryThreads) throws Exception {
+    Map<String, KeyValueStorageConfig<?, ?>> configs = new HashMap<String, KeyValueStorageConfig<?, ?>>();
+    configs.put("objects", ImmutableKeyValueStorageConfig.builder(Long.class, byte[].class).build());
+    configs.put("roots", ImmutableKeyValueStorageConfig.builder(String.class, ObjectID.class)
+        .valueTransformer(ObjectIDTransformer.INSTANCE).build());
+    StorageManager manager = new RestartableStorageManager(new HeapStorageManager(configs), DYNAMIC_CONFIG, dir, false,
+                                                           compactionMinBytes, 0.0, recoveryThreads);
+    manager.start().get();
+    return manager;
+  }
+
+  private File[] listFiles(final String suffix) {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(suffix);
+      }
+    });
+    Arrays.sort(files);
+    return files;
+  }
+}
@@ -43,6 +43,11 @@ public interface TCServerInfoMBean extends TerracottaMBean, RuntimeStatisticCons
 
   long getActivateTime();
 
+  /**
+   * @return the time in milliseconds spent in each phase of loading the persistent state on startup, in phase order
+   */
+  Map<String, Long> getStartupTimings();
+
   void stop();
 
   boolean isShutdownable();
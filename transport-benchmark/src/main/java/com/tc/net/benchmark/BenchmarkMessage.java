@@ -0,0 +1,97 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.benchmark;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.msg.DSOMessageBase;
+import com.tc.object.session.SessionID;
+
+import java.io.IOException;
+
+/**
+ * Carries a sequence number, the time it was first sent and an opaque payload. The server echoes it back unchanged so
+ * the client can work out the round trip time.
+ */
+public class BenchmarkMessage extends DSOMessageBase {
+
+  private static final byte SEQUENCE = 1;
+  private static final byte SENT_AT  = 2;
+  // has to be last, it takes the rest of the message
+  private static final byte PAYLOAD  = 3;
+
+  private long              sequence;
+  private long              sentAt;
+  private TCByteBuffer[]    payload;
+
+  public BenchmarkMessage(SessionID sessionID, MessageMonitor monitor, TCByteBufferOutputStream out,
+                          MessageChannel channel, TCMessageType type) {
+    super(sessionID, monitor, out, channel, type);
+  }
+
+  public BenchmarkMessage(SessionID sessionID, MessageMonitor monitor, MessageChannel channel, TCMessageHeader header,
+                          TCByteBuffer[] data) {
+    super(sessionID, monitor, channel, header, data);
+  }
+
+  public void initialize(long seq, long sentAtNanos, TCByteBuffer[] data) {
+    this.sequence = seq;
+    this.sentAt = sentAtNanos;
+    this.payload = data;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public long getSentAt() {
+    return sentAt;
+  }
+
+  public TCByteBuffer[] getPayload() {
+    return payload;
+  }
+
+  @Override
+  protected void dehydrateValues() {
+    putNVPair(SEQUENCE, sequence);
+    putNVPair(SENT_AT, sentAt);
+    putNVPair(PAYLOAD, payload);
+    payload = null;
+  }
+
+  @Override
+  protected boolean hydrateValue(byte name) throws IOException {
+    switch (name) {
+      case SEQUENCE:
+        this.sequence = getLongValue();
+        return true;
+      case SENT_AT:
+        this.sentAt = getLongValue();
+        return true;
+      case PAYLOAD:
+        this.payload = getInputStream().toArray();
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,397 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.benchmark;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.TCSocketAddress;
+import com.tc.net.core.ConnectionAddressProvider;
+import com.tc.net.core.ConnectionInfo;
+import com.tc.net.core.TCConnectionManagerImpl;
+import com.tc.net.protocol.NetworkStackHarnessFactory;
+import com.tc.net.protocol.PlainNetworkStackHarnessFactory;
+import com.tc.net.protocol.delivery.OOONetworkStackHarnessFactory;
+import com.tc.net.protocol.delivery.OnceAndOnlyOnceProtocolNetworkLayerFactoryImpl;
+import com.tc.net.protocol.tcm.ClientMessageChannel;
+import com.tc.net.protocol.tcm.CommunicationsManagerImpl;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.NetworkListener;
+import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessage;
+import com.tc.net.protocol.tcm.TCMessageSink;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.net.protocol.transport.DefaultConnectionIdFactory;
+import com.tc.net.protocol.transport.NullConnectionPolicy;
+import com.tc.net.proxy.TCPProxy;
+import com.tc.object.session.NullSessionManager;
+import com.tc.properties.L1ReconnectConfigImpl;
+import com.tc.stats.Histogram;
+import com.tc.util.PortChooser;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the L1-L2 transport over loopback. For every combination of message size, connection count and OOO on or
+ * off it starts a server and a client {@link CommunicationsManagerImpl}, has each client channel keep a window of
+ * {@link BenchmarkMessage}s in flight against a server that echoes them back, and reports messages per second, round
+ * trip latency percentiles and bytes moved per socket read or write. When a delay or disconnect interval is set the
+ * clients go through a {@link TCPProxy} instead of straight to the server.
+ * <p>
+ * The sweep is controlled by system properties:
+ * <ul>
+ * <li>bench.sizes - comma separated payload sizes in bytes (64,1024,16384)</li>
+ * <li>bench.connections - comma separated client channel counts (1,16,64)</li>
+ * <li>bench.ooo - comma separated OOO settings (false,true)</li>
+ * <li>bench.proxyDelayMillis - delay the proxy adds in each direction (0)</li>
+ * <li>bench.disconnectEveryMillis - how often the proxy drops every client connection, 0 for never (0)</li>
+ * <li>bench.warmupMillis, bench.durationMillis - time spent before and while measuring (5000, 20000)</li>
+ * <li>bench.window - messages each channel keeps in flight (32)</li>
+ * <li>bench.workers - worker comm threads on each side (number of processors)</li>
+ * <li>bench.output - file to write the JSON results to, stdout if empty</li>
+ * </ul>
+ * Latency percentiles come from a power of two {@link Histogram}, so they are upper bounds of the bucket they fall in.
+ */
+public class TransportBenchmark {
+
+  private static final TCMessageType MESSAGE_TYPE = TCMessageType.PING_MESSAGE;
+  private static final String        WINDOW       = "TransportBenchmark.window";
+
+  private final int                  proxyDelayMillis;
+  private final int                  disconnectEveryMillis;
+  private final int                  warmupMillis;
+  private final int                  durationMillis;
+  private final int                  window;
+  private final int                  workers;
+
+  public TransportBenchmark(int proxyDelayMillis, int disconnectEveryMillis, int warmupMillis, int durationMillis,
+                            int window, int workers) {
+    this.proxyDelayMillis = proxyDelayMillis;
+    this.disconnectEveryMillis = disconnectEveryMillis;
+    this.warmupMillis = warmupMillis;
+    this.durationMillis = durationMillis;
+    this.window = window;
+    this.workers = workers;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int[] sizes = intList(System.getProperty("bench.sizes", "64,1024,16384"));
+    int[] connections = intList(System.getProperty("bench.connections", "1,16,64"));
+    String[] ooos = System.getProperty("bench.ooo", "false,true").split(",");
+    TransportBenchmark benchmark = new TransportBenchmark(Integer.getInteger("bench.proxyDelayMillis", 0),
+                                                          Integer.getInteger("bench.disconnectEveryMillis", 0),
+                                                          Integer.getInteger("bench.warmupMillis", 5000),
+                                                          Integer.getInteger("bench.durationMillis", 20000),
+                                                          Integer.getInteger("bench.window", 32),
+                                                          Integer.getInteger("bench.workers", Runtime.getRuntime()
+                                                              .availableProcessors()));
+
+    List<String> results = new ArrayList<String>();
+    for (String ooo : ooos) {
+      for (int connectionCount : connections) {
+        for (int size : sizes) {
+          String result = benchmark.run(size, connectionCount, Boolean.valueOf(ooo.trim()));
+          System.err.println(result);
+          results.add(result);
+        }
+      }
+    }
+
+    String output = System.getProperty("bench.output", "");
+    PrintWriter out = output.length() == 0 ? new PrintWriter(System.out)
+        : new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+    try {
+      out.println("[");
+      for (int i = 0; i < results.size(); i++) {
+        out.print("  " + results.get(i));
+        out.println(i < results.size() - 1 ? "," : "");
+      }
+      out.println("]");
+    } finally {
+      out.close();
+    }
+    System.exit(0);
+  }
+
+  /**
+   * @return the result of one point of the sweep as a JSON object
+   */
+  public String run(int size, int connectionCount, boolean ooo) throws Exception {
+    Json json = new Json().field("messageSize", size).field("connections", connectionCount).field("ooo", ooo)
+        .field("proxyDelayMillis", proxyDelayMillis).field("disconnectEveryMillis", disconnectEveryMillis);
+    if (disconnectEveryMillis > 0 && !ooo) {
+      // without OOO the messages in flight are lost on every disconnect and the windows never refill
+      return json.field("skipped", "disconnects are only measured with OOO").toString();
+    }
+
+    final Histogram latency = new Histogram();
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong receivedBytes = new AtomicLong();
+    final AtomicBoolean recording = new AtomicBoolean();
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicLong disconnects = new AtomicLong();
+
+    CommunicationsManagerImpl serverComms = createComms("Benchmark-Server", ooo);
+    serverComms.getMessageRouter().routeMessageType(MESSAGE_TYPE, new EchoSink());
+    NetworkListener listener = serverComms.createListener(new NullSessionManager(), new TCSocketAddress(0), true,
+                                                          new DefaultConnectionIdFactory());
+    listener.start(Collections.EMPTY_SET);
+
+    int port = listener.getBindPort();
+    TCPProxy proxy = null;
+    if (proxyDelayMillis > 0 || disconnectEveryMillis > 0) {
+      port = new PortChooser().chooseRandomPort();
+      proxy = new TCPProxy(port, InetAddress.getByName(TCSocketAddress.LOOPBACK_IP), listener.getBindPort(),
+                           proxyDelayMillis, false, null);
+      proxy.start();
+    }
+
+    CommunicationsManagerImpl clientComms = createComms("Benchmark-Client", ooo);
+    clientComms.getMessageRouter().routeMessageType(MESSAGE_TYPE, new TCMessageSink() {
+      @Override
+      public void putMessage(TCMessage message) {
+        BenchmarkMessage reply = hydrate(message);
+        if (recording.get()) {
+          latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - reply.getSentAt()));
+          received.incrementAndGet();
+          receivedBytes.addAndGet(length(reply.getPayload()));
+        }
+        ((Semaphore) reply.getChannel().getAttachment(WINDOW)).release();
+      }
+    });
+
+    List<ClientMessageChannel> channels = new ArrayList<ClientMessageChannel>();
+    List<Thread> senders = new ArrayList<Thread>();
+    try {
+      for (int i = 0; i < connectionCount; i++) {
+        ConnectionAddressProvider addresses = new ConnectionAddressProvider(
+                                                                            new ConnectionInfo[] { new ConnectionInfo(
+                                                                                TCSocketAddress.LOOPBACK_IP, port) });
+        ClientMessageChannel channel = clientComms.createClientChannel(new NullSessionManager(), ooo ? -1 : 0,
+                                                                       TCSocketAddress.LOOPBACK_IP, port, 10000,
+                                                                       addresses);
+        channel.addAttachment(WINDOW, new Semaphore(window), true);
+        channel.open();
+        channels.add(channel);
+      }
+
+      byte[] payload = new byte[size];
+      for (ClientMessageChannel channel : channels) {
+        Thread sender = new Sender(channel, payload, stop);
+        sender.start();
+        senders.add(sender);
+      }
+
+      Thread disconnector = null;
+      if (disconnectEveryMillis > 0) {
+        disconnector = new Disconnector(proxy, stop, disconnects);
+        disconnector.start();
+      }
+
+      Thread.sleep(warmupMillis);
+      TCConnectionManagerImpl clientConnections = (TCConnectionManagerImpl) clientComms.getConnectionManager();
+      TCConnectionManagerImpl serverConnections = (TCConnectionManagerImpl) serverComms.getConnectionManager();
+      long bytesBefore = clientConnections.getTotalBytesTransferred() + serverConnections.getTotalBytesTransferred();
+      long ioBefore = clientConnections.getTotalIoEvents() + serverConnections.getTotalIoEvents();
+      long disconnectsBefore = disconnects.get();
+      long start = System.nanoTime();
+      recording.set(true);
+
+      Thread.sleep(durationMillis);
+
+      recording.set(false);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      long bytes = clientConnections.getTotalBytesTransferred() + serverConnections.getTotalBytesTransferred()
+                   - bytesBefore;
+      long ios = clientConnections.getTotalIoEvents() + serverConnections.getTotalIoEvents() - ioBefore;
+
+      json.field("seconds", seconds).field("messages", received.get())
+          .field("messagesPerSecond", received.get() / seconds)
+          .field("payloadBytesPerSecond", receivedBytes.get() / seconds)
+          .field("latencyMicrosP50", latency.getPercentile(50)).field("latencyMicrosP99", latency.getPercentile(99))
+          .field("latencyMicrosP999", latency.getPercentile(99.9)).field("latencyMicrosMax", latency.getMax())
+          .field("latencyMicrosMean", latency.getMean()).field("bytesPerIoCall", ios == 0 ? 0 : (double) bytes / ios)
+          .field("disconnects", disconnects.get() - disconnectsBefore);
+
+      stop.set(true);
+      for (Thread sender : senders) {
+        sender.join();
+      }
+      if (disconnector != null) {
+        disconnector.interrupt();
+        disconnector.join();
+      }
+    } finally {
+      stop.set(true);
+      for (ClientMessageChannel channel : channels) {
+        channel.close();
+      }
+      clientComms.shutdown();
+      if (proxy != null) {
+        proxy.stop();
+      }
+      listener.stop(5000);
+      serverComms.shutdown();
+    }
+    return json.toString();
+  }
+
+  private CommunicationsManagerImpl createComms(String name, boolean ooo) {
+    NetworkStackHarnessFactory stackHarnessFactory = new PlainNetworkStackHarnessFactory();
+    if (ooo) {
+      stackHarnessFactory = new OOONetworkStackHarnessFactory(new OnceAndOnlyOnceProtocolNetworkLayerFactoryImpl(),
+                                                              new L1ReconnectConfigImpl(true, 15000, 5000, 16, 32));
+    }
+    CommunicationsManagerImpl comms = new CommunicationsManagerImpl(name, new NullMessageMonitor(),
+                                                                    stackHarnessFactory, new NullConnectionPolicy(),
+                                                                    workers);
+    comms.addClassMapping(MESSAGE_TYPE, BenchmarkMessage.class);
+    return comms;
+  }
+
+  private static BenchmarkMessage hydrate(TCMessage message) {
+    try {
+      message.hydrate();
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+    return (BenchmarkMessage) message;
+  }
+
+  private static long length(TCByteBuffer[] buffers) {
+    long length = 0;
+    for (TCByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+    return length;
+  }
+
+  private static int[] intList(String value) {
+    String[] parts = value.split(",");
+    int[] rv = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      rv[i] = Integer.parseInt(parts[i].trim());
+    }
+    return rv;
+  }
+
+  /**
+   * Sends every message it gets straight back on the channel it came in on, from the comm thread that read it.
+   */
+  private static class EchoSink implements TCMessageSink {
+    @Override
+    public void putMessage(TCMessage message) {
+      BenchmarkMessage request = hydrate(message);
+      BenchmarkMessage reply = (BenchmarkMessage) request.getChannel().createMessage(MESSAGE_TYPE);
+      reply.initialize(request.getSequence(), request.getSentAt(), request.getPayload());
+      reply.send();
+    }
+  }
+
+  private class Sender extends Thread {
+    private final MessageChannel channel;
+    private final byte[]         payload;
+    private final AtomicBoolean  stop;
+
+    Sender(MessageChannel channel, byte[] payload, AtomicBoolean stop) {
+      super("Benchmark sender - " + channel.getChannelID());
+      setDaemon(true);
+      this.channel = channel;
+      this.payload = payload;
+      this.stop = stop;
+    }
+
+    @Override
+    public void run() {
+      Semaphore inFlight = (Semaphore) channel.getAttachment(WINDOW);
+      long sequence = 0;
+      try {
+        while (!stop.get()) {
+          if (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            continue;
+          }
+          BenchmarkMessage msg = (BenchmarkMessage) channel.createMessage(MESSAGE_TYPE);
+          msg.initialize(sequence++, System.nanoTime(), new TCByteBuffer[] { TCByteBufferFactory.wrap(payload) });
+          msg.send();
+        }
+      } catch (InterruptedException e) {
+        // done
+      }
+    }
+  }
+
+  private class Disconnector extends Thread {
+    private final TCPProxy      proxy;
+    private final AtomicBoolean stop;
+    private final AtomicLong    disconnects;
+
+    Disconnector(TCPProxy proxy, AtomicBoolean stop, AtomicLong disconnects) {
+      super("Benchmark disconnector");
+      setDaemon(true);
+      this.proxy = proxy;
+      this.stop = stop;
+      this.disconnects = disconnects;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!stop.get()) {
+          Thread.sleep(disconnectEveryMillis);
+          proxy.closeClientConnections(false, false);
+          disconnects.incrementAndGet();
+        }
+      } catch (InterruptedException e) {
+        // done
+      }
+    }
+  }
+
+  /**
+   * Just enough JSON for flat objects of numbers, booleans and plain strings. Numbers JSON cannot represent, like the
+   * rates of a run too short to measure, are written as null.
+   */
+  private static class Json {
+    private final StringBuilder sb = new StringBuilder();
+
+    Json field(String name, Object value) {
+      sb.append(sb.length() == 0 ? "{" : ", ").append('"').append(name).append("\": ");
+      if (value instanceof String) {
+        sb.append('"').append(value).append('"');
+      } else if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+        sb.append("null");
+      } else {
+        sb.append(value);
+      }
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return sb.toString() + "}";
+    }
+  }
+}